@@ -0,0 +1,130 @@
+package regions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Time and allocation of building an Octree from a 256^3 BitSet selection with the
+ * constructor, {@link Octree#Octree(java.io.File, BitSet, int[][])}, against adding the same
+ * selection to an empty tree with {@link Tree#add(BitSet, int[]...)}. Prints the median and
+ * minimum of 9 runs. Allocation is summed over all threads, since <tt>add</tt> runs in the
+ * common pool. Also checks that both trees write the same bytes.
+ * Run as a main class, with a heap of a few GB: <tt>java -Xmx4g regions.BuildBench</tt>
+ */
+public class BuildBench
+{
+	static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	static final int 	SIDE 	= 256,
+						RUNS 	= 9;
+
+	static final String[] names =
+		{
+			"sphere + lattice",
+			"random 50%",
+			"full cube",
+			"alternate y slabs"
+		};
+
+
+	public static void main(String[] args) throws IOException
+	{
+		int[][] bounds = { { 0, SIDE }, { 0, SIDE }, { 0, SIDE } };
+		Random random = new Random(16);
+
+		for (int k = 0; k < names.length; k++)
+		{
+			BitSet blocks = new BitSet(SIDE * SIDE * SIDE);
+
+			for (int y = 0, i = 0; y < SIDE; y++)
+				for (int z = 0; z < SIDE; z++)
+					for (int x = 0; x < SIDE; x++, i++)
+					{
+						int dx = x - 128, dz = z - 128, dy = y - 128;
+
+						switch (k)
+						{
+							case 0 :
+								if (dx * dx + dz * dz + dy * dy < 100 * 100 || (x * 7 + z * 3 + y) % 13 == 0 && y < 40)
+									blocks.set(i);
+								break;
+							case 1 :
+								if (random.nextBoolean())
+									blocks.set(i);
+								break;
+							case 2 :
+								blocks.set(i);
+								break;
+							case 3 :
+								if ((y & 1) == 0)
+									blocks.set(i);
+								break;
+						}
+					}
+
+			long[] 	built 		= new long[RUNS],
+					added 		= new long[RUNS];
+			long 	buildBytes 	= 0,
+					addBytes 	= 0;
+			boolean same 		= true;
+
+			for (int run = 0; run < RUNS; run++)
+			{
+				System.gc();
+				long bytes = allocated(), start = System.nanoTime();
+
+				Octree build = new Octree(null, blocks, bounds);
+
+				built[run] 	= System.nanoTime() - start;
+				buildBytes 	= allocated() - bytes;
+
+				System.gc();
+				bytes = allocated();
+				start = System.nanoTime();
+
+				Octree add = new Octree(null, new BitSet(), bounds);
+				add.add(blocks, bounds);
+
+				added[run] 	= System.nanoTime() - start;
+				addBytes 	= allocated() - bytes;
+
+				same &= Arrays.equals(bytes(build), bytes(add));
+			}
+			Arrays.sort(built);
+			Arrays.sort(added);
+
+			System.out.printf("%-18s build %6.0f ms (%6.0f) %5.0f MB    add %6.0f ms (%6.0f) %5.0f MB    %s%n",
+							  names[k],
+							  built[RUNS / 2] / 1e6, built[0] / 1e6, buildBytes / 1e6,
+							  added[RUNS / 2] / 1e6, added[0] / 1e6, addBytes / 1e6,
+							  same ? "same bytes" : "BYTES DIFFER"
+							  );
+		}
+	}
+
+
+	/**
+	 * Returns the bytes allocated so far by all live threads.
+	 */
+	static long allocated()
+	{
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			if (bytes > 0)
+				total += bytes;
+		return total;
+	}
+
+
+	static byte[] bytes(Tree tree) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		tree.writeBytes(tree.root, output);
+		return output.toByteArray();
+	}
+}
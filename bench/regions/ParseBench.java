@@ -0,0 +1,101 @@
+package regions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Load time and live heap of the iterative parser, {@link Tree#parseBytes(File)}, against the
+ * recursive one, {@link Tree#parseBytes(DataInputStream)}, on a randomly generated headerless
+ * Octree stream 12 levels deep. Each child of a partial node is itself partial with the given
+ * probability, else full or empty. File size climbs steeply with it: 0.535 writes about 21 MB,
+ * and 0.585 about 45 MB.
+ * <p>
+ * Run as a main class with <tt>new</tt> or <tt>old</tt> and the probability, in separate JVMs,
+ * since the recursive parser can run out of memory: <tt>java -Xmx4g regions.ParseBench new 0.585</tt>
+ */
+public class ParseBench
+{
+	static final int 	DEPTH 	= 12,
+						RUNS 	= 3;
+
+	static Random 		random 	= new Random(7);
+	static long 		nodes;
+
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean iterative 	= args[0].equals("new");
+		double probability 	= Double.parseDouble(args[1]);
+
+		File file = File.createTempFile("ParseBench", ".oct");
+		file.deleteOnExit();
+
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		write(output, 0, probability);
+		output.close();
+
+		System.out.printf("%.1f MB file, %d partial nodes%n", file.length() / 1e6, nodes);
+
+		File empty = File.createTempFile("ParseBench", ".oct");
+		empty.deleteOnExit();
+
+		Octree tree = new Octree(empty);
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int run = 0; run < RUNS; run++)
+		{
+			System.gc();
+			long start = System.nanoTime();
+
+			Tree.Node root;
+			if (iterative)
+				root = tree.parseBytes(file);
+			else
+			{
+				DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				root = tree.parseBytes(input);
+				input.close();
+			}
+
+			long end = System.nanoTime();
+			System.gc();
+
+			System.out.printf("%s parser: %.0f ms, %.0f MB live heap%n",
+							  iterative ? "new" : "old",
+							  (end - start) / 1e6,
+							  (runtime.totalMemory() - runtime.freeMemory()) / 1e6
+							  );
+			if (root == null)
+				throw new AssertionError();
+		}
+	}
+
+
+	/**
+	 * Writes a partial node at the given level, followed by its partial children.
+	 */
+	static void write(DataOutputStream output, int level, double probability) throws IOException
+	{
+		int[] codes = new int[8];
+		int code = 0;
+
+		for (int i = 0; i < 8; i++)
+		{
+			codes[i] 	= level + 1 < DEPTH && random.nextDouble() < probability ? 0 : random.nextBoolean() ? 2 : 1;
+			code 		= code << 2 | codes[i];
+		}
+		output.writeShort(code);
+		nodes++;
+
+		for (int i = 0; i < 8; i++)
+			if (codes[i] == 0)
+				write(output, level + 1, probability);
+	}
+}
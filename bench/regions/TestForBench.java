@@ -0,0 +1,127 @@
+package regions;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Bytes allocated and time taken per call of the point forms of <tt>testFor</tt>, on a 128^3
+ * sphere (Octree, LinearOctree) and a 128^2 disc (Quadtree). Every form is called through
+ * one {@link Call}, so the call sites are megamorphic, as they are from the event listeners.
+ * Run as a main class; add <tt>-XX:-DoEscapeAnalysis</tt> to see what the varargs form costs
+ * when its array is not scalar-replaced.
+ */
+public class TestForBench
+{
+	static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	static final int 	SIDE 	= 128,
+						POINTS 	= 4096,
+						CALLS 	= 2000000,
+						WARMUP 	= 5;
+
+	static final int[] 	xs 		= new int[POINTS],
+						zs 		= new int[POINTS],
+						ys 		= new int[POINTS];
+
+	static int 			hits;
+
+
+	interface Call
+	{
+		boolean testFor(Tree tree, int x, int z, int y);
+	}
+
+
+	public static void main(String[] args) throws IOException
+	{
+		Random random = new Random(3);
+		for (int i = 0; i < POINTS; i++)
+		{
+			xs[i] = random.nextInt(SIDE);
+			zs[i] = random.nextInt(SIDE);
+			ys[i] = random.nextInt(SIDE);
+		}
+
+		BitSet sphere = new BitSet(), disc = new BitSet();
+		for (int y = 0, i = 0; y < SIDE; y++)
+			for (int z = 0; z < SIDE; z++)
+				for (int x = 0; x < SIDE; x++, i++)
+				{
+					int dx = x - 64, dz = z - 64, dy = y - 64;
+
+					if (dx * dx + dz * dz + dy * dy < 50 * 50)
+						sphere.set(i);
+					if (y == 0 && dx * dx + dz * dz < 50 * 50)
+						disc.set(i);
+				}
+
+		File file = File.createTempFile("TestForBench", ".oct");
+		file.deleteOnExit();
+
+		Octree octree = new Octree(file, sphere, new int[][] { { 0, SIDE }, { 0, SIDE }, { 0, SIDE } });
+		octree.saveToFile();
+
+		Tree[] trees =
+			{
+				octree,
+				new Quadtree(null, disc, new int[][] { { 0, SIDE }, { 0, SIDE } }),
+				new LinearOctree(file)
+			};
+
+		for (Tree tree : trees)
+		{
+			String name = tree.getClass().getSimpleName();
+
+			measure(name + ".testFor(x, z, y)", tree, new Call()
+			{
+				public boolean testFor(Tree tree, int x, int z, int y) { return tree.testFor(x, z, y); }
+			});
+			measure(name + ".testFor(x, z)", tree, new Call()
+			{
+				public boolean testFor(Tree tree, int x, int z, int y) { return tree.testFor(x, z); }
+			});
+			measure(name + ".testFor(int...)", tree, new Call()
+			{
+				public boolean testFor(Tree tree, int x, int z, int y) { return tree.testFor(new int[] { x, z, y }); }
+			});
+		}
+		System.out.println(hits + " hits");
+	}
+
+
+	/**
+	 * Prints the bytes allocated and nanoseconds taken per call, over {@link #CALLS} calls
+	 * after {@link #WARMUP} untimed rounds of the same calls.
+	 */
+	static void measure(String name, Tree tree, Call call)
+	{
+		for (int round = 0; round < WARMUP; round++)
+			run(tree, call);
+
+		long thread 	= Thread.currentThread().getId(),
+			 bytes 		= threads.getThreadAllocatedBytes(thread),
+			 start 		= System.nanoTime();
+
+		run(tree, call);
+
+		long end 		= System.nanoTime();
+		bytes 			= threads.getThreadAllocatedBytes(thread) - bytes;
+
+		System.out.printf("%-36s %6.1f B %8.1f ns%n", name, bytes / (double) CALLS, (end - start) / (double) CALLS);
+	}
+
+
+	static void run(Tree tree, Call call)
+	{
+		for (int i = 0, j; i < CALLS; i++)
+		{
+			j = i & POINTS - 1;
+			if (call.testFor(tree, xs[j], zs[j], ys[j]))
+				hits++;
+		}
+	}
+}
@@ -0,0 +1,862 @@
+package regions;
+
+import java.io.File;
+
+import regions.BitRegionUtil.Selection2D;
+import regions.BitRegionUtil.Selection3D;
+import regions.RegionLoader.Pending;
+import regions.Tree.Node;
+import regions.Tree.NodePool;
+
+/**
+ * Union, intersection, difference, and symmetric difference of two Octrees or two Quadtrees,
+ * combining their nodes rather than their blocks.<p>
+ *
+ * When the grids of the two trees line up, that is, when the offset between their min corners
+ * is a multiple of the smaller side, the first tree is re-rooted as needed until the second tree's
+ * root is one of its nodes, and both are walked in lockstep. A full or empty node on either side
+ * ends the walk at once. A subtree the result takes whole from the second tree is shared rather
+ * than copied, and bricks are combined a word at a time. Sharing marks the subtree's root
+ * {@link Node#shared shared}, in the second tree too, so that whichever tree edits it next
+ * copies it first (see {@link Tree#writable(Node, int)}). The second tree's blocks never change.<p>
+ *
+ * Otherwise, the second tree is a selection whose boxes are classified by walking its nodes, and
+ * the first tree is edited as by {@link Tree#add(Shape)}: only the nodes that cross the second
+ * tree's surface are subdivided.<p>
+ *
+ * Results are either in place, through {@link Octree#union(Octree)}, {@link Quadtree#union(Quadtree)}
+ * and the like, or in a new tree that shares the first tree's nodes, through
+ * {@link #union(File, Tree, Tree...)} and the like.
+ * For example, the land still free to claim is <tt>Algebra.difference(file, world, claims)</tt>.
+ */
+public class Algebra
+{
+	protected static final int 	UNION 					= 0,
+								INTERSECTION 			= 1,
+								DIFFERENCE 				= 2,
+								SYMMETRIC_DIFFERENCE 	= 3;
+	
+	protected final int 		op,
+								branches,
+								brickSide;
+	
+	
+	/**
+	 * @param op			the operation
+	 * @param tree			the tree to combine into
+	 */
+	protected Algebra(int op, Tree tree)
+	{
+		this.op 		= op;
+		this.branches 	= branches(tree);
+		this.brickSide 	= tree instanceof Octree ? ((Octree) tree).brickSide : 0;
+	}
+	
+	
+	/**
+	 * Number of children of the given tree's partial nodes.
+	 *
+	 * @throws 				UnsupportedOperationException if the tree is not an Octree or Quadtree
+	 */
+	protected static int branches(Tree tree)
+	{
+		if (tree instanceof Octree) 	return 8;
+		if (tree instanceof Quadtree) 	return 4;
+		
+		throw new UnsupportedOperationException("Set operations need an Octree or Quadtree, not " + tree.getClass().getSimpleName());
+	}
+	
+	
+	/**
+	 * The loaded tree, if the given tree is still {@link Pending}, waiting for it to load.
+	 */
+	protected static Tree resolve(Tree tree)
+	{
+		return tree instanceof Pending ? ((Pending) tree).get() : tree;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		NEW TREES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Returns a copy of the tree that shares its nodes. See {@link Octree#Octree(File, Octree)}.
+	 *
+	 * @param file			The source file, and save destination, for the copy
+	 * @param tree			an Octree or Quadtree
+	 */
+	public static Tree copy(File file, Tree tree)
+	{
+		tree = resolve(tree);
+		if (branches(tree) == 8)
+			return new Octree(file, (Octree) tree);
+		else
+			return new Quadtree(file, (Quadtree) tree);
+	}
+	
+	
+	/**
+	 * A new tree of every block in any of the given trees.
+	 *
+	 * @param file			The source file, and save destination, for the new tree
+	 * @param first			the tree to start from, which is not changed
+	 * @param others		trees of the same type
+	 */
+	public static Tree union(File file, Tree first, Tree... others)
+	{
+		return combine(file, UNION, first, others);
+	}
+	
+	
+	/**
+	 * A new tree of every block in all of the given trees.
+	 *
+	 * @param file			The source file, and save destination, for the new tree
+	 * @param first			the tree to start from, which is not changed
+	 * @param others		trees of the same type
+	 */
+	public static Tree intersection(File file, Tree first, Tree... others)
+	{
+		return combine(file, INTERSECTION, first, others);
+	}
+	
+	
+	/**
+	 * A new tree of every block in the first tree and in none of the others.
+	 *
+	 * @param file			The source file, and save destination, for the new tree
+	 * @param first			the tree to start from, which is not changed
+	 * @param others		trees of the same type
+	 */
+	public static Tree difference(File file, Tree first, Tree... others)
+	{
+		return combine(file, DIFFERENCE, first, others);
+	}
+	
+	
+	/**
+	 * A new tree of every block in an odd number of the given trees.
+	 *
+	 * @param file			The source file, and save destination, for the new tree
+	 * @param first			the tree to start from, which is not changed
+	 * @param others		trees of the same type
+	 */
+	public static Tree symmetricDifference(File file, Tree first, Tree... others)
+	{
+		return combine(file, SYMMETRIC_DIFFERENCE, first, others);
+	}
+	
+	
+	/**
+	 * Combines a copy of the first tree with each of the others in turn. An intersection
+	 * or difference stops early once it is empty.
+	 */
+	protected static Tree combine(File file, int op, Tree first, Tree... others)
+	{
+		Tree tree = copy(file, first);
+		for (Tree other : others)
+		{
+			if ((op == INTERSECTION || op == DIFFERENCE) && Tree.isEmpty(tree.root))
+				break;
+			
+			combine(tree, other, op);
+		}
+		return tree;
+	}
+	
+	
+	/**
+	 * Whether two trees have any block in common, as between two overlapping claims.
+	 *
+	 * @param a				an Octree or Quadtree
+	 * @param b				a tree of the same type
+	 */
+	public static boolean intersects(Tree a, Tree b)
+	{
+		Tree common = copy(null, a);
+		combine(common, b, INTERSECTION);
+		
+		return !Tree.isEmpty(common.root);
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		IN PLACE
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Replaces the contents of a tree with the result of an operation with another tree.
+	 * The other tree is not changed, but nodes the result takes from it become shared.
+	 * A tree that is empty, or has no bounds, has no blocks: as the other tree it leaves 
+	 * a union or difference unchanged and empties an intersection.
+	 *
+	 * @param tree			an Octree or Quadtree
+	 * @param other			a tree of the same type
+	 * @param op			the operation
+	 * @throws 				IllegalArgumentException if the trees are not of the same type
+	 */
+	protected static void combine(Tree tree, Tree other, int op)
+	{
+		tree 	= resolve(tree);
+		other 	= resolve(other);
+		
+		if (branches(tree) != branches(other))
+			throw new IllegalArgumentException("Cannot combine a " + tree.getClass().getSimpleName()
+											   + " with a " + other.getClass().getSimpleName()
+											   );
+		
+		if (other.min == null || Tree.isEmpty(other.root))		//	no blocks to combine
+		{
+			if (op == INTERSECTION)
+				replaceRoot(tree, NodePool.EMPTY);
+			return;
+		}
+		if (tree.min == null)									//	no blocks, and no bounds to cover from
+		{
+			if (op == INTERSECTION || op == DIFFERENCE)
+				return;
+			tree.place(other.min);
+		}
+		
+		Node 	b 		= Tree.share(other.root);
+		int[] 	bMin 	= other.min.clone(),
+				bMax 	= other.max.clone();
+		
+		if (op == UNION || op == SYMMETRIC_DIFFERENCE)
+			cover(tree, bMin, bMax);
+		
+		Algebra algebra = new Algebra(op, tree);
+		int 	side 	= Math.min(tree.max[0] - tree.min[0], bMax[0] - bMin[0]);
+		
+		if (aligned(tree.min, bMin, side))
+			algebra.lockstep(tree, b, bMin, bMax[0] - bMin[0]);
+		
+		else if (op == SYMMETRIC_DIFFERENCE)
+		{
+			Tree rest = copy(null, other);			//	(b - a) + (a - b)
+			combine(rest, tree, DIFFERENCE);
+			combine(tree, other, DIFFERENCE);
+			combine(tree, rest, UNION);
+			return;
+		}
+		else
+			algebra.select(tree, b, bMin, bMax[0] - bMin[0]);
+		
+		if (op == INTERSECTION || op == DIFFERENCE)
+			tree.trimAsNeeded();
+	}
+	
+	
+	/**
+	 * Whether the offset between two min corners is a multiple of the given side on every axis.
+	 */
+	protected static boolean aligned(int[] a, int[] b, int side)
+	{
+		for (int i = 0; i < a.length; i++)
+			if (Math.floorMod(b[i] - a[i], side) != 0)
+				return false;
+		return true;
+	}
+	
+	
+	/**
+	 * Whether the box from <tt>min</tt> to <tt>max</tt> contains the box from <tt>from</tt> to <tt>to</tt>.
+	 */
+	protected static boolean contains(int[] min, int[] max, int[] from, int[] to)
+	{
+		for (int i = 0; i < min.length; i++)
+			if (from[i] < min[i] || to[i] > max[i])
+				return false;
+		return true;
+	}
+	
+	
+	/**
+	 * Sets the root of a tree to the given node, which is copied first if it is shared.
+	 * The root is final, and is changed rather than replaced.
+	 */
+	protected static void replaceRoot(Tree tree, Node node)
+	{
+		if (node == tree.root)
+			return;
+		if (node.shared)
+			node = node.copy();
+		
+		tree.root.full 		= node.full;
+		tree.root.children 	= node.children;
+		tree.root.bits 		= node.bits;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		RE-ROOTING
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Doubles the side of a tree, wrapping its root in a new root, until it covers the given
+	 * cube. While the tree's side is smaller and its grid lines up with the cube's, each new
+	 * root is the cube's node around the old root, so that the cube becomes a node of the tree.
+	 *
+	 * @param tree			an Octree or Quadtree
+	 * @param from			min corner of the cube
+	 * @param to			max corner of the cube, exclusive
+	 */
+	protected static void cover(Tree tree, int[] from, int[] to)
+	{
+		int[] 	min 	= tree.min,
+				max 	= tree.max;
+		int 	target 	= to[0] - from[0],
+				side, index, i;
+		boolean aligned, down;
+		
+		while (!contains(min, max, from, to))
+		{
+			side 	= max[0] - min[0];
+			aligned = side < target && aligned(min, from, side);
+			index 	= 0;
+			
+			for (i = 0; i < min.length; i++)
+			{
+				down = aligned ? (Math.floorDiv(min[i] - from[i], side) & 1) != 0
+							   : from[i] < min[i];
+				if (down)
+				{
+					min[i] -= side;
+					index  |= 1 << i;
+				}
+				else
+					max[i] += side;
+			}
+			
+			Node old 		= new Node(tree.root.full);
+			old.children 	= tree.root.children;
+			old.bits 		= tree.root.bits;
+			
+			tree.root.full 	= false;
+			tree.root.bits 	= null;
+			if (Tree.isEmpty(old))
+				tree.root.children = null;
+			else
+			{
+				tree.root.children = Node.emptyNodeArray(min.length == 3 ? 8 : 4);
+				tree.root.children[index] = old;
+			}
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		LOCKSTEP
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Combines the other tree's root into the node of this tree at the same cube, or, if this
+	 * tree is smaller, the other tree's node at this tree's cube into this tree's root.
+	 *
+	 * @param tree			the tree to combine into, whose grid lines up with the other tree's
+	 * @param b				root of the other tree, shared
+	 * @param bMin			min corner of the other tree
+	 * @param bSide			side of the other tree
+	 */
+	protected void lockstep(Tree tree, Node b, int[] bMin, int bSide)
+	{
+		int[] 	lo 		= tree.min.clone(),
+				bMax 	= new int[bMin.length];
+		int 	side 	= tree.max[0] - tree.min[0];
+		
+		for (int i = 0; i < bMin.length; i++)
+			bMax[i] = bMin[i] + bSide;
+		
+		if (side <= bSide)
+		{
+			replaceRoot(tree, combine(tree.root, find(b, bMin, bSide, lo, side), side));
+			return;
+		}
+		if (!contains(tree.min, tree.max, bMin, bMax))		//	disjoint
+		{
+			if (op == INTERSECTION)
+				replaceRoot(tree, NodePool.EMPTY);
+			return;
+		}
+		
+		Node[] 	path 	= new Node[32];
+		int 	depth 	= 0,
+				half, index, i;
+		Node 	node 	= tree.root;
+		
+		while (true)
+		{
+			if (node.bits != null || side == brickSide)
+			{
+				embed(node, b, bMin, bSide, lo, side);
+				break;
+			}
+			if (node.children == null)
+			{
+				if (node.full ? op == UNION : op == INTERSECTION || op == DIFFERENCE)
+					break;
+				
+				node.children 	= node.full ? Node.fullNodeArray(branches) : Node.emptyNodeArray(branches);
+				node.full 		= false;
+			}
+			
+			half  = side >>> 1;
+			index = 0;
+			for (i = 0; i < lo.length; i++)
+				if (bMin[i] >= lo[i] + half)
+				{
+					lo[i] += half;
+					index |= 1 << i;
+				}
+			
+			if (op == INTERSECTION)
+				for (i = 0; i < branches; i++)
+					if (i != index)
+						node.children[i] = NodePool.EMPTY;
+			
+			path[depth++] = node;
+			side = half;
+			
+			if (side == bSide)
+			{
+				node.children[index] = combine(node.children[index], b, side);
+				break;
+			}
+			node = Tree.writable(node, index);
+		}
+		
+		while (depth > 0)
+		{
+			node = path[--depth];
+			Node leaf = collapsed(node);
+			if (leaf != node)
+			{
+				node.full 		= leaf.full;
+				node.children 	= null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * The node of the other tree at the given cube, or a leaf around it. Bricks are expanded
+	 * into new nodes on the way, so the other tree is not changed.
+	 *
+	 * @param b				root of the other tree
+	 * @param bMin			min corner of the other tree
+	 * @param bSide			side of the other tree
+	 * @param at			min corner of the cube, on the other tree's grid
+	 * @param side			side of the cube, no larger than the other tree's
+	 */
+	protected static Node find(Node b, int[] bMin, int bSide, int[] at, int side)
+	{
+		int[] lo = bMin.clone();
+		int   half, index, i;
+		
+		for (i = 0; i < lo.length; i++)
+			if (at[i] < lo[i] || at[i] + side > lo[i] + bSide)
+				return NodePool.EMPTY;
+		
+		while (bSide > side && (b.children != null || b.bits != null))
+		{
+			if (b.bits != null)
+				b = Octree.fromBits(b.bits, bSide, 0, 0, 0, bSide);
+			
+			half  = bSide >>> 1;
+			index = 0;
+			for (i = 0; i < lo.length; i++)
+				if (at[i] >= lo[i] + half)
+				{
+					lo[i] += half;
+					index |= 1 << i;
+				}
+			
+			b 	  = b.children[index];
+			bSide = half;
+		}
+		return b;
+	}
+	
+	
+	/**
+	 * Combines two nodes of the same cube, and returns the result, which may be either node,
+	 * a shared leaf, or a new node. The first node is changed in place unless it is shared.
+	 *
+	 * @param a				node of the tree to combine into
+	 * @param b				node of the other tree, which is not changed
+	 * @param side			side of the cube
+	 */
+	protected Node combine(Node a, Node b, int side)
+	{
+		if (a == b)											//	shared by both trees
+			return op == UNION || op == INTERSECTION ? a : NodePool.EMPTY;
+		
+		boolean aEmpty = Tree.isEmpty(a),
+				bEmpty = Tree.isEmpty(b);
+		
+		switch (op)
+		{
+			case UNION :
+				if (a.full || bEmpty) 	return a;
+				if (b.full) 			return NodePool.FULL;
+				if (aEmpty) 			return graft(b);
+				break;
+			
+			case INTERSECTION :
+				if (aEmpty || b.full) 	return a;
+				if (bEmpty) 			return NodePool.EMPTY;
+				if (a.full) 			return graft(b);
+				break;
+			
+			case DIFFERENCE :
+				if (aEmpty || bEmpty) 	return a;
+				if (b.full) 			return NodePool.EMPTY;
+				if (a.full) 			return complement(b, side);
+				break;
+			
+			case SYMMETRIC_DIFFERENCE :
+				if (bEmpty) 			return a;
+				if (aEmpty) 			return graft(b);
+				if (b.full) 			return complement(a, side);
+				if (a.full) 			return complement(b, side);
+				break;
+		}
+		
+		if (a.bits != null || b.bits != null && side == brickSide)
+			return combineBits(a, b, side);
+		
+		if (b.bits != null)									//	from a tree with another brick side
+			b = Octree.fromBits(b.bits, side, 0, 0, 0, side);
+		
+		Node node = a.shared ? a.copy() : a;
+		for (int i = 0; i < branches; i++)
+			node.children[i] = combine(node.children[i], b.children[i], side >>> 1);
+		
+		return collapsed(node);
+	}
+	
+	
+	/**
+	 * A full or empty leaf if all children of the node are full or all are empty,
+	 * or else the node itself.
+	 */
+	protected Node collapsed(Node node)
+	{
+		boolean full = true, empty = true;
+		for (Node child : node.children)
+		{
+			full  &= child.full;
+			empty &= Tree.isEmpty(child);
+		}
+		return full ? NodePool.FULL : empty ? NodePool.EMPTY : node;
+	}
+	
+	
+	/**
+	 * Marks a node of the other tree shared, so that either tree copies it before changing it.
+	 * The flag is set on the other tree's own node: its descendants below the root are not
+	 * marked by {@link Tree#share(Node)}, and without it this tree could edit them in place.
+	 */
+	protected static Node graft(Node node)
+	{
+		node.shared = true;
+		return node;
+	}
+	
+	
+	/**
+	 * A new node of every block of the cube not in the given node.
+	 */
+	protected Node complement(Node node, int side)
+	{
+		if (node.full)
+			return NodePool.EMPTY;
+		
+		if (node.bits != null)
+		{
+			Node brick = new Node(false);
+			brick.bits = new long[node.bits.length];
+			for (int i = 0; i < brick.bits.length; i++)
+				brick.bits[i] = ~node.bits[i];
+			return brick;
+		}
+		if (node.children == null)
+			return NodePool.FULL;
+		
+		Node[] children = new Node[branches];
+		for (int i = 0; i < branches; i++)
+			children[i] = complement(node.children[i], side >>> 1);
+		return new Node(children);
+	}
+	
+	
+	/**
+	 * Combines two nodes of the same cube as bricks, one word at a time,
+	 * and returns a new brick, or a leaf if the result is uniform.
+	 */
+	protected Node combineBits(Node a, Node b, int side)
+	{
+		long[] 	x = new long[Math.max(side * side * side >>> 6, 1)],
+				y = new long[x.length];
+		
+		Octree.toBits(a, x, side, 0, 0, 0, side);
+		Octree.toBits(b, y, side, 0, 0, 0, side);
+		
+		Node node = new Node(false);
+		node.bits = apply(x, y);
+		Octree.normalize(node, side);
+		return node;
+	}
+	
+	
+	/**
+	 * Combines the other tree, smaller than a brick, into the brick at the given node, in place.
+	 *
+	 * @param node			a writable brick, or node at the brick side, of this tree
+	 * @param b				root of the other tree
+	 * @param bMin			min corner of the other tree
+	 * @param bSide			side of the other tree
+	 * @param lo			min corner of the node
+	 * @param side			side of the node
+	 */
+	protected void embed(Node node, Node b, int[] bMin, int bSide, int[] lo, int side)
+	{
+		long[] 	x = new long[Math.max(side * side * side >>> 6, 1)],
+				y = new long[x.length];
+		
+		Octree.toBits(node, x, side, 0, 0, 0, side);
+		
+		if (b.bits != null)
+			b = Octree.fromBits(b.bits, bSide, 0, 0, 0, bSide);
+		Octree.toBits(b, y, side, bMin[0] - lo[0], bMin[1] - lo[1], bMin[2] - lo[2], bSide);
+		
+		node.full 		= false;
+		node.children 	= null;
+		node.bits 		= apply(x, y);
+		Octree.normalize(node, side);
+	}
+	
+	
+	/**
+	 * Applies the operation to two bricks, word by word, in place of the first.
+	 */
+	protected long[] apply(long[] x, long[] y)
+	{
+		for (int i = 0; i < x.length; i++)
+			switch (op)
+			{
+				case UNION 					: x[i] |=  y[i]; break;
+				case INTERSECTION 			: x[i] &=  y[i]; break;
+				case DIFFERENCE 			: x[i] &= ~y[i]; break;
+				case SYMMETRIC_DIFFERENCE 	: x[i] ^=  y[i]; break;
+			}
+		return x;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		SELECTIONS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Adds or removes the other tree as a selection, for trees whose grids do not line up.
+	 * Not used for the symmetric difference, which is a union of two differences.
+	 *
+	 * @param tree			the tree to combine into
+	 * @param b				root of the other tree
+	 * @param bMin			min corner of the other tree
+	 * @param bSide			side of the other tree
+	 */
+	protected void select(Tree tree, Node b, int[] bMin, int bSide)
+	{
+		int[][] bounds 	 = new int[bMin.length][];
+		boolean inverted = op == INTERSECTION;				//	removes every block not in the other tree
+		
+		for (int i = 0; i < bounds.length; i++)
+		{
+			bounds[i] = inverted ? new int[] { tree.min[i], tree.max[i] }
+								 : new int[] { Math.max(tree.min[i], bMin[i]), Math.min(tree.max[i], bMin[i] + bSide) };
+			if (bounds[i][0] >= bounds[i][1])
+				return;
+		}
+		
+		if (branches == 8)
+			((Octree) tree).edit(new Contents3D(b, bMin, bSide, inverted, bounds), op == UNION, bounds);
+		else
+		{
+			Quadtree 	quadtree 	= (Quadtree) tree;
+			Selection2D blocks 		= new Contents2D(b, bMin, bSide, inverted, bounds);
+			int 		half 		= tree.max[0] - tree.min[0] >>> 1;
+			
+			if (op == UNION)
+				quadtree.add(tree.root, half,
+							 tree.min[0], tree.min[1], tree.max[0], tree.max[1],
+							 bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
+							 blocks
+							 );
+			else
+				quadtree.remove(tree.root, half,
+								tree.min[0], tree.min[1], tree.max[0], tree.max[1],
+								bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
+								blocks
+								);
+		}
+	}
+	
+	
+	/**
+	 * Compares a node inside the given box, which must be within the node,
+	 * stopping at the first two leaves that differ.
+	 *
+	 * @param node			the node
+	 * @param side			side of the node
+	 * @param x				min x of the node
+	 * @param z				min z of the node
+	 * @param y				min y of the node, 0 for a Quadtree
+	 * @param branches		8 for an Octree, 4 for a Quadtree
+	 * @return				2 (all set), 1 (none set), or 0 (some set)
+	 */
+	protected static int compare(Node node, int side, int x, int z, int y, int branches,
+								 int minX, int minZ, int minY, int maxX, int maxZ, int maxY
+								 )
+	{
+		if (node.full)
+			return 2;
+		if (node.bits != null)
+			return Octree.compareBits(node.bits, side, minX - x, minZ - z, minY - y, maxX - x, maxZ - z, maxY - y);
+		if (node.children == null)
+			return 1;
+		
+		int half = side >>> 1, result = -1, compared, cx, cz, cy;
+		for (int i = 0; i < branches; i++)
+		{
+			cx = x + (i & 1) * half;
+			cz = z + (i >>> 1 & 1) * half;
+			cy = y + (i >>> 2) * half;
+			if (cx >= maxX || cx + half <= minX ||
+				cz >= maxZ || cz + half <= minZ ||
+				cy >= maxY || cy + half <= minY
+				)
+				continue;
+			
+			compared = compare(node.children[i], half, cx, cz, cy, branches,
+							   Math.max(minX, cx), Math.max(minZ, cz), Math.max(minY, cy),
+							   Math.min(maxX, cx + half), Math.min(maxZ, cz + half), Math.min(maxY, cy + half)
+							   );
+			if (compared == 0 || result != -1 && compared != result)
+				return 0;
+			result = compared;
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Compares a tree inside any box, outside of which the tree is empty,
+	 * and swaps full and empty if inverted.
+	 */
+	protected static int compare(Node root, int[] min, int side, int branches, boolean inverted,
+								 int minX, int minZ, int minY, int maxX, int maxZ, int maxY
+								 )
+	{
+		int y 	 = branches == 8 ? min[2] : 0,
+			minX1 = Math.max(minX, min[0]), maxX1 = Math.min(maxX, min[0] + side),
+			minZ1 = Math.max(minZ, min[1]), maxZ1 = Math.min(maxZ, min[1] + side),
+			minY1 = Math.max(minY, y), 		maxY1 = Math.min(maxY, y + side),
+			compared;
+		
+		if (minX1 >= maxX1 || minZ1 >= maxZ1 || minY1 >= maxY1)
+			compared = 1;
+		else
+		{
+			compared = compare(root, side, min[0], min[1], y, branches, minX1, minZ1, minY1, maxX1, maxZ1, maxY1);
+			
+			if (compared == 2 && (minX1 != minX || maxX1 != maxX || minZ1 != minZ || maxZ1 != maxZ || minY1 != minY || maxY1 != maxY))
+				compared = 0;
+		}
+		return compared == 0 || !inverted ? compared : 3 - compared;
+	}
+	
+	
+	/**
+	 * The blocks of an Octree, or those not in it if inverted, as a selection.
+	 */
+	protected static class Contents3D extends Selection3D
+	{
+		protected final Node 		root;
+		protected final int[] 		min;
+		protected final int 		side;
+		protected final boolean 	inverted;
+		
+		protected Contents3D(Node root, int[] min, int side, boolean inverted, int[]... bounds)
+		{
+			super(bounds);
+			
+			this.root 		= root;
+			this.min 		= min;
+			this.side 		= side;
+			this.inverted 	= inverted;
+		}
+		
+		@Override
+		public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+		{
+			return compare(root, min, side, 8, inverted, minX1, minZ1, minY1, maxX1, maxZ1, maxY1);
+		}
+		
+		@Override
+		public boolean get(int x, int z, int y)
+		{
+			return compareRegion(x, z, y, x + 1, z + 1, y + 1) == 2;
+		}
+	}
+	
+	
+	/**
+	 * The blocks of a Quadtree, or those not in it if inverted, as a selection.
+	 */
+	protected static class Contents2D extends Selection2D
+	{
+		protected final Node 		root;
+		protected final int[] 		min;
+		protected final int 		side;
+		protected final boolean 	inverted;
+		
+		protected Contents2D(Node root, int[] min, int side, boolean inverted, int[]... bounds)
+		{
+			super(bounds);
+			
+			this.root 		= root;
+			this.min 		= min;
+			this.side 		= side;
+			this.inverted 	= inverted;
+		}
+		
+		@Override
+		public int compareRegion(int minX1, int minZ1, int maxX1, int maxZ1)
+		{
+			return compare(root, min, side, 4, inverted, minX1, minZ1, 0, maxX1, maxZ1, 1);
+		}
+	}
+}
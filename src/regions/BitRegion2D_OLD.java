@@ -1,6 +1,16 @@
 package regions;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import regions.BitRegionUtil.Words;
 
 public class BitRegion2D_OLD
 {
@@ -15,12 +25,15 @@ public class BitRegion2D_OLD
 	
 	protected int[] sides;		public int[] getSides() { return sides;	}
 	
-	protected final BitSet blocks;
+	/**
+	 * Bits of the region's blocks, laid out as by {@link BitSet#toLongArray()}.
+	 */
+	protected long[] words;
 	
 	public BitRegion2D_OLD()
 	{
 		sides	= new int[] { 0, 0 };
-		blocks	= new BitSet();
+		words	= new long[0];
 	}
 	
 	
@@ -40,7 +53,7 @@ public class BitRegion2D_OLD
 	 */
 	public int getVolume()
 	{
-		return blocks.cardinality();
+		return Words.cardinality(words);
 	}
 	
 	
@@ -97,7 +110,7 @@ public class BitRegion2D_OLD
 			0 > z || z >= sides[1]) 
 			return false;
 		
-		return blocks.get(getIndex(x,z));
+		return Words.get(getIndex(x,z), words);
 	}
 	
 	
@@ -109,7 +122,7 @@ public class BitRegion2D_OLD
 	 */
 	public boolean bitvalue(int index)
 	{
-		return blocks.get(index);
+		return Words.get(index, words);
 	}
 	
 	
@@ -125,6 +138,8 @@ public class BitRegion2D_OLD
 	
 	
 	/**
+	 * Shifts the blocks from the given index up by the given number of bits, a word at a time, 
+	 * and clears the bits they leave.
 	 * 
 	 * @param shift
 	 * @param fromIndex
@@ -134,30 +149,62 @@ public class BitRegion2D_OLD
 		if (shift < 1) 
 			return;
 		
-		int toAboveThisIndex = fromIndex + shift - 1;
+		int bits = words.length << 6;
 		
-		for (int i = blocks.size() + shift; i > toAboveThisIndex; i--)
-		{
-			blocks.set(i, blocks.get(i - shift));
-		}
-		blocks.clear(fromIndex, toAboveThisIndex);
+		long[] newWords = Arrays.copyOf(words, Words.length(Math.max(bits, fromIndex) + shift));
+		Words.copy(words, fromIndex, newWords, fromIndex + shift, bits - fromIndex);
+		Words.set(false, fromIndex, fromIndex + shift, newWords);
+		
+		words = newWords;
 	}
 	
 	
 	/**
+	 * Grows the bounding box to the given bounds, relative to the current bounds, which they 
+	 * must contain. Copies each row of blocks to its new position a word at a time, or all 
+	 * rows together if the box grows only along z.
 	 * 
-	 * @param xShift
-	 * @param zShift
-	 * @param yShift
+	 * @param xMin
+	 * @param xMax
+	 * @param zMin
+	 * @param zMax
 	 */
 	public void expand(int xMin, int xMax, int zMin, int zMax)
 	{
 		int[] newSides = new int[] {xMax - xMin + 1, 
 									zMax - zMin + 1};
 		
-		/* add empty space before each x row
-		 * add empty space at bottom
-		 */
+		long[] newWords = new long[Words.length(newSides[0] * newSides[1])];
+		
+		int length = sides[0], rows = sides[1];
+		if (newSides[0] == sides[0])		//	rows stay contiguous
+		{
+			length *= rows;
+			rows 	= 1;
+		}
+		
+		for (int z = 0; z < rows; z++)
+		{
+			Words.copy(words, z * sides[0], 
+					   newWords, (z - zMin) * newSides[0] - xMin, 
+					   length
+					   );
+		}
+		
+		sides = newSides;
+		words = newWords;
+	}
+	
+	
+	/**
+	 * Sets or clears the bits in <tt>[from, to)</tt>, growing the words as needed.
+	 */
+	protected void set(boolean value, int from, int to)
+	{
+		if (to > words.length << 6)
+			words = Arrays.copyOf(words, Words.length(to));
+		
+		Words.set(value, from, to, words);
 	}
 	
 	
@@ -216,7 +263,7 @@ public class BitRegion2D_OLD
 	 */
 	public void fill()
 	{
-		blocks.set(0, getBoundsVolume() - 1);
+		set(true, 0, getBoundsVolume());
 	}
 	
 	
@@ -229,7 +276,8 @@ public class BitRegion2D_OLD
 	{
 		adjustBoundsIfNecessary(x, z);
 		
-		blocks.set(getIndex(x, z));
+		int index = getIndex(x, z);
+		set(true, index, index + 1);
 	}
 	
 	
@@ -246,17 +294,13 @@ public class BitRegion2D_OLD
 		adjustBoundsIfNecessary(minX, maxX, minZ, maxZ);
 		
 		int z;
-		int x;
 		
 		int index;
 		
 		for (z = minZ; z <= maxZ; z++)
 		{
 			index = getIndex(minX, z);
-			for (x = minX; x <= maxX; x++) 
-			{	
-				blocks.set(index++);
-			}
+			set(true, index, index + maxX - minX + 1);
 		}
 	}
 	
@@ -282,9 +326,9 @@ public class BitRegion2D_OLD
 		for (z = minZ; z <= maxZ; z++)
 		{
 			index1 = getIndex(minX, z);
-			for (x = minX; x <= maxX; x++) 
+			for (x = minX; x <= maxX; x++, index1++) 
 			{	
-				if (blocksToFill.get(index2++)) blocks.set(index1++);
+				if (blocksToFill.get(index2++)) set(true, index1, index1 + 1);
 			}
 		}
 	}
@@ -299,7 +343,7 @@ public class BitRegion2D_OLD
 	 */
 	public void clear()
 	{
-		blocks.clear();
+		Arrays.fill(words, 0);
 	}
 	
 	
@@ -310,7 +354,8 @@ public class BitRegion2D_OLD
 	 */
 	public void clear(int x, int z)
 	{
-		blocks.clear(getIndex(x, z));
+		int index = getIndex(x, z);
+		set(false, index, index + 1);
 	}
 	
 	
@@ -325,17 +370,13 @@ public class BitRegion2D_OLD
 	public void clear(int minX, int maxX, int minZ, int maxZ)
 	{
 		int z;
-		int x;
 		
 		int index;
 		
 		for (z = minZ; z <= maxZ; z++)
 		{
 			index = getIndex(minX, z);
-			for (x = minX; x <= maxX; x++) 
-			{	
-				blocks.clear(index++);
-			}
+			set(false, index, index + maxX - minX + 1);
 		}
 	}
 	
@@ -359,10 +400,83 @@ public class BitRegion2D_OLD
 		for (z = minZ; z <= maxZ; z++)
 		{
 			index1 = getIndex(minX, z);
-			for (x = minX; x <= maxX; x++) 
+			for (x = minX; x <= maxX; x++, index1++) 
 			{	
-				if (blocksToClear.get(index2++)) blocks.clear(index1++);
+				if (blocksToClear.get(index2++)) set(false, index1, index1 + 1);
 			}
 		}
 	}
+	
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		MIGRATION																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	/**
+	 * Builds a Quadtree of this region in one pass over its blocks, with the region's 
+	 * block (0, 0) at the given min corner. See {@link Tree#Tree(File, BitSet, int[][])}.
+	 * 
+	 * @param file			the save destination of the Quadtree
+	 * @param min			world coordinates of the region's block (0, 0)
+	 * @return				the Quadtree
+	 */
+	public Quadtree toQuadtree(File file, int... min)
+	{
+		return new Quadtree(file, BitSet.valueOf(words), new int[][] { { min[0], min[0] + sides[0] }, 
+																	   { min[1], min[1] + sides[1] } });
+	}
+	
+	
+	/**
+	 * Converts legacy regions to Quadtrees in bulk, in parallel on the common ForkJoinPool, 
+	 * and saves each to its file. Each region's block (0, 0) is at the given min corner.
+	 * 
+	 * @param regions		each region, mapped to the file to save its Quadtree to
+	 * @param min			world coordinates of each region's block (0, 0)
+	 * @return				the Quadtrees, mapped to their files
+	 * @throws 				IOException if any Quadtree failed to save
+	 */
+	public static Map<File, Quadtree> migrate(Map<File, BitRegion2D_OLD> regions, final int... min) throws IOException
+	{
+		Map<File, CompletableFuture<Quadtree>> futures = new LinkedHashMap<File, CompletableFuture<Quadtree>>();
+		for (final Map.Entry<File, BitRegion2D_OLD> entry : regions.entrySet())
+			futures.put(entry.getKey(), CompletableFuture.supplyAsync(new Supplier<Quadtree>()
+			{
+				@Override
+				public Quadtree get()
+				{
+					Quadtree quadtree = entry.getValue().toQuadtree(entry.getKey(), min);
+					try
+					{
+						quadtree.saveToFile();
+					}
+					catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+					return quadtree;
+				}
+			}));
+		
+		Map<File, Quadtree> quadtrees = new LinkedHashMap<File, Quadtree>();
+		try
+		{
+			for (Map.Entry<File, CompletableFuture<Quadtree>> entry : futures.entrySet())
+				quadtrees.put(entry.getKey(), entry.getValue().join());
+		}
+		catch (RuntimeException e)
+		{
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+		return quadtrees;
+	}
 }
@@ -1,6 +1,16 @@
 package regions;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import regions.BitRegionUtil.Words;
 
 public class BitRegion3D_OLD
 {
@@ -15,12 +25,15 @@ public class BitRegion3D_OLD
 	
 	protected int[] sides;		
 	
-	protected final BitSet blocks;
+	/**
+	 * Bits of the region's blocks, laid out as by {@link BitSet#toLongArray()}.
+	 */
+	protected long[] words;
 	
 	protected BitRegion3D_OLD()
 	{
 		sides	= new int[] { 0, 0, 0 };
-		blocks	= new BitSet();
+		words	= new long[0];
 	}
 	
 	
@@ -49,7 +62,7 @@ public class BitRegion3D_OLD
 	 */
 	public int getVolume()
 	{
-		return blocks.cardinality();
+		return Words.cardinality(words);
 	}
 	
 	
@@ -111,7 +124,7 @@ public class BitRegion3D_OLD
 			0 > y || y >= sides[2]) 
 			return false;
 		
-		return blocks.get(getIndex(x, z, y));
+		return Words.get(getIndex(x, z, y), words);
 	}
 	
 	
@@ -123,7 +136,7 @@ public class BitRegion3D_OLD
 	 */
 	public boolean bitvalue(int index)
 	{
-		return blocks.get(index);
+		return Words.get(index, words);
 	}
 	
 	
@@ -139,6 +152,9 @@ public class BitRegion3D_OLD
 	
 	
 	/**
+	 * Grows the bounding box to the given bounds, relative to the current bounds, which they 
+	 * must contain. Copies each row of blocks to its new position a word at a time; rows that 
+	 * stay contiguous, where the box grows only along z or y, are copied together.
 	 * 
 	 * @param xMin
 	 * @param xMax
@@ -153,38 +169,46 @@ public class BitRegion3D_OLD
 										   zMax - zMin + 1, 
 						   				   yMax - yMin + 1 };
 		
-		final int yRoof = (newSides[2] - sides[2] + yMin) * newSides[0] * newSides[1];
-		final int zRoof = (newSides[1] - sides[1] + zMin) * newSides[0];
-		final int xRoof =  newSides[0] - sides[0] + xMin;
-		
-		final int yIncrement = yRoof + -yMin * newSides[0] * newSides[1];
-		final int zIncrement = zRoof + -zMin * newSides[0];
-		final int xIncrement = xRoof + -xMin;
+		final long[] newWords = new long[Words.length(newSides[0] * newSides[1] * newSides[2])];
 		
+		int length = sides[0], rows = sides[1], layers = sides[2];
+		if (newSides[0] == sides[0])		//	rows of a layer stay contiguous
+		{
+			length *= rows;
+			rows 	= 1;
+			if (newSides[1] == sides[1])	//	so do layers
+			{
+				length *= layers;
+				layers 	= 1;
+			}
+		}
 		
-		
-		int index = sides[0] * sides[1] * sides[2] - 1;
-		int shift = newSides[0] * newSides[1] * newSides[2] - 1 - (yRoof + zRoof + xRoof) - index;
-		int newIndex = index + shift;
-		int x, z, y;
-		
-		for (y = sides[2]; y > 0; y--)
+		int y, z;
+		for (y = 0; y < layers; y++)
 		{
-			for (z = sides[1]; z > 0; z--)
+			for (z = 0; z < rows; z++)
 			{
-				newIndex = index + shift;
-				for (x = sides[0]; x > 0; x--)
-				{
-					blocks.set(newIndex--, blocks.get(index--));
-				}
-				shift -= xIncrement;
-				blocks.clear(index + shift, newIndex);
+				Words.copy(words, (y * sides[1] + z) * sides[0], 
+						   newWords, ((y - yMin) * newSides[1] + z - zMin) * newSides[0] - xMin, 
+						   length
+						   );
 			}
-			shift -= zIncrement;
-			blocks.clear(index + shift, newIndex);
 		}
-		shift -= yIncrement;
-		blocks.clear(index + shift, newIndex);		
+		
+		sides = newSides;
+		words = newWords;
+	}
+	
+	
+	/**
+	 * Sets or clears the bits in <tt>[from, to)</tt>, growing the words as needed.
+	 */
+	protected void set(boolean value, int from, int to)
+	{
+		if (to > words.length << 6)
+			words = Arrays.copyOf(words, Words.length(to));
+		
+		Words.set(value, from, to, words);
 	}
 	
 	
@@ -256,7 +280,7 @@ public class BitRegion3D_OLD
 	 */
 	public void fill()
 	{
-		blocks.set(0, getBoundsVolume() - 1);
+		set(true, 0, getBoundsVolume());
 	}
 	
 	
@@ -270,7 +294,8 @@ public class BitRegion3D_OLD
 	{
 		adjustBoundsIfNecessary(x, z, y);
 		
-		blocks.set(getIndex(x, z, y));
+		int index = getIndex(x, z, y);
+		set(true, index, index + 1);
 	}
 	
 	
@@ -286,11 +311,10 @@ public class BitRegion3D_OLD
 	 */
 	public void fill(int minX, int maxX, int minZ, int maxZ, int minY, int maxY)
 	{
-		adjustBoundsIfNecessary(minX, maxX, minZ, maxZ, minY, maxY);
+		adjustBoundsIfNecessary(minX, minZ, minY, maxX, maxZ, maxY);
 		
 		int y;
 		int z;
-		int x;
 		
 		int index;
 		
@@ -299,10 +323,7 @@ public class BitRegion3D_OLD
 			for (z = minZ; z <= maxZ; z++)
 			{
 				index = getIndex(minX, z, y);
-				for (x = minX; x <= maxX; x++) 
-				{	
-					blocks.set(index++);
-				}
+				set(true, index, index + maxX - minX + 1);
 			}
 		}
 	}
@@ -320,7 +341,7 @@ public class BitRegion3D_OLD
 	 */
 	public void fill(BitSet blocksToFill, int minX, int maxX, int minZ, int maxZ, int minY, int maxY)
 	{
-		adjustBoundsIfNecessary(minX, maxX, minZ, maxZ, minY, maxY);
+		adjustBoundsIfNecessary(minX, minZ, minY, maxX, maxZ, maxY);
 		
 		int y;
 		int z;
@@ -334,9 +355,9 @@ public class BitRegion3D_OLD
 			for (z = minZ; z <= maxZ; z++)
 			{
 				index1 = getIndex(minX, z, y);
-				for (x = minX; x <= maxX; x++) 
+				for (x = minX; x <= maxX; x++, index1++) 
 				{	
-					if (blocksToFill.get(index2++)) blocks.set(index1++);
+					if (blocksToFill.get(index2++)) set(true, index1, index1 + 1);
 				}
 			}
 		}
@@ -354,7 +375,7 @@ public class BitRegion3D_OLD
 	 */
 	public void clear()
 	{
-		blocks.clear();
+		Arrays.fill(words, 0);
 	}
 	
 	
@@ -366,7 +387,8 @@ public class BitRegion3D_OLD
 	 */
 	public void clear(int x, int z, int y)
 	{
-		blocks.clear(getIndex(x, z, y));
+		int index = getIndex(x, z, y);
+		set(false, index, index + 1);
 	}
 	
 	
@@ -384,7 +406,6 @@ public class BitRegion3D_OLD
 	{
 		int y;
 		int z;
-		int x;
 		
 		int index;
 		
@@ -393,10 +414,7 @@ public class BitRegion3D_OLD
 			for (z = minZ; z <= maxZ; z++)
 			{
 				index = getIndex(minX, z, y);
-				for (x = minX; x <= maxX; x++) 
-				{	
-					blocks.clear(index++);
-				}
+				set(false, index, index + maxX - minX + 1);
 			}
 		}
 	}
@@ -426,11 +444,85 @@ public class BitRegion3D_OLD
 			for (z = minZ; z <= maxZ; z++)
 			{
 				index1 = getIndex(minX, z, y);
-				for (x = minX; x <= maxX; x++) 
+				for (x = minX; x <= maxX; x++, index1++) 
 				{	
-					if (blocksToClear.get(index2++)) blocks.clear(index1++);
+					if (blocksToClear.get(index2++)) set(false, index1, index1 + 1);
 				}
 			}
 		}
 	}
+	
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		MIGRATION																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	/**
+	 * Builds an Octree of this region in one pass over its blocks, with the region's 
+	 * block (0, 0, 0) at the given min corner. See {@link Tree#Tree(File, BitSet, int[][])}.
+	 * 
+	 * @param file			the save destination of the Octree
+	 * @param min			world coordinates of the region's block (0, 0, 0)
+	 * @return				the Octree
+	 */
+	public Octree toOctree(File file, int... min)
+	{
+		return new Octree(file, BitSet.valueOf(words), new int[][] { { min[0], min[0] + sides[0] }, 
+																	 { min[1], min[1] + sides[1] }, 
+																	 { min[2], min[2] + sides[2] } });
+	}
+	
+	
+	/**
+	 * Converts legacy regions to Octrees in bulk, in parallel on the common ForkJoinPool, 
+	 * and saves each to its file. Each region's block (0, 0, 0) is at the given min corner.
+	 * 
+	 * @param regions		each region, mapped to the file to save its Octree to
+	 * @param min			world coordinates of each region's block (0, 0, 0)
+	 * @return				the Octrees, mapped to their files
+	 * @throws 				IOException if any Octree failed to save
+	 */
+	public static Map<File, Octree> migrate(Map<File, BitRegion3D_OLD> regions, final int... min) throws IOException
+	{
+		Map<File, CompletableFuture<Octree>> futures = new LinkedHashMap<File, CompletableFuture<Octree>>();
+		for (final Map.Entry<File, BitRegion3D_OLD> entry : regions.entrySet())
+			futures.put(entry.getKey(), CompletableFuture.supplyAsync(new Supplier<Octree>()
+			{
+				@Override
+				public Octree get()
+				{
+					Octree octree = entry.getValue().toOctree(entry.getKey(), min);
+					try
+					{
+						octree.saveToFile();
+					}
+					catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+					return octree;
+				}
+			}));
+		
+		Map<File, Octree> octrees = new LinkedHashMap<File, Octree>();
+		try
+		{
+			for (Map.Entry<File, CompletableFuture<Octree>> entry : futures.entrySet())
+				octrees.put(entry.getKey(), entry.getValue().join());
+		}
+		catch (RuntimeException e)
+		{
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw e;
+		}
+		return octrees;
+	}
 }
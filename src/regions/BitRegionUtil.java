@@ -1,5 +1,6 @@
 package regions;
 
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
@@ -9,6 +10,46 @@ import java.util.BitSet;
  */
 public class BitRegionUtil 
 {
+	/**
+	 * Whether any bit in <tt>[from, to)</tt> has the given value. Scans a word at a time, 
+	 * through {@link BitSet#nextSetBit(int)} or {@link BitSet#nextClearBit(int)}. Those run 
+	 * on past <tt>to</tt> to the next bit of the value, wherever it is, so ranges of up to a 
+	 * word are tested bit by bit instead: a small box's rows cost a few reads, not a search 
+	 * across the rest of the selection.
+	 * 
+	 * @param value			the value to look for
+	 * @param from			index of the first bit
+	 * @param to			index after the last bit
+	 * @param blocks		the BitSet to scan
+	 * @return				whether the value was found
+	 */
+	public static boolean scan(boolean value, int from, int to, BitSet blocks)
+	{
+		if (to - from <= 64)
+		{
+			for (; from < to; from++)
+				if (blocks.get(from) == value)
+					return true;
+			return false;
+		}
+		if (value)
+		{
+			int next = blocks.nextSetBit(from);
+			return next != -1 && next < to;
+		}
+		return blocks.nextClearBit(from) < to;
+	}
+	
+	
+	/**
+	 * The word at the given index, or 0 past the end of the array.
+	 */
+	protected static long word(int i, long[] words)
+	{
+		return i < words.length ? words[i] : 0;
+	}
+	
+	
 	/*
 	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
 	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
@@ -134,15 +175,18 @@ public class BitRegionUtil
 									  BitSet blocks
 									  )
 		{
-			int z, x, index;
+			if (minX1 >= maxX1 || minZ1 >= maxZ1)
+				return false;
+			
+			if (minX1 == 0 && maxX1 == maxX2)		//	full rows are contiguous
+				return scan(value, index(0, minZ1, maxX2, maxZ2), maxZ1 * maxX2, blocks);
+			
+			int z, index;
 			for (z = minZ1; z < maxZ1; z++)
 			{
-				index = index(x = minX1, z, maxX2, maxZ2);
-				for (; x < maxX1; x++) 
-				{
-					if (blocks.get(index++) == value) 
-						return true;
-				}
+				index = index(minX1, z, maxX2, maxZ2);
+				if (scan(value, index, index + maxX1 - minX1, blocks)) 
+					return true;
 			}
 			return false;
 		}
@@ -320,6 +364,8 @@ public class BitRegionUtil
 		
 		
 		/**
+		 * Whether any block in the box has the given value, scanning each row of the box 
+		 * with {@link BitRegionUtil#scan(boolean, int, int, BitSet)}.
 		 * 
 		 * @param value
 		 * @param minX1
@@ -341,15 +387,23 @@ public class BitRegionUtil
 									  BitSet blocks
 									  )
 		{
-			int y, z, x, index;
+			if (minX1 >= maxX1 || minZ1 >= maxZ1 || minY1 >= maxY1)
+				return false;
+			
+			int y, z, index, length = maxX1 - minX1;
+			if (minX1 == 0 && maxX1 == maxX2)		//	full rows are contiguous
+			{
+				if (minZ1 == 0 && maxZ1 == maxZ2)	//	full layers are too
+					return scan(value, index(0, 0, minY1, maxX2, maxZ2, maxY2), maxY1 * maxZ2 * maxX2, blocks);
+				
+				length *= maxZ1 - minZ1;
+				maxZ1 	= minZ1 + 1;
+			}
 			for (y = minY1; y < maxY1; y++) for (z = minZ1; z < maxZ1; z++)
 			{
-				index = index(x = minX1, z, y, maxX2, maxZ2, maxY2);
-				for (; x < maxX1; x++) 
-				{
-					if (blocks.get(index++) == value) 
-						return true;
-				}
+				index = index(minX1, z, y, maxX2, maxZ2, maxY2);
+				if (scan(value, index, index + length, blocks)) 
+					return true;
 			}
 			return false;
 		}
@@ -411,4 +465,438 @@ public class BitRegionUtil
 			return compareRegion(minX1, minZ1, minY1, maxX1, maxZ1, maxY1, maxX2, maxZ2, maxY2, blocks);
 		}
 	}
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		SELECTIONS																		 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	/**
+	 * A 3D selection of blocks within bounds, in absolute coordinates, as the bulk edits of an 
+	 * Octree read it: box by box to classify nodes, and block by block inside bricks.
+	 */
+	public static abstract class Selection3D
+	{
+		public final int 	minX, minZ, minY,
+							maxX, maxZ, maxY;
+		
+		
+		/**
+		 * @param bounds		Min and max coordinates of the selection
+		 */
+		protected Selection3D(int[]... bounds)
+		{
+			this.minX = bounds[0][0];	this.maxX = bounds[0][1];
+			this.minZ = bounds[1][0];	this.maxZ = bounds[1][1];
+			this.minY = bounds[2][0];	this.maxY = bounds[2][1];
+		}
+		
+		
+		/**
+		 * Compares the selection inside the given box, which must be within the bounds.
+		 * 
+		 * @return				2 (all selected), 1 (none selected), or 0 (some selected)
+		 */
+		public abstract int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1);
+		
+		
+		/**
+		 * Whether the block, which must be within the bounds, is selected.
+		 */
+		public abstract boolean get(int x, int z, int y);
+		
+		
+		/**
+		 * Min and max coordinates of the selection.
+		 */
+		public int[][] bounds()
+		{
+			return new int[][] { { minX, maxX }, { minZ, maxZ }, { minY, maxY } };
+		}
+		
+		
+		/**
+		 * The selected blocks in the layers from <tt>fromY</tt> to <tt>toY</tt>, exclusive,
+		 * as a BitSet of the selection of those layers. Classifies each row first, so only 
+		 * rows with some blocks selected are read block by block.
+		 */
+		public BitSet toBitSet(int fromY, int toY)
+		{
+			BitSet blocks = new BitSet();
+			
+			int dx = maxX - minX, x, z, y, index = 0;
+			for (y = fromY; y < toY; y++) for (z = minZ; z < maxZ; z++, index += dx)
+				switch (compareRegion(minX, z, y, maxX, z + 1, y + 1))
+				{
+					case 1 : break;
+					case 2 : blocks.set(index, index + dx); break;
+					default: for (x = minX; x < maxX; x++)
+								 if (get(x, z, y))
+									 blocks.set(index + x - minX);
+				}
+			return blocks;
+		}
+		
+		
+		/**
+		 * A selection of the blocks set in a BitSet.
+		 */
+		public static class Dense extends Selection3D
+		{
+			protected final BitSet 	blocks;
+			
+			
+			/**
+			 * @param blocks		BitSet representing selected points in the selection
+			 * @param bounds		Min and max coordinates of the selection
+			 */
+			public Dense(BitSet blocks, int[]... bounds)
+			{
+				super(bounds);
+				this.blocks = blocks;
+			}
+			
+			
+			@Override
+			public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+			{
+				return _3D.compareRegion(minX1, minZ1, minY1, maxX1, maxZ1, maxY1, 
+										 minX,  minZ,  minY,  maxX,  maxZ,  maxY, 
+										 blocks
+										 );
+			}
+			
+			
+			@Override
+			public boolean get(int x, int z, int y)
+			{
+				return blocks.get(_3D.index(x, z, y, minX, minZ, minY, maxX, maxZ, maxY));
+			}
+		}
+	}
+	
+	
+	/**
+	 * A 2D selection of blocks within bounds, in absolute coordinates, as the bulk edits of a 
+	 * Quadtree read it, box by box to classify nodes.
+	 */
+	public static abstract class Selection2D
+	{
+		public final int 	minX, minZ,
+							maxX, maxZ;
+		
+		
+		/**
+		 * @param bounds		Min and max coordinates of the selection
+		 */
+		protected Selection2D(int[]... bounds)
+		{
+			this.minX = bounds[0][0];	this.maxX = bounds[0][1];
+			this.minZ = bounds[1][0];	this.maxZ = bounds[1][1];
+		}
+		
+		
+		/**
+		 * Compares the selection inside the given box, which must be within the bounds.
+		 * 
+		 * @return				2 (all selected), 1 (none selected), or 0 (some selected)
+		 */
+		public abstract int compareRegion(int minX1, int minZ1, int maxX1, int maxZ1);
+		
+		
+		/**
+		 * A selection of the blocks set in a BitSet.
+		 */
+		public static class Dense extends Selection2D
+		{
+			protected final BitSet 	blocks;
+			
+			
+			/**
+			 * @param blocks		BitSet representing selected points in the selection
+			 * @param bounds		Min and max coordinates of the selection
+			 */
+			public Dense(BitSet blocks, int[]... bounds)
+			{
+				super(bounds);
+				this.blocks = blocks;
+			}
+			
+			
+			@Override
+			public int compareRegion(int minX1, int minZ1, int maxX1, int maxZ1)
+			{
+				return _2D.compareRegion(minX1, minZ1, maxX1, maxZ1, 
+										 minX,  minZ,  maxX,  maxZ, 
+										 blocks
+										 );
+			}
+		}
+	}
+	
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		SUMMED VOLUME TABLE																	 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	/**
+	 * Prefix sums of the number of selected blocks in a 3D selection, counted per tile of 
+	 * {@link #TILE}<sup>3</sup> blocks, so that the count in any box of whole tiles takes eight 
+	 * array reads. Uses one int per tile: 1/16 of a byte per block.<p>
+	 * 
+	 * {@link #compareRegion(int, int, int, int, int, int)} bounds a box between the tiles inside 
+	 * it and the tiles touching it. If the touching tiles are all empty or all full, so is the box; 
+	 * if the inner tiles are mixed, so is the box. Only otherwise, near the box's faces, does it 
+	 * scan the selection, with {@link _3D#compareRegion(int, int, int, int, int, int, int, int, int, BitSet)} 
+	 * over the caller's BitSet, which is kept rather than copied.
+	 */
+	public static class SummedVolume extends Selection3D
+	{
+		public static final int 	SHIFT 	= 2,
+									TILE 	= 1 << SHIFT;
+		
+		protected final BitSet 		blocks;
+		protected final int 		dx, dz, dy,
+									tx, tz, ty;
+		
+		/**
+		 * <tt>sums[(y * (tz + 1) + z) * (tx + 1) + x]</tt> is the number of selected blocks 
+		 * in the tiles before tile <tt>(x, z, y)</tt> on all three axes.
+		 */
+		protected final int[] 		sums;
+		
+		
+		/**
+		 * Counts the selected blocks of each tile in one pass over each row's set bits, 
+		 * then sums them along each axis in turn.
+		 * 
+		 * @param blocks		BitSet representing selected points in the selection
+		 * @param bounds		Min and max coordinates of the selection
+		 */
+		public SummedVolume(BitSet blocks, int[]... bounds)
+		{
+			super(bounds);
+			
+			this.blocks = blocks;
+			this.dx 	= maxX - minX;	this.tx = dx + TILE - 1 >> SHIFT;
+			this.dz 	= maxZ - minZ;	this.tz = dz + TILE - 1 >> SHIFT;
+			this.dy 	= maxY - minY;	this.ty = dy + TILE - 1 >> SHIFT;
+			
+			int sx = tx + 1, sz = tz + 1, x, z, y, i, row;
+			int[] sums = new int[sx * sz * (ty + 1)];
+			
+			for (y = 0; y < dy; y++) for (z = 0; z < dz; z++)
+			{
+				row = (y * dz + z) * dx;
+				i 	= ((y >> SHIFT) + 1) * sz + (z >> SHIFT) + 1;
+				for (x = blocks.nextSetBit(row); x != -1 && x < row + dx; x = blocks.nextSetBit(x + 1))
+					sums[i * sx + (x - row >> SHIFT) + 1]++;
+			}
+			
+			for (y = 1; y <= ty; y++) for (z = 1; z <= tz; z++) for (x = 1; x <= tx; x++)
+				sums[(y * sz + z) * sx + x] += sums[(y * sz + z) * sx + x - 1];
+			for (y = 1; y <= ty; y++) for (z = 1; z <= tz; z++) for (x = 1; x <= tx; x++)
+				sums[(y * sz + z) * sx + x] += sums[(y * sz + z - 1) * sx + x];
+			for (y = 1; y <= ty; y++) for (z = 1; z <= tz; z++) for (x = 1; x <= tx; x++)
+				sums[(y * sz + z) * sx + x] += sums[((y - 1) * sz + z) * sx + x];
+			
+			this.sums = sums;
+		}
+		
+		
+		/**
+		 * Number of selected blocks in the given box of tiles.
+		 */
+		protected int count(int x0, int z0, int y0, int x1, int z1, int y1)
+		{
+			int sx = tx + 1, sz = tz + 1;
+			
+			return	  sums[(y1 * sz + z1) * sx + x1] - sums[(y1 * sz + z1) * sx + x0]
+					- sums[(y1 * sz + z0) * sx + x1] + sums[(y1 * sz + z0) * sx + x0]
+					- sums[(y0 * sz + z1) * sx + x1] + sums[(y0 * sz + z1) * sx + x0]
+					+ sums[(y0 * sz + z0) * sx + x1] - sums[(y0 * sz + z0) * sx + x0];
+		}
+		
+		
+		/**
+		 * Number of blocks in the given box of tiles, where the last tile on each axis may be partial.
+		 */
+		protected long volume(int x0, int z0, int y0, int x1, int z1, int y1)
+		{
+			return 	(long) (Math.min(x1 << SHIFT, dx) - (x0 << SHIFT))
+						 * (Math.min(z1 << SHIFT, dz) - (z0 << SHIFT))
+						 * (Math.min(y1 << SHIFT, dy) - (y0 << SHIFT));
+		}
+		
+		
+		@Override
+		public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+		{
+			minX1 -= minX; minZ1 -= minZ; minY1 -= minY;
+			maxX1 -= minX; maxZ1 -= minZ; maxY1 -= minY;
+			
+			int ox0 = minX1 >> SHIFT, ox1 = maxX1 + TILE - 1 >> SHIFT,
+				oz0 = minZ1 >> SHIFT, oz1 = maxZ1 + TILE - 1 >> SHIFT,
+				oy0 = minY1 >> SHIFT, oy1 = maxY1 + TILE - 1 >> SHIFT;
+			
+			int outer = count(ox0, oz0, oy0, ox1, oz1, oy1);
+			if (outer == 0)
+				return 1;
+			if (outer == volume(ox0, oz0, oy0, ox1, oz1, oy1))
+				return 2;
+			
+			int ix0 = minX1 + TILE - 1 >> SHIFT, ix1 = maxX1 == dx ? tx : maxX1 >> SHIFT,	//	the last tile 
+				iz0 = minZ1 + TILE - 1 >> SHIFT, iz1 = maxZ1 == dz ? tz : maxZ1 >> SHIFT,	//	is inside if 
+				iy0 = minY1 + TILE - 1 >> SHIFT, iy1 = maxY1 == dy ? ty : maxY1 >> SHIFT;	//	the box ends there
+			
+			if (ix0 < ix1 && iz0 < iz1 && iy0 < iy1)
+			{
+				int inner = count(ix0, iz0, iy0, ix1, iz1, iy1);
+				if (inner != 0 && inner != volume(ix0, iz0, iy0, ix1, iz1, iy1))
+					return 0;
+			}
+			return _3D.compareRegion(minX1, minZ1, minY1, maxX1, maxZ1, maxY1, dx, dz, dy, blocks);
+		}
+		
+		
+		@Override
+		public boolean get(int x, int z, int y)
+		{
+			return blocks.get(((y - minY) * dz + z - minZ) * dx + x - minX);
+		}
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		BIT WORDS																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	/**
+	 * Bit operations on a <tt>long[]</tt> laid out as by {@link BitSet#toLongArray()}: bit <tt>i</tt> 
+	 * is bit <tt>i % 64</tt> of word <tt>i / 64</tt>. Ranges are set, cleared, and copied 
+	 * a word at a time, and copies between word-aligned positions use {@link System#arraycopy}.
+	 */
+	public static class Words
+	{
+		/**
+		 * Number of words that hold the given number of bits.
+		 */
+		public static int length(int bits)
+		{
+			return bits + 63 >>> 6;
+		}
+		
+		
+		public static boolean get(int i, long[] words)
+		{
+			return (word(i >>> 6, words) & 1L << i) != 0;
+		}
+		
+		
+		/**
+		 * Sets or clears the bits in <tt>[from, to)</tt>, which must be within the array.
+		 */
+		public static void set(boolean value, int from, int to, long[] words)
+		{
+			if (from >= to)
+				return;
+			
+			int  first 		= from >>> 6,
+				 last 		= to - 1 >>> 6;
+			long firstMask 	= -1L << from,
+				 lastMask 	= -1L >>> -to;
+			
+			if (first == last)
+				firstMask &= lastMask;
+			
+			words[first] = value ? words[first] | firstMask : words[first] & ~firstMask;
+			if (first == last)
+				return;
+			
+			Arrays.fill(words, first + 1, last, value ? -1L : 0);
+			words[last] = value ? words[last] | lastMask : words[last] & ~lastMask;
+		}
+		
+		
+		/**
+		 * Number of set bits.
+		 */
+		public static int cardinality(long[] words)
+		{
+			int count = 0;
+			for (long word : words)
+				count += Long.bitCount(word);
+			return count;
+		}
+		
+		
+		/**
+		 * Copies <tt>length</tt> bits from one array to another, overwriting the bits in the 
+		 * destination, up to 64 at a time. The arrays must be different, and the destination 
+		 * range within its array. Bits past the end of the source are clear.
+		 * 
+		 * @param src			the words to copy from
+		 * @param from			index of the first bit to copy
+		 * @param dst			the words to copy to
+		 * @param to			index of the first bit to copy to
+		 * @param length		number of bits
+		 */
+		public static void copy(long[] src, int from, long[] dst, int to, int length)
+		{
+			if (((from | to) & 63) == 0 && length >= 64)	//	both word-aligned
+			{
+				int count = Math.max(0, Math.min(length >>> 6, src.length - (from >>> 6)));
+				if (count > 0)
+					System.arraycopy(src, from >>> 6, dst, to >>> 6, count);
+				Arrays.fill(dst, (to >>> 6) + count, (to >>> 6) + (length >>> 6), 0);
+				
+				from 	+= length & ~63;
+				to 		+= length & ~63;
+				length 	&= 63;
+			}
+			while (length > 0)
+			{
+				int  n 		= Math.min(length, 64 - (to & 63)),		//	bits to the end of the destination word
+					 i 		= to >>> 6;
+				long mask 	= (n == 64 ? -1L : (1L << n) - 1) << to;
+				
+				dst[i] = dst[i] & ~mask | read(src, from, n) << to;
+				
+				from 	+= n;
+				to 		+= n;
+				length 	-= n;
+			}
+		}
+		
+		
+		/**
+		 * The <tt>n</tt> bits from the given index, <tt>n</tt> at most 64, in the low bits of a word.
+		 */
+		protected static long read(long[] src, int from, int n)
+		{
+			int  i 		= from >>> 6,
+				 offset = from & 63;
+			long bits 	= word(i, src) >>> offset;
+			
+			if (offset != 0 && offset + n > 64)
+				bits |= word(i + 1, src) << -offset;
+			
+			return n == 64 ? bits : bits & (1L << n) - 1;
+		}
+	}
 }
@@ -0,0 +1,666 @@
+package regions;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import regions.BitRegionUtil.Selection2D;
+import regions.BitRegionUtil.Selection3D;
+
+/**
+ * Compressed bitmap of a selection, for bulk edits of selections too large and too sparse for
+ * a dense BitSet. Indexed as a BitSet of the selection would be, x fastest, then z, then y,
+ * but by <tt>long</tt>, so the selection box may have more than 2<sup>31</sup> blocks.<p>
+ *
+ * Bits are stored in blocks of 2<sup>16</sup>, each held by the smallest of three containers,
+ * as in Roaring bitmaps: a sorted array of the set bits, a dense array of 1024 words, or a sorted
+ * array of runs. Blocks with no bits set take no space. A wall one block thick across a
+ * 4096 x 256 x 4096 box, 2<sup>32</sup> bits, takes one run per row instead of 512 MB.<p>
+ *
+ * {@link #nextSetBit(long)} and {@link #nextClearBit(long)} skip empty blocks, full runs, and
+ * whole words, so boxes are classified without decompressing, by {@link #compareRegion}.
+ * Trees accept a Bitmap through {@link Tree#add(Bitmap, int[]...)} and {@link Tree#remove(Bitmap, int[]...)}.
+ */
+public class Bitmap
+{
+	protected static final int 	BITS 		= 16,
+								SIZE 		= 1 << BITS,
+								MASK 		= SIZE - 1;
+	
+	/**
+	 * Most bits an {@link ArrayContainer} holds, beyond which a dense container is as small.
+	 */
+	protected static final int 	ARRAY_MAX 	= 4096;
+	
+	/**
+	 * Most runs a {@link RunContainer} holds, beyond which a dense container is as small.
+	 */
+	protected static final int 	RUNS_MAX 	= 2048;
+	
+	
+	/**
+	 * Keys of the blocks with bits set, <tt>index >>> 16</tt>, in ascending order,
+	 * and the container of each.
+	 */
+	protected int[] 			keys 		= new int[4];
+	protected Container[] 		containers 	= new Container[4];
+	protected int 				size;
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		BITS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Position of the block with the given key, or <tt>-(insertion point) - 1</tt>.
+	 */
+	protected int find(int key)
+	{
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+	
+	
+	public boolean get(long index)
+	{
+		int i = find((int) (index >>> BITS));
+		
+		return i >= 0 && containers[i].get((int) index & MASK);
+	}
+	
+	
+	public void set(long index)
+	{
+		set(index, index + 1);
+	}
+	
+	
+	/**
+	 * Sets the bits in <tt>[from, to)</tt>, a block at a time. Blocks entirely within the
+	 * range take a single run.
+	 */
+	public void set(long from, long to)
+	{
+		while (from < to)
+		{
+			int key 	= (int) (from >>> BITS),
+				low 	= (int) from & MASK,
+				high 	= (int) Math.min(to - ((long) key << BITS), SIZE),
+				i 		= find(key);
+			
+			if (i >= 0)
+				containers[i] = containers[i].set(low, high);
+			else
+				insert(-i - 1, key, high - low == 1 ? new ArrayContainer((char) low) : new RunContainer(low, high));
+			
+			from = ((long) key << BITS) + high;
+		}
+	}
+	
+	
+	protected void insert(int i, int key, Container container)
+	{
+		if (size == keys.length)
+		{
+			keys 		= Arrays.copyOf(keys, size * 2);
+			containers 	= Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		
+		keys[i] 		= key;
+		containers[i] 	= container;
+		size++;
+	}
+	
+	
+	/**
+	 * Index of the first set bit at or after the given index, or -1 if there is none.
+	 */
+	public long nextSetBit(long from)
+	{
+		int key = (int) (from >>> BITS),
+			i 	= find(key);
+		
+		if (i >= 0)
+		{
+			int next = containers[i].nextSetBit((int) from & MASK);
+			if (next != -1)
+				return ((long) key << BITS) + next;
+			i++;
+		}
+		else
+			i = -i - 1;
+		
+		return i < size ? ((long) keys[i] << BITS) + containers[i].nextSetBit(0) : -1;		//	containers are never empty
+	}
+	
+	
+	/**
+	 * Index of the first clear bit at or after the given index.
+	 */
+	public long nextClearBit(long from)
+	{
+		int key = (int) (from >>> BITS),
+			i 	= find(key);
+		
+		if (i < 0)
+			return from;
+		
+		int next = containers[i].nextClearBit((int) from & MASK);
+		while (next == SIZE)			//	the block is full from there: try the next
+		{
+			if (++i == size || keys[i] != ++key)
+				return (long) key << BITS;
+			
+			next = containers[i].nextClearBit(0);
+		}
+		return ((long) key << BITS) + next;
+	}
+	
+	
+	/**
+	 * Number of set bits.
+	 */
+	public long cardinality()
+	{
+		long count = 0;
+		for (int i = 0; i < size; i++)
+			count += containers[i].cardinality();
+		return count;
+	}
+	
+	
+	/**
+	 * Approximate size in memory of the containers, in bytes.
+	 */
+	public long bytes()
+	{
+		long bytes = size * 24L;
+		for (int i = 0; i < size; i++)
+			bytes += containers[i].bytes();
+		return bytes;
+	}
+	
+	
+	/**
+	 * Converts each container to the smallest of the three kinds,
+	 * for example after setting bits one at a time.
+	 */
+	public void optimize()
+	{
+		for (int i = 0; i < size; i++)
+			containers[i] = containers[i].optimize();
+	}
+	
+	
+	/**
+	 * The bits in <tt>[from, to)</tt>, as a BitSet indexed from <tt>from</tt>.
+	 */
+	public BitSet toBitSet(long from, long to)
+	{
+		BitSet blocks = new BitSet();
+		for (long i = nextSetBit(from), j; i != -1 && i < to; i = nextSetBit(j))
+		{
+			j = Math.min(nextClearBit(i), to);
+			blocks.set((int) (i - from), (int) (j - from));
+		}
+		return blocks;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		EVALUATE
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Same as {@link BitRegionUtil._3D#testFor(boolean, int, int, int, int, int, int, int, int, int, java.util.BitSet)}.
+	 * Jumps from each bit found that is outside the box to the next row of the box after it,
+	 * so rows without the value cost nothing, and the search ends at the first bit in the box.
+	 */
+	public boolean testFor(boolean value,
+						   int minX1, int minZ1, int minY1,
+						   int maxX1, int maxZ1, int maxY1,
+						   int maxX2, int maxZ2, int maxY2
+						   )
+	{
+		if (minX1 >= maxX1 || minZ1 >= maxZ1 || minY1 >= maxY1)
+			return false;
+		
+		long row 	= maxX2,
+			 layer 	= row * maxZ2,
+			 end 	= (maxY1 - 1) * layer + (maxZ1 - 1) * row + maxX1;
+		
+		int x, z, y;
+		for (long i = next(value, minY1 * layer + minZ1 * row + minX1); i != -1 && i < end; )
+		{
+			y = (int) (i / layer);
+			z = (int) (i % layer / row);
+			x = (int) (i % row);
+			
+			if (z >= minZ1 && z < maxZ1 && x >= minX1 && x < maxX1)
+				return true;
+			
+			if (z < minZ1)								//	before the box's rows in this layer
+				z = minZ1;
+			else if (z >= maxZ1 || x >= maxX1 && ++z == maxZ1)	//	past them
+			{
+				z = minZ1;
+				y++;
+			}
+			
+			if (y >= maxY1)
+				return false;
+			
+			i = next(value, y * layer + z * row + minX1);
+		}
+		return false;
+	}
+	
+	
+	protected long next(boolean value, long from)
+	{
+		return value ? nextSetBit(from) : nextClearBit(from);
+	}
+	
+	
+	/**
+	 * Same as {@link BitRegionUtil._3D#compareRegion(int, int, int, int, int, int, int, int, int, java.util.BitSet)}.
+	 *
+	 * @return				2 (all selected), 1 (none selected), or 0 (some selected)
+	 */
+	public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1,
+							 int maxX2, int maxZ2, int maxY2
+							 )
+	{
+		boolean firstBlock = get(((long) minY1 * maxZ2 + minZ1) * maxX2 + minX1);
+		
+		return testFor(!firstBlock, minX1, minZ1, minY1, maxX1, maxZ1, maxY1, maxX2, maxZ2, maxY2)
+				
+				? 0 : firstBlock ? 2 : 1;
+	}
+	
+	
+	/**
+	 * This bitmap as the selection of the given bounds, for bulk edits.
+	 *
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	public Selection3D selection(int[]... bounds)
+	{
+		return new Selection3D(bounds)
+		{
+			@Override
+			public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+			{
+				return Bitmap.this.compareRegion(minX1 - minX, minZ1 - minZ, minY1 - minY,
+												 maxX1 - minX, maxZ1 - minZ, maxY1 - minY,
+												 maxX - minX,  maxZ - minZ,  maxY - minY
+												 );
+			}
+			
+			@Override
+			public boolean get(int x, int z, int y)
+			{
+				return Bitmap.this.get(((long) (y - minY) * (maxZ - minZ) + z - minZ) * (maxX - minX) + x - minX);
+			}
+		};
+	}
+	
+	
+	/**
+	 * This bitmap as the selection of the given bounds on x and z, for bulk edits of a Quadtree. 
+	 * Compared as a selection one block high.
+	 *
+	 * @param bounds		Min and max coordinates of the selection, on x and z
+	 */
+	public Selection2D selection2D(int[]... bounds)
+	{
+		return new Selection2D(bounds)
+		{
+			@Override
+			public int compareRegion(int minX1, int minZ1, int maxX1, int maxZ1)
+			{
+				return Bitmap.this.compareRegion(minX1 - minX, minZ1 - minZ, 0,
+												 maxX1 - minX, maxZ1 - minZ, 1,
+												 maxX - minX,  maxZ - minZ,  1
+												 );
+			}
+		};
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONTAINERS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * The set bits of one block of 2<sup>16</sup>. Never empty.
+	 */
+	protected static abstract class Container
+	{
+		public abstract boolean get(int low);
+		
+		/**
+		 * Sets the bits in <tt>[from, to)</tt>.
+		 *
+		 * @return			this container, or the container that replaces it
+		 */
+		public abstract Container set(int from, int to);
+		
+		/**
+		 * @return			the first set bit at or after <tt>from</tt>, or -1
+		 */
+		public abstract int nextSetBit(int from);
+		
+		/**
+		 * @return			the first clear bit at or after <tt>from</tt>, or {@link Bitmap#SIZE}
+		 */
+		public abstract int nextClearBit(int from);
+		
+		public abstract int cardinality();
+		
+		public abstract int bytes();
+		
+		/**
+		 * Number of runs of set bits.
+		 */
+		public int runs()
+		{
+			int runs = 0;
+			for (int i = nextSetBit(0); i != -1; i = nextSetBit(i))
+			{
+				runs++;
+				if ((i = nextClearBit(i)) == SIZE)
+					break;
+			}
+			return runs;
+		}
+		
+		/**
+		 * @return			the smallest container of the same bits
+		 */
+		public Container optimize()
+		{
+			int runs 		= runs(),
+				cardinality = cardinality(),
+				array 		= cardinality * 2,
+				run 		= runs * 4;
+			
+			if (run <= array && run < 8192)		return this instanceof RunContainer ? this : new RunContainer(this, runs);
+			if (array < 8192)					return this instanceof ArrayContainer ? this : new ArrayContainer(this, cardinality);
+			return this instanceof DenseContainer ? this : new DenseContainer(this);
+		}
+	}
+	
+	
+	/**
+	 * Sorted array of the set bits, for sparse blocks.
+	 */
+	protected static class ArrayContainer extends Container
+	{
+		protected char[] 	values;
+		protected int 		size;
+		
+		protected ArrayContainer(char value)
+		{
+			this.values = new char[] { value, 0, 0, 0 };
+			this.size 	= 1;
+		}
+		
+		protected ArrayContainer(Container container, int cardinality)
+		{
+			this.values = new char[cardinality];
+			for (int i = container.nextSetBit(0); i != -1; i = i + 1 < SIZE ? container.nextSetBit(i + 1) : -1)
+				values[size++] = (char) i;
+		}
+		
+		/**
+		 * Position of the first value at or after the given bit.
+		 */
+		protected int ceiling(int low)
+		{
+			int i = Arrays.binarySearch(values, 0, size, (char) low);
+			return i >= 0 ? i : -i - 1;
+		}
+		
+		@Override
+		public boolean get(int low)
+		{
+			return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+		}
+		
+		@Override
+		public Container set(int from, int to)
+		{
+			int lo 		= ceiling(from),
+				hi 		= to == SIZE ? size : ceiling(to),
+				count 	= lo + (to - from) + (size - hi);
+			
+			if (count > ARRAY_MAX)
+				return (to - from == 1 ? new DenseContainer(this) : new RunContainer(this, runs())).set(from, to);
+			
+			char[] result = count <= values.length ? values : new char[Math.max(count, Math.min(size * 2, ARRAY_MAX))];
+			System.arraycopy(values, hi, result, lo + (to - from), size - hi);
+			if (result != values)
+				System.arraycopy(values, 0, result, 0, lo);
+			for (int i = from; i < to; i++)
+				result[lo + i - from] = (char) i;
+			
+			values 	= result;
+			size 	= count;
+			return this;
+		}
+		
+		@Override
+		public int nextSetBit(int from)
+		{
+			int i = ceiling(from);
+			return i < size ? values[i] : -1;
+		}
+		
+		@Override
+		public int nextClearBit(int from)
+		{
+			for (int i = ceiling(from); i < size && values[i] == from; i++)
+				from++;
+			return from;
+		}
+		
+		@Override public int cardinality() 	{ return size; }
+		@Override public int bytes() 		{ return 16 + values.length * 2; }
+	}
+	
+	
+	/**
+	 * 1024 words of bits, for blocks with many bits set in many runs.
+	 */
+	protected static class DenseContainer extends Container
+	{
+		protected final long[] 	words = new long[SIZE / 64];
+		protected int 			cardinality;
+		
+		protected DenseContainer(Container container)
+		{
+			for (int i = container.nextSetBit(0), j; i != -1; i = container.nextSetBit(j))
+			{
+				j = container.nextClearBit(i);
+				BitRegionUtil.Words.set(true, i, j, words);
+				if (j == SIZE)
+					break;
+			}
+			this.cardinality = container.cardinality();
+		}
+		
+		@Override
+		public boolean get(int low)
+		{
+			return (words[low >>> 6] & 1L << low) != 0;
+		}
+		
+		@Override
+		public Container set(int from, int to)
+		{
+			int first = from >>> 6, last = to - 1 >>> 6, i;
+			for (i = first; i <= last; i++) cardinality -= Long.bitCount(words[i]);
+			BitRegionUtil.Words.set(true, from, to, words);
+			for (i = first; i <= last; i++) cardinality += Long.bitCount(words[i]);
+			return this;
+		}
+		
+		@Override
+		public int nextSetBit(int from)
+		{
+			int  i 		= from >>> 6;
+			long word 	= words[i] & -1L << from;
+			while (word == 0)
+			{
+				if (++i == words.length)
+					return -1;
+				word = words[i];
+			}
+			return i * 64 + Long.numberOfTrailingZeros(word);
+		}
+		
+		@Override
+		public int nextClearBit(int from)
+		{
+			int  i 		= from >>> 6;
+			long word 	= ~words[i] & -1L << from;
+			while (word == 0)
+			{
+				if (++i == words.length)
+					return SIZE;
+				word = ~words[i];
+			}
+			return i * 64 + Long.numberOfTrailingZeros(word);
+		}
+		
+		@Override public int cardinality() 	{ return cardinality; }
+		@Override public int bytes() 		{ return 16 + words.length * 8; }
+	}
+	
+	
+	/**
+	 * Sorted runs of set bits, for blocks of long runs: <tt>runs[2i]</tt> is the first bit of
+	 * run <tt>i</tt>, and <tt>runs[2i + 1]</tt> its length less one. Runs never touch.
+	 */
+	protected static class RunContainer extends Container
+	{
+		protected char[] 	runs;
+		protected int 		count;
+		
+		protected RunContainer(int from, int to)
+		{
+			this.runs 	= new char[] { (char) from, (char) (to - from - 1), 0, 0 };
+			this.count 	= 1;
+		}
+		
+		protected RunContainer(Container container, int runs)
+		{
+			this.runs = new char[Math.max(runs, 1) * 2];
+			for (int i = container.nextSetBit(0), j; i != -1; i = j < SIZE ? container.nextSetBit(j) : -1)
+			{
+				j = container.nextClearBit(i);
+				this.runs[count * 2] 		= (char) i;
+				this.runs[count * 2 + 1] 	= (char) (j - i - 1);
+				count++;
+			}
+		}
+		
+		protected int start(int i) 	{ return runs[i * 2]; }
+		protected int end(int i) 	{ return runs[i * 2] + runs[i * 2 + 1] + 1; }
+		
+		/**
+		 * Position of the last run that starts at or before the given bit, or -1.
+		 */
+		protected int floor(int low)
+		{
+			int lo = 0, hi = count - 1;
+			while (lo <= hi)
+			{
+				int mid = lo + hi >>> 1;
+				if (start(mid) <= low) lo = mid + 1; else hi = mid - 1;
+			}
+			return hi;
+		}
+		
+		@Override
+		public boolean get(int low)
+		{
+			int i = floor(low);
+			return i >= 0 && low < end(i);
+		}
+		
+		@Override
+		public Container set(int from, int to)
+		{
+			int first 	= floor(from),			//	runs first + 1 to last start within or touching the new run
+				last 	= floor(to);
+			
+			if (first >= 0 && end(first) >= from)
+				from = start(first);
+			else
+				first++;
+			
+			if (last >= 0 && end(last) > to)
+				to = end(last);
+			
+			int removed = last - first + 1,
+				total 	= count - removed + 1;
+			
+			if (total > RUNS_MAX)
+				return new DenseContainer(this).set(from, to);
+			
+			char[] result = total * 2 <= runs.length ? runs : new char[total * 4];
+			System.arraycopy(runs, (last + 1) * 2, result, (first + 1) * 2, (count - last - 1) * 2);
+			if (result != runs)
+				System.arraycopy(runs, 0, result, 0, first * 2);
+			
+			result[first * 2] 		= (char) from;
+			result[first * 2 + 1] 	= (char) (to - from - 1);
+			
+			runs 	= result;
+			count 	= total;
+			return this;
+		}
+		
+		@Override
+		public int nextSetBit(int from)
+		{
+			int i = floor(from);
+			if (i >= 0 && from < end(i))
+				return from;
+			return i + 1 < count ? start(i + 1) : -1;
+		}
+		
+		@Override
+		public int nextClearBit(int from)
+		{
+			int i = floor(from);
+			return i >= 0 && from < end(i) ? end(i) : from;
+		}
+		
+		@Override
+		public int cardinality()
+		{
+			int cardinality = 0;
+			for (int i = 0; i < count; i++)
+				cardinality += runs[i * 2 + 1] + 1;
+			return cardinality;
+		}
+		
+		@Override public int runs() 		{ return count; }
+		@Override public int bytes() 		{ return 16 + runs.length * 2; }
+	}
+}
@@ -0,0 +1,309 @@
+package regions;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import regions.BitRegionUtil.Selection3D;
+
+/**
+ * Selection of runs of blocks along y, column by column, for the common edit of a footprint
+ * on x and z from one y to another, and for regions built from heightmaps. Each (x, z) column
+ * of the bounds stores its runs as ascending pairs of <tt>[from, to)</tt>, so the selection
+ * costs two ints per run and two per column, whatever its height.<p>
+ *
+ * {@link #compareRegion(int, int, int, int, int, int)} classifies a box by walking the columns
+ * with runs in each of its rows, skipping empty columns, and stopping at the first column that 
+ * differs, so the bulk edits of an Octree or SectionTree cost the runs in each node rather 
+ * than its volume. Bricks are filled a layer of words at a time from the runs, see 
+ * {@link Octree#setBits(long[], int, int, int, int, int, int, int, int, int, int, Columns, boolean)}. 
+ * A Quadtree adds the footprint of the columns with any run. Other trees expand the runs into 
+ * a BitSet of layers at a time, see {@link Tree#add(Columns)}.
+ */
+public class Columns extends Selection3D
+{
+	protected final int 	dx, dz;
+	
+	/**
+	 * Runs of column <tt>(z - minZ) * dx + x - minX</tt> are in <tt>ys</tt>
+	 * from <tt>offsets[column]</tt> to <tt>offsets[column + 1]</tt>.
+	 */
+	protected final int[] 	offsets;
+	protected int[] 		ys;
+	protected int 			length;
+	
+	/**
+	 * Index of the first column with any run at or after each column, or the number of columns.
+	 */
+	protected final int[] 	next;
+	
+	
+	/**
+	 * Selects every column of the footprint from min y to max y.
+	 *
+	 * @param footprint		BitSet representing selected columns, indexed <tt>z * dx + x</tt>
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	public Columns(BitSet footprint, int[]... bounds)
+	{
+		this(bounds, footprint.cardinality());
+		
+		for (int i = 0; i < offsets.length - 1; i++)
+		{
+			offsets[i] = length;
+			if (footprint.get(i))
+				append(offsets[i], minY, maxY);
+		}
+		offsets[offsets.length - 1] = length;
+		link();
+	}
+	
+	
+	/**
+	 * Selects one run in each column, as between two heightmaps.
+	 *
+	 * @param bottom		min y of each column, indexed <tt>z * dx + x</tt>
+	 * @param top			max y of each column, exclusive; empty if not above <tt>bottom</tt>
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	public Columns(int[] bottom, int[] top, int[]... bounds)
+	{
+		this(bounds, bottom.length);
+		
+		for (int i = 0; i < offsets.length - 1; i++)
+		{
+			offsets[i] = length;
+			append(offsets[i], bottom[i], top[i]);
+		}
+		offsets[offsets.length - 1] = length;
+		link();
+	}
+	
+	
+	/**
+	 * Selects any number of runs in each column.
+	 *
+	 * @param runs			for each column, indexed <tt>z * dx + x</tt>, pairs of min y and max y,
+	 * 						exclusive, in ascending order; or null for an empty column
+	 * @param bounds		Min and max coordinates of the selection
+	 * @throws 				IllegalArgumentException if a column's runs are not in ascending order
+	 */
+	public Columns(int[][] runs, int[]... bounds)
+	{
+		this(bounds, runs.length);
+		
+		for (int i = 0; i < offsets.length - 1; i++)
+		{
+			offsets[i] = length;
+			if (runs[i] != null)
+				for (int r = 0; r + 1 < runs[i].length; r += 2)
+					append(offsets[i], runs[i][r], runs[i][r + 1]);
+		}
+		offsets[offsets.length - 1] = length;
+		link();
+	}
+	
+	
+	protected Columns(int[][] bounds, int runs)
+	{
+		super(bounds);
+		
+		this.dx 		= maxX - minX;
+		this.dz 		= maxZ - minZ;
+		this.offsets 	= new int[dx * dz + 1];
+		this.next 		= new int[dx * dz + 1];
+		this.ys 		= new int[Math.max(2, runs * 2)];
+	}
+	
+	
+	/**
+	 * Fills {@link #next} from the offsets.
+	 */
+	protected void link()
+	{
+		next[dx * dz] = dx * dz;
+		for (int i = dx * dz - 1; i >= 0; i--)
+			next[i] = offsets[i + 1] > offsets[i] ? i : next[i + 1];
+	}
+	
+	
+	/**
+	 * Appends a run to the column whose runs start at <tt>start</tt>, clipped to the bounds,
+	 * and merged with the column's last run if they touch.
+	 */
+	protected void append(int start, int from, int to)
+	{
+		from = Math.max(from, minY);
+		to 	 = Math.min(to, maxY);
+		if (from >= to)
+			return;
+		
+		if (length > start)
+		{
+			if (from < ys[length - 2])
+				throw new IllegalArgumentException("Runs of a column must be in ascending order");
+			
+			if (from <= ys[length - 1])
+			{
+				ys[length - 1] = Math.max(ys[length - 1], to);
+				return;
+			}
+		}
+		
+		if (length + 2 > ys.length)
+			ys = Arrays.copyOf(ys, ys.length * 2);
+		
+		ys[length++] = from;
+		ys[length++] = to;
+	}
+	
+	
+	/**
+	 * Number of runs in all columns.
+	 */
+	public int runs()
+	{
+		return length >>> 1;
+	}
+	
+	
+	protected int column(int x, int z)
+	{
+		return (z - minZ) * dx + x - minX;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		EVALUATE
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Compares the runs of one column between two values of y.
+	 *
+	 * @param column		index of the column
+	 * @param minY1			min y, within the bounds
+	 * @param maxY1			max y, exclusive, within the bounds
+	 * @return				2 (all selected), 1 (none selected), or 0 (some selected)
+	 */
+	public int compareColumn(int column, int minY1, int maxY1)
+	{
+		int from = offsets[column],
+			to 	 = offsets[column + 1];
+		
+		if (from == to)
+			return 1;
+		
+		int lo 	= 0,
+			hi 	= (to - from >>> 1) - 1,
+			run = -1,
+			mid;
+		
+		while (lo <= hi)								//	last run starting at or below minY1
+		{
+			mid = lo + hi >>> 1;
+			if (ys[from + mid * 2] <= minY1)
+			{
+				run = mid;
+				lo 	= mid + 1;
+			}
+			else
+				hi 	= mid - 1;
+		}
+		
+		if (run != -1)
+		{
+			int end = ys[from + run * 2 + 1];
+			if (end >= maxY1) 	return 2;
+			if (end >  minY1) 	return 0;
+		}
+		
+		int next = from + (run + 1) * 2;				//	first run starting above minY1
+		return next < to && ys[next] < maxY1 ? 0 : 1;
+	}
+	
+	
+	/**
+	 * Walks only the columns with runs in each row of the box, so costs one step per row
+	 * and one search per column with runs, however many columns of the box are empty.
+	 */
+	@Override
+	public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+	{
+		boolean all  = false,	//	some column is selected from minY1 to maxY1
+				none = false;	//	some column is not selected at all, or has no runs
+		
+		int width = maxX1 - minX1, z, i, end, at;
+		for (z = minZ1; z < maxZ1; z++)
+		{
+			end = column(minX1, z) + width;
+			for (at = end - width, i = next[at]; i < end; at = i + 1, i = next[at])
+			{
+				if (i > at)
+					none = true;
+				
+				switch (compareColumn(i, minY1, maxY1))
+				{
+					case 0 : return 0;
+					case 1 : none = true; break;
+					case 2 : all  = true; break;
+				}
+				if (all && none)
+					return 0;
+			}
+			if (at < end)
+				none = true;
+			if (all && none)
+				return 0;
+		}
+		return all ? 2 : 1;
+	}
+	
+	
+	@Override
+	public boolean get(int x, int z, int y)
+	{
+		return compareColumn(column(x, z), y, y + 1) == 2;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONVERT
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * The columns with any run, as a BitSet indexed <tt>z * dx + x</tt>.
+	 */
+	public BitSet footprint()
+	{
+		BitSet footprint = new BitSet(dx * dz);
+		for (int i = 0; i < offsets.length - 1; i++)
+			if (offsets[i + 1] > offsets[i])
+				footprint.set(i);
+		return footprint;
+	}
+	
+	
+	/**
+	 * Same as {@link Selection3D#toBitSet(int, int)}, but run by run.
+	 */
+	@Override
+	public BitSet toBitSet(int fromY, int toY)
+	{
+		BitSet blocks = new BitSet();
+		
+		int layer = dx * dz, r, y, end;
+		for (int i = 0; i < layer; i++)
+			for (r = offsets[i]; r < offsets[i + 1]; r += 2)
+				for (y = Math.max(ys[r], fromY), end = Math.min(ys[r + 1], toY); y < end; y++)
+					blocks.set((y - fromY) * layer + i);
+		
+		return blocks;
+	}
+}
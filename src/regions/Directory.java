@@ -1,5 +1,6 @@
 package regions;
 
+import java.util.BitSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -46,6 +47,125 @@ public abstract class Directory
 		return false;
 	}
 	
+	/**
+	 * Fixed-arity form of {@link #testFor(int...)} for event handling. Does not allocate: 
+	 * lists are walked by index rather than by iterator.
+	 * 
+	 * @param x
+	 * @param z
+	 * @param y
+	 * @return				whether any tree in this directory or its children contains the block
+	 */
+	public boolean testFor(int x, int z, int y)
+	{
+		for (int i = 0, size = trees.size(); i < size; i++)
+			if (trees.get(i).testFor(x, z, y)) 
+				return true;
+		
+		for (int i = 0, size = children.size(); i < size; i++)
+			if (children.get(i).testFor(x, z, y)) 
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Fixed-arity form of {@link #testFor(int...)}. Does not allocate.
+	 * 
+	 * @param x
+	 * @param z
+	 * @return				whether any tree in this directory or its children contains the 
+	 * 						block, or for octrees, any block in the column
+	 * @see					{@link Tree#testFor(int, int)}
+	 */
+	public boolean testFor(int x, int z)
+	{
+		for (int i = 0, size = trees.size(); i < size; i++)
+			if (trees.get(i).testFor(x, z)) 
+				return true;
+		
+		for (int i = 0, size = children.size(); i < size; i++)
+			if (children.get(i).testFor(x, z)) 
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Tests many points against every tree in this directory and its children, in one call.
+	 * Sets <tt>result[i]</tt> to <tt>true</tt> for each point any tree contains, and leaves 
+	 * the others unchanged. Each tree is only given the points no earlier tree contained.
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param result		array to mark contained points in
+	 * @see					{@link Tree#testFor(int[], int[], int[], boolean[])}
+	 */
+	public void testFor(int[] xs, int[] zs, int[] ys, boolean[] result)
+	{
+		int[] order = new int[xs.length];
+		int count = 0;
+		
+		for (int i = 0; i < xs.length; i++)
+			if (!result[i])
+				order[count++] = i;
+		
+		count = testFor(xs, zs, ys, order, 0, count);
+		
+		for (int i = 0; i < count; i++)
+			result[order[i]] = true;
+	}
+	
+	/**
+	 * Same as {@link #testFor(int[], int[], int[], boolean[])}, setting bits of a BitSet.
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param result		BitSet to set the indices of contained points in
+	 */
+	public void testFor(int[] xs, int[] zs, int[] ys, BitSet result)
+	{
+		int[] order = new int[xs.length];
+		int count = 0;
+		
+		for (int i = 0; i < xs.length; i++)
+			if (!result.get(i))
+				order[count++] = i;
+		
+		count = testFor(xs, zs, ys, order, 0, count);
+		
+		for (int i = 0; i < count; i++)
+			result.set(order[i]);
+	}
+	
+	/**
+	 * Partitions the given range of point indices so that the points any tree contains come 
+	 * first, and returns how many there are. 
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range of <tt>order</tt> to test
+	 * @param to			end of the range, exclusive
+	 * @return				the number of contained points, now at <tt>order[from]</tt> onward
+	 * @see					{@link Tree#testFor(int[], int[], int[], int[], int, int)}
+	 */
+	protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+	{
+		int end = from;
+		
+		for (int i = 0, size = trees.size(); i < size && end < to; i++)
+			end += trees.get(i).testFor(xs, zs, ys, order, end, to);
+		
+		for (int i = 0, size = children.size(); i < size && end < to; i++)
+			end += children.get(i).testFor(xs, zs, ys, order, end, to);
+		
+		return end - from;
+	}
+	
 	/*
 	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
 	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
@@ -0,0 +1,296 @@
+package regions;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import regions.Tree.Snapshot;
+
+/**
+ * Versioned header of a saved Octree, Quadtree, or LinearOctree file, followed by the payload:
+ * the 2-bit format, or its {@link RangeCoder} encoding.<p>
+ *
+ * <pre>
+ * int 		MAGIC			0xFF 'R' 'G' 'H'
+ * byte 	version			{@link #VERSION}
+ * byte 	dimensions		3 for the Octree format, 2 for the Quadtree format
+ * byte 	flags			{@link #BOUNDS} if min and max are set
+ * int[] 	min, max		one int per dimension each, zeros if not set
+ * long 	nodes			number of partial nodes, for presizing
+ * long 	length			length of the payload in bytes
+ * int 		checksum		CRC32C of the payload
+ * </pre>
+ *
+ * As for {@link RangeCoder#MAGIC}, the first byte 0xFF cannot begin a file of the 2-bit format,
+ * so files without a header still load.
+ */
+public class Header
+{
+	public static final int 	MAGIC 		= 0xFF524748;
+	public static final byte 	VERSION 	= 1;
+	
+	/**
+	 * Flag set if the header carries bounds.
+	 */
+	public static final byte 	BOUNDS 		= 1;
+	
+	public final int 			dimensions;
+	public final int[] 			min,
+								max;
+	public final long 			nodes;
+	public final long 			length;
+	public final int 			checksum;
+	
+	
+	protected Header(int dimensions, int[] min, int[] max, long nodes, long length, int checksum)
+	{
+		this.dimensions = dimensions;
+		this.min 		= min;
+		this.max 		= max;
+		this.nodes 		= nodes;
+		this.length 	= length;
+		this.checksum 	= checksum;
+	}
+	
+	
+	/**
+	 * Size of the header, in bytes, for the given number of dimensions.
+	 */
+	public static int size(int dimensions)
+	{
+		return 7 + dimensions * 8 + 20;
+	}
+	
+	
+	/**
+	 * Whether the buffer's remaining bytes start with a header.
+	 *
+	 * @param buffer		ByteBuffer of source bytes
+	 */
+	public static boolean isHeader(ByteBuffer buffer)
+	{
+		return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		READ
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Reads and validates the header, leaving the buffer positioned at the payload and limited
+	 * to its end. Checks the version, the number of dimensions, the payload length, and the
+	 * payload checksum, so a torn or corrupt file fails here rather than during parsing.
+	 *
+	 * @param buffer		ByteBuffer of source bytes, starting with the header
+	 * @param dimensions	the number of dimensions expected
+	 * @return				the header
+	 * @throws 				IOException if the header is invalid, or the payload does not match it
+	 */
+	public static Header read(ByteBuffer buffer, int dimensions) throws IOException
+	{
+		Header header = parse(buffer, dimensions);
+		
+		if (header.length != buffer.remaining())
+			throw new IOException("Tree file payload is " + buffer.remaining() + " bytes, expected " + header.length);
+		
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		if ((int) crc.getValue() != header.checksum)
+			throw new IOException("Tree file checksum does not match its payload");
+		
+		return header;
+	}
+	
+	
+	/**
+	 * Reads the header at the start of the given file without reading the payload, 
+	 * to learn the bounds of a tree before it is loaded.
+	 * 
+	 * @param file			the file to read
+	 * @param dimensions	the number of dimensions expected
+	 * @return				the header, or null if the file has none
+	 * @throws 				IOException if the header is invalid
+	 */
+	public static Header peek(File file, int dimensions) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(size(dimensions));
+			while (buffer.hasRemaining() && channel.read(buffer) != -1);
+			buffer.flip();
+			
+			return isHeader(buffer) ? parse(buffer, dimensions) : null;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+	
+	
+	/**
+	 * Reads the fields of the header, leaving the buffer positioned at the payload.
+	 * Checks the version and the number of dimensions, but not the payload.
+	 */
+	protected static Header parse(ByteBuffer buffer, int dimensions) throws IOException
+	{
+		if (!isHeader(buffer) || buffer.remaining() < 7)
+			throw new IOException("Missing tree file header");
+		
+		buffer.getInt();
+		byte version = buffer.get();
+		if (version != VERSION)
+			throw new IOException("Unsupported tree file version " + version);
+		
+		int found = buffer.get();
+		if (found != dimensions)
+			throw new IOException("Tree file has " + found + " dimensions, expected " + dimensions);
+		
+		byte flags = buffer.get();
+		if (buffer.remaining() < size(dimensions) - 7)
+			throw new IOException("Truncated tree file header");
+		
+		int[] min = new int[dimensions],
+			  max = new int[dimensions];
+		for (int i = 0; i < dimensions; i++) min[i] = buffer.getInt();
+		for (int i = 0; i < dimensions; i++) max[i] = buffer.getInt();
+		
+		long nodes 		= buffer.getLong(),
+			 length 	= buffer.getLong();
+		int  checksum 	= buffer.getInt();
+		
+		return (flags & BOUNDS) == 0 ? new Header(dimensions, null, null, nodes, length, checksum)
+									 : new Header(dimensions, min, max, nodes, length, checksum);
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		WRITE
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Writes a header before the snapshot's bytes. The header is written with the bounds first,
+	 * and the node count, length, and checksum are filled in by {@link #complete(FileChannel)}
+	 * once the payload has been written, so the payload is streamed once and never buffered.
+	 */
+	public static class Framed extends Snapshot
+	{
+		protected final Snapshot 	payload;
+		protected final int 		branches;
+		protected final int[] 		min,
+									max;
+		protected final boolean 	compressed;
+		
+		protected long 				nodes,
+									length;
+		protected int 				checksum;
+		
+		
+		/**
+		 * @param payload		the snapshot to write, in the 2-bit format
+		 * @param branches		8 for the Octree format, 4 for the Quadtree format
+		 * @param min			min corner of the tree, or null
+		 * @param max			max corner of the tree, exclusive, or null
+		 * @param compressed	whether to write the payload through a {@link RangeCoder.Encoder}
+		 */
+		public Framed(Snapshot payload, int branches, int[] min, int[] max, boolean compressed)
+		{
+			this.payload 	= payload;
+			this.branches 	= branches;
+			this.min 		= min == null || max == null ? null : min.clone();
+			this.max 		= min == null || max == null ? null : max.clone();
+			this.compressed = compressed;
+		}
+		
+		
+		@Override
+		public void writeTo(OutputStream output) throws IOException
+		{
+			int dimensions = branches == 8 ? 3 : 2;
+			nodes 	= 0;
+			length 	= 0;
+			
+			ByteBuffer header = ByteBuffer.allocate(size(dimensions));
+			header.putInt(MAGIC);
+			header.put(VERSION);
+			header.put((byte) dimensions);
+			header.put(min == null ? 0 : BOUNDS);
+			for (int i = 0; i < dimensions; i++) header.putInt(min == null ? 0 : min[i]);
+			for (int i = 0; i < dimensions; i++) header.putInt(max == null ? 0 : max[i]);
+			output.write(header.array());
+			
+			final CRC32C crc = new CRC32C();
+			OutputStream checked = new FilterOutputStream(output)
+			{
+				@Override
+				public void write(int b) throws IOException
+				{
+					crc.update(b);
+					length++;
+					out.write(b);
+				}
+				
+				@Override
+				public void write(byte[] bytes, int offset, int count) throws IOException
+				{
+					crc.update(bytes, offset, count);
+					length += count;
+					out.write(bytes, offset, count);
+				}
+			};
+			
+			RangeCoder.Encoder encoder = compressed ? new RangeCoder.Encoder(checked, branches) : null;
+			OutputStream raw = new FilterOutputStream(encoder != null ? encoder : checked)
+			{
+				@Override
+				public void write(int b) throws IOException
+				{
+					nodes++;
+					out.write(b);
+				}
+			};
+			payload.writeTo(raw);
+			
+			if (encoder != null)
+				encoder.finish();
+			
+			nodes 	 = nodes * 4 / branches;
+			checksum = (int) crc.getValue();
+		}
+		
+		
+		/**
+		 * Fills in the node count, length, and checksum, after the header's bounds.
+		 */
+		@Override
+		public void complete(FileChannel channel) throws IOException
+		{
+			int dimensions = branches == 8 ? 3 : 2;
+			
+			ByteBuffer tail = ByteBuffer.allocate(20);
+			tail.putLong(nodes);
+			tail.putLong(length);
+			tail.putInt(checksum);
+			tail.flip();
+			
+			long position = size(dimensions) - 20;
+			while (tail.hasRemaining())
+				position += channel.write(tail, position);
+		}
+	}
+}
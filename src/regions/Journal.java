@@ -0,0 +1,479 @@
+package regions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of edits to a {@link Tree}, so that an edit is persisted by appending a few
+ * bytes instead of saving the whole tree. Edits made through the journal are applied to the tree
+ * and buffered; buffered records are written and forced to disk together, every
+ * {@link #syncMillis} milliseconds or on {@link #sync()}.<p>
+ *
+ * The log is kept beside the tree's file, as <tt>file.log</tt>. When it grows past
+ * {@link #compactBytes}, it is renamed to <tt>file.log.old</tt>, a new log is started, and the
+ * tree is saved with {@link Tree#saveAsync()}; once the save completes, the old log is deleted.
+ * On open, both logs are replayed onto the tree as loaded from its file, and if an old log was
+ * left by a compaction that did not finish, the tree is saved and the old log deleted.<p>
+ *
+ * Every edit sets each block it selects to a fixed value, so replaying edits that the saved tree
+ * already contains leaves it unchanged. A crash between saving and deleting the old log is
+ * therefore harmless. A record cut short by a crash fails its checksum and ends the replay.<p>
+ *
+ * Must be used from the thread that edits the tree.
+ */
+public class Journal
+{
+	/**
+	 * Record types.
+	 */
+	protected static final byte ADD_POINT 		= 0,
+								ADD_BOUNDS 		= 1,
+								ADD_BLOCKS 		= 2,
+								REMOVE_POINT 	= 3,
+								REMOVE_BOUNDS 	= 4,
+								REMOVE_BLOCKS 	= 5;
+	
+	/**
+	 * Forces buffered records to disk. One daemon thread, shared by all journals.
+	 */
+	protected static final ScheduledExecutorService SYNCER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "Regions journal");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	protected final Tree 		tree;
+	protected final File 		log;
+	protected final File 		oldLog;
+	
+	/**
+	 * Milliseconds between syncs of buffered records.
+	 */
+	public final long 			syncMillis;
+	
+	/**
+	 * Size of the log, in bytes, past which the tree is saved and the log restarted.
+	 */
+	public final long 			compactBytes;
+	
+	protected FileChannel 				channel;
+	protected long 						size;
+	protected ByteArrayOutputStream 	buffer 	= new ByteArrayOutputStream();
+	protected CompletableFuture<Void> 	compaction;
+	protected final ScheduledFuture<?> 	syncTask;
+	
+	/**
+	 * Serializes writes to the channel, and the swap of {@link #buffer}.
+	 */
+	protected final Object 		lock = new Object();
+	
+	
+	/**
+	 * Opens the journal of the given tree with a sync interval of 50 ms
+	 * and a compaction threshold of 4 MB, replaying any existing log.
+	 *
+	 * @param tree			the tree, as loaded from its file
+	 * @throws 				IOException
+	 */
+	public Journal(Tree tree) throws IOException
+	{
+		this(tree, 50, 4 << 20);
+	}
+	
+	
+	/**
+	 * Opens the journal of the given tree, replaying any existing log.
+	 *
+	 * @param tree			the tree, as loaded from its file
+	 * @param syncMillis	milliseconds between syncs of buffered records
+	 * @param compactBytes	size of the log past which the tree is saved and the log restarted
+	 * @throws 				IOException
+	 */
+	public Journal(Tree tree, long syncMillis, long compactBytes) throws IOException
+	{
+		this.tree 			= tree;
+		this.log 			= new File(tree.file.getAbsolutePath() + ".log");
+		this.oldLog 		= new File(tree.file.getAbsolutePath() + ".log.old");
+		this.syncMillis 	= syncMillis;
+		this.compactBytes 	= compactBytes;
+		
+		replay(oldLog);
+		replay(log);
+		
+		if (oldLog.exists())
+		{
+			tree.saveToFile();
+			if (!oldLog.delete())
+				throw new IOException("Could not delete " + oldLog);
+		}
+		
+		this.channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.size 	 = channel.size();
+		channel.position(size);
+		
+		this.syncTask = SYNCER.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					sync();
+				}
+				catch (IOException e)
+				{
+					//	records stay buffered, and the next sync, compaction or close retries and throws
+				}
+			}
+		}, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		REPLAY
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Applies each intact record of the given log to the tree, stopping at the first record
+	 * that is incomplete or fails its checksum. If replay stops early, the log is truncated there.
+	 *
+	 * @param file			the log to replay
+	 * @throws 				IOException
+	 */
+	protected void replay(File file) throws IOException
+	{
+		if (!file.exists())
+			return;
+		
+		ByteBuffer bytes = Tree.readBytes(file);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+		CRC32 crc = new CRC32();
+		long intact = 0;
+		try
+		{
+			while (true)
+			{
+				int length = input.readInt();
+				if (length < 0 || length > bytes.limit() - intact - 8)
+					break;
+				
+				byte[] record = new byte[length];
+				input.readFully(record);
+				
+				crc.reset();
+				crc.update(record, 0, length);
+				if (input.readInt() != (int) crc.getValue())
+					break;
+				
+				apply(new DataInputStream(new ByteArrayInputStream(record)));
+				intact += length + 8;
+			}
+		}
+		catch (EOFException e) {}
+		
+		if (intact < bytes.limit())
+		{
+			FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+			try
+			{
+				truncate.truncate(intact);
+			}
+			finally
+			{
+				truncate.close();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Applies one record to the tree.
+	 *
+	 * @param input			the record
+	 * @throws 				IOException
+	 */
+	protected void apply(DataInputStream input) throws IOException
+	{
+		byte type = input.readByte();
+		switch (type)
+		{
+			case ADD_POINT 		: tree.add(readInts(input)); 						break;
+			case ADD_BOUNDS 	: tree.add(readBounds(input)); 						break;
+			case ADD_BLOCKS 	: tree.add(readBlocks(input), readBounds(input)); 	break;
+			case REMOVE_POINT 	: tree.remove(readInts(input)); 					break;
+			case REMOVE_BOUNDS 	: tree.remove(readBounds(input)); 					break;
+			case REMOVE_BLOCKS 	: tree.remove(readBlocks(input), readBounds(input)); break;
+			default 			: throw new IOException("Invalid journal record type " + type);
+		}
+	}
+	
+	
+	protected static int[] readInts(DataInputStream input) throws IOException
+	{
+		int[] ints = new int[input.readUnsignedByte()];
+		for (int i = 0; i < ints.length; i++)
+			ints[i] = input.readInt();
+		return ints;
+	}
+	
+	
+	protected static int[][] readBounds(DataInputStream input) throws IOException
+	{
+		int[][] bounds = new int[input.readUnsignedByte()][];
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = readInts(input);
+		return bounds;
+	}
+	
+	
+	protected static BitSet readBlocks(DataInputStream input) throws IOException
+	{
+		long[] words = new long[input.readInt()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = input.readLong();
+		return BitSet.valueOf(words);
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		APPEND
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	public void add(int... coords) 						{ tree.add(coords); 			append(ADD_POINT, null, coords); 		}
+	public void add(int[]... bounds) 					{ tree.add(bounds); 			append(ADD_BOUNDS, null, bounds); 		}
+	public void add(BitSet blocks, int[]... bounds) 	{ tree.add(blocks, bounds); 	append(ADD_BLOCKS, blocks, bounds); 	}
+	public void remove(int... coords) 					{ tree.remove(coords); 			append(REMOVE_POINT, null, coords); 	}
+	public void remove(int[]... bounds) 				{ tree.remove(bounds); 			append(REMOVE_BOUNDS, null, bounds); 	}
+	public void remove(BitSet blocks, int[]... bounds) 	{ tree.remove(blocks, bounds); 	append(REMOVE_BLOCKS, blocks, bounds); 	}
+	
+	
+	/**
+	 * Buffers a record of the given edit, as its length, contents, and CRC32.
+	 * Starts a compaction if the log has grown past {@link #compactBytes}.
+	 *
+	 * @param type			the record type
+	 * @param blocks		the BitSet of the edit, or null
+	 * @param values		the coordinates (int[]) or bounds (int[][]) of the edit
+	 */
+	protected void append(byte type, BitSet blocks, Object values)
+	{
+		ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+		DataOutputStream output = new DataOutputStream(record);
+		try
+		{
+			output.writeByte(type);
+			if (blocks != null)
+			{
+				long[] words = blocks.toLongArray();
+				output.writeInt(words.length);
+				for (long word : words)
+					output.writeLong(word);
+			}
+			if (values instanceof int[][])
+			{
+				int[][] bounds = (int[][]) values;
+				output.writeByte(bounds.length);
+				for (int[] axis : bounds)
+					writeInts(output, axis);
+			}
+			else
+				writeInts(output, (int[]) values);
+			
+			CRC32 crc = new CRC32();
+			crc.update(record.toByteArray());
+			
+			synchronized (lock)
+			{
+				if (channel == null)
+					return;
+				
+				DataOutputStream data = new DataOutputStream(buffer);
+				data.writeInt(record.size());
+				record.writeTo(data);
+				data.writeInt((int) crc.getValue());
+				size += record.size() + 8;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);	//	not thrown by in-memory streams
+		}
+		
+		if (channel != null && size > compactBytes && (compaction == null || compaction.isDone()))
+		{
+			CompletableFuture<Void> started = compact();
+			if (started.isCompletedExceptionally())
+				started.join();		//	throws the failure to the caller; the journal stays open
+		}
+	}
+	
+	
+	protected static void writeInts(DataOutputStream output, int[] ints) throws IOException
+	{
+		output.writeByte(ints.length);
+		for (int value : ints)
+			output.writeInt(value);
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		SYNC AND COMPACT
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Writes buffered records to the log and forces them to disk. If the write fails, the log 
+	 * is cut back to its last complete record and the records stay buffered for the next sync.
+	 *
+	 * @throws 				IOException
+	 */
+	public void sync() throws IOException
+	{
+		synchronized (lock)
+		{
+			if (buffer.size() == 0 || channel == null)
+				return;
+			
+			ByteBuffer 	bytes = ByteBuffer.wrap(buffer.toByteArray());
+			long 		start = channel.position();
+			try
+			{
+				while (bytes.hasRemaining())
+					channel.write(bytes);
+				channel.force(false);
+			}
+			catch (IOException e)
+			{
+				try
+				{
+					channel.truncate(start);
+					channel.position(start);
+				}
+				catch (IOException f)
+				{
+					e.addSuppressed(f);
+				}
+				throw e;
+			}
+			buffer.reset();
+		}
+	}
+	
+	
+	/**
+	 * Moves the log aside, starts a new one, and saves the tree. Deletes the old log
+	 * once the save completes. Called when the log grows past {@link #compactBytes}.<p>
+	 * 
+	 * If an earlier compaction is still saving, returns its future. If an earlier save failed, 
+	 * leaving the old log, saves again without moving the log, as the tree holds both logs' edits. 
+	 * If the log cannot be synced or moved, the journal keeps logging to it.
+	 *
+	 * @return				a future completed when the old log is deleted, or completed 
+	 * 						exceptionally if the log could not be moved or the save failed
+	 */
+	public CompletableFuture<Void> compact()
+	{
+		if (compaction != null && !compaction.isDone())
+			return compaction;
+		
+		try
+		{
+			synchronized (lock)
+			{
+				if (channel == null)
+					throw new IOException("Journal is closed: " + log);
+				
+				sync();
+				
+				if (!oldLog.exists())
+				{
+					channel.close();
+					channel = null;
+					
+					boolean renamed = log.renameTo(oldLog);
+					
+					channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					size 	= channel.size();
+					channel.position(size);
+					
+					if (!renamed)
+						throw new IOException("Could not rename " + log + " to " + oldLog);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			CompletableFuture<Void> failed = new CompletableFuture<Void>();
+			failed.completeExceptionally(e);
+			return compaction = failed;
+		}
+		
+		compaction = tree.saveAsync();
+		compaction.whenComplete(new BiConsumer<Void, Throwable>()
+		{
+			@Override
+			public void accept(Void result, Throwable error)
+			{
+				if (error == null)
+					oldLog.delete();
+			}
+		});
+		return compaction;
+	}
+	
+	
+	/**
+	 * Syncs buffered records and closes the log. Edits after closing are applied but not logged.
+	 *
+	 * @throws 				IOException
+	 */
+	public void close() throws IOException
+	{
+		syncTask.cancel(false);
+		synchronized (lock)
+		{
+			if (channel == null)
+				return;
+			try
+			{
+				sync();
+			}
+			finally
+			{
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,551 @@
+package regions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A read-only tree stored breadth-first, one level at a time, so that it can be loaded to a
+ * chosen depth and queried at once, with deeper levels read from the file only when a query
+ * first reaches them.<p>
+ *
+ * Level <tt>k</tt> holds the 2-bit codes of the children of every partial node at depth
+ * <tt>k</tt>, in breadth-first order, in the byte layout of {@link Octree} or {@link Quadtree}.
+ * The partial children in level <tt>k</tt> are, in order, the partial nodes whose children make
+ * up level <tt>k + 1</tt>. So the children of a partial node are found from its rank, the number
+ * of partial codes before it in its level. Each level is followed by a rank table giving that
+ * count at every 64 bytes, which leaves at most 63 bytes to count in a lookup.<p>
+ *
+ * File layout, written by {@link #writeLevels(Node, int, int[], int[], OutputStream)}:
+ * <pre>
+ * int     {@link #MAGIC}
+ * byte    branches (8 or 4)
+ * byte    2-bit code of the root
+ * int[]   min corner, x z y (x z for 4 branches)
+ * int     side
+ * int     number of levels
+ * per level:
+ *     long    offset of the level's codes
+ *     int     length of the level's codes, in bytes
+ * per level, at its offset:
+ *     codes
+ *     int[length / 64 + 1] rank table
+ * </pre>
+ *
+ * Edits throw UnsupportedOperationException.
+ */
+public class LevelTree extends Tree
+{
+	/**
+	 * First four bytes of a level file, "RGLV".
+	 */
+	public static final int MAGIC = 0x52474C56;
+	
+	/**
+	 * Bytes of codes per entry of a rank table.
+	 */
+	public static final int RANK_BLOCK = 64;
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		FROM BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Not supported, as a LevelTree does not build nodes.
+	 */
+	@Override
+	public Node parseBytes(DataInputStream input, int parentBits) throws IOException
+	{
+		throw new UnsupportedOperationException("LevelTree does not build nodes");
+	}
+	
+	
+	/**
+	 * Reads the header: the root code, the bounds, and the offset and length of each level.
+	 *
+	 * @throws 				IOException
+	 */
+	protected void readHeader() throws IOException
+	{
+		DataInputStream input = new DataInputStream(Files.newInputStream(file.toPath()));
+		try
+		{
+			if (input.readInt() != MAGIC)
+				throw new IOException("Not a level file: " + file);
+			
+			branches = input.readByte();
+			rootCode = input.readByte();
+			
+			if (branches != 8 && branches != 4)
+				throw new IOException("Invalid branch count " + branches + " in " + file);
+			
+			min = new int[branches == 8 ? 3 : 2];
+			max = new int[min.length];
+			for (int i = 0; i < min.length; i++)
+				min[i] = input.readInt();
+			
+			int side = input.readInt();
+			if (side <= 0 || Integer.bitCount(side) != 1)
+				throw new IOException("Invalid side " + side + " in " + file);
+			for (int i = 0; i < min.length; i++)
+				max[i] = min[i] + side;
+			
+			int count = input.readInt();
+			offsets = new long[count];
+			lengths = new int[count];
+			for (int k = 0; k < count; k++)
+			{
+				offsets[k] = input.readLong();
+				lengths[k] = input.readInt();
+			}
+			codes = new byte[count][];
+			ranks = new int[count][];
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	
+	/**
+	 * Loads every level up to the given depth that is not yet loaded.
+	 *
+	 * @param depth			the deepest level to load, or any larger number to load all
+	 * @throws 				IOException
+	 */
+	public synchronized void load(int depth) throws IOException
+	{
+		depth = Math.min(depth, offsets.length - 1);
+		if (depth <= loaded)
+			return;
+		
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			for (int k = loaded + 1; k <= depth; k++)
+			{
+				byte[] bytes = new byte[lengths[k]];
+				int[] table  = new int[lengths[k] / RANK_BLOCK + 1];
+				
+				input.seek(offsets[k]);
+				input.readFully(bytes);
+				for (int i = 0; i < table.length; i++)
+					table[i] = input.readInt();
+				
+				codes[k] = bytes;
+				ranks[k] = table;
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+		loaded = depth;
+	}
+	
+	
+	/**
+	 * Loads the given level if needed. Used by queries, which cannot throw IOException.
+	 *
+	 * @param level			the level
+	 */
+	protected void require(int level)
+	{
+		if (level > loaded)
+			try
+			{
+				load(level);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+	}
+	
+	
+	/**
+	 *
+	 * @param level			the level
+	 * @param entry			index of the code in the level: rank of the parent * branches + child index
+	 * @return				the 2-bit code
+	 */
+	protected int code(int level, int entry)
+	{
+		return codes[level][entry >>> 2] >>> 6 - (entry & 3) * 2 & 3;
+	}
+	
+	
+	/**
+	 *
+	 * @param level			the level
+	 * @param entry			index of a code in the level
+	 * @return				the number of partial codes before it in the level
+	 */
+	protected int rank(int level, int entry)
+	{
+		byte[] bytes = codes[level];
+		int end  = entry >>> 2,
+			rank = ranks[level][end / RANK_BLOCK];
+		
+		for (int i = end - end % RANK_BLOCK; i < end; i++)
+			rank += MappedTree.PARTIALS[bytes[i] & 0xFF];
+		
+		return rank + (MappedTree.PARTIALS[(bytes[end] | 0xFF >>> (entry & 3) * 2) & 0xFF]);
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		TO BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Copies the file. The given node is ignored.
+	 */
+	@Override
+	public void writeBytes(Node node, OutputStream output) throws IOException
+	{
+		Files.copy(file.toPath(), output);
+	}
+	
+	
+	/**
+	 * Writes the given tree in the level format. Bricks are written as their equivalent subtrees.
+	 *
+	 * @param root			root of an Octree or Quadtree
+	 * @param branches		8 for an Octree, 4 for a Quadtree
+	 * @param min			min corner of the tree
+	 * @param max			max corner of the tree, exclusive
+	 * @param output		the OutputStream to write to
+	 * @throws 				IOException
+	 */
+	public static void writeLevels(Node root, int branches, int[] min, int[] max, OutputStream output) throws IOException
+	{
+		List<byte[]> levels = new ArrayList<byte[]>();
+		List<Node> 	 parents = new ArrayList<Node>(), next;
+		
+		root = expand(root);
+		if (root.children != null)
+			parents.add(root);
+		
+		int width = branches >>> 2, entry;
+		while (!parents.isEmpty())
+		{
+			byte[] bytes = new byte[parents.size() * width];
+			next = new ArrayList<Node>();
+			entry = 0;
+			for (Node parent : parents)
+				for (Node child : parent.children)
+				{
+					child = expand(child);
+					bytes[entry >>> 2] |= getBits(child) << 6 - (entry & 3) * 2;
+					if (child.children != null)
+						next.add(child);
+					entry++;
+				}
+			levels.add(bytes);
+			parents = next;
+		}
+		
+		DataOutputStream data = new DataOutputStream(output);
+		
+		data.writeInt(MAGIC);
+		data.writeByte(branches);
+		data.writeByte(getBits(root));
+		for (int i = 0; i < (branches == 8 ? 3 : 2); i++)
+			data.writeInt(min[i]);
+		data.writeInt(max[0] - min[0]);
+		data.writeInt(levels.size());
+		
+		long offset = 14 + (branches == 8 ? 12 : 8) + levels.size() * 12L;
+		for (byte[] bytes : levels)
+		{
+			data.writeLong(offset);
+			data.writeInt(bytes.length);
+			offset += bytes.length + (bytes.length / RANK_BLOCK + 1) * 4;
+		}
+		for (byte[] bytes : levels)
+		{
+			data.write(bytes);
+			
+			int rank = 0;
+			for (int i = 0; i <= bytes.length; i++)
+			{
+				if (i % RANK_BLOCK == 0)
+					data.writeInt(rank);
+				if (i < bytes.length)
+					rank += MappedTree.PARTIALS[bytes[i] & 0xFF];
+			}
+		}
+		data.flush();
+	}
+	
+	
+	/**
+	 *
+	 * @param node			a node
+	 * @return				the node, or the subtree equivalent to it if it is a brick
+	 */
+	protected static Node expand(Node node)
+	{
+		return node.bits == null ? node : Octree.fromBits(node.bits, Octree.sideOf(node.bits), 0, 0, 0, Octree.sideOf(node.bits));
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONSTRUCTORS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	protected int 		branches;
+	protected int 		rootCode;
+	protected long[] 	offsets;
+	protected int[] 	lengths;
+	protected byte[][] 	codes;
+	protected int[][] 	ranks;
+	
+	/**
+	 * Deepest loaded level, or -1 if none are loaded.
+	 */
+	protected volatile int loaded = -1;
+	
+	
+	/**
+	 * Reads the header of the given level file, including its bounds, and loads levels up 
+	 * to the given depth.
+	 *
+	 * @param file			the source file
+	 * @param depth			the deepest level to load now; deeper levels load on demand
+	 * @throws 				IOException
+	 */
+	public LevelTree(File file, int depth) throws IOException
+	{
+		super(file, new Node(false));
+		
+		readHeader();
+		load(depth);
+	}
+	
+	
+	public int levelCount() 	{ return offsets.length; }
+	public int loadedDepth() 	{ return loaded; }
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		TEST FOR POINT(S)																	 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	@Override
+	public boolean testFor(int... coords)
+	{
+		return coords.length == 2 ? testFor(coords[0], coords[1]) : testFor(coords[0], coords[1], coords[2]);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		return classify(x, z, y, Integer.MAX_VALUE) == 2;
+	}
+	
+	
+	/**
+	 * Classifies the point using only the levels already loaded, without reading the file.
+	 *
+	 * @param x
+	 * @param z
+	 * @param y				ignored for the Quadtree format
+	 * @return				2 (in the region), 1 (not in the region), or 0 (not known at the loaded depth)
+	 */
+	public int classify(int x, int z, int y)
+	{
+		return classify(x, z, y, loaded);
+	}
+	
+	
+	/**
+	 * Descends toward the point through levels up to the given depth, loading them as needed.
+	 *
+	 * @param x
+	 * @param z
+	 * @param y				ignored for the Quadtree format
+	 * @param depth			the deepest level to read
+	 * @return				2 (in the region), 1 (not in the region), or 0 (not known at the given depth)
+	 */
+	protected int classify(int x, int z, int y, int depth)
+	{
+		if (min == null ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1] ||
+			branches == 8 && (y < min[2] || y >= max[2])
+			)
+			return 1;
+		
+		if (rootCode != 0)
+			return rootCode;
+		
+		int half = max[0] - min[0] >>> 1,
+			minX = min[0],
+			minZ = min[1],
+			minY = branches == 8 ? min[2] : 0,
+			rank = 0,
+			index, entry, code;
+		
+		for (int level = 0; level < offsets.length; level++)
+		{
+			if (level > depth)
+				return 0;
+			require(level);
+			
+			index = 0;
+			if (minX + half <= x) { minX += half; index += 1; }
+			if (minZ + half <= z) { minZ += half; index += 2; }
+			if (branches == 8 &&
+				minY + half <= y) { minY += half; index += 4; }
+			
+			entry = rank * branches + index;
+			if ((code = code(level, entry)) != 0)
+				return code;
+			
+			rank = rank(level, entry);
+			half >>>= 1;
+		}
+		return 1;
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1]
+			)
+			return false;
+		
+		if (rootCode != 0)
+			return rootCode == 2;
+		
+		return testFor(0, 0, max[0] - min[0] >>> 1, min[0], min[1], x, z);
+	}
+	
+	
+	/**
+	 * Tests the column at x, z within the given partial node.
+	 *
+	 * @param level			the level holding the node's children
+	 * @param rank			rank of the node among the partial nodes of its depth
+	 * @param half			half the side length of the node
+	 * @param node_minX		min x of the node
+	 * @param node_minZ		min z of the node
+	 * @param x				the column's x
+	 * @param z				the column's z
+	 */
+	protected boolean testFor(int level, int rank, int half, int node_minX, int node_minZ, int x, int z)
+	{
+		if (level == offsets.length)
+			return false;
+		require(level);
+		
+		int index = 0, entry;
+		if (node_minX + half <= x) { node_minX += half; index += 1; }
+		if (node_minZ + half <= z) { node_minZ += half; index += 2; }
+		
+		for (; index < branches; index += 4)
+		{
+			entry = rank * branches + index;
+			switch (code(level, entry))
+			{
+				case 2 : return true;
+				case 1 : continue;
+			}
+			if (testFor(level + 1, rank(level, entry), half >>> 1, node_minX, node_minZ, x, z))
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		EDITS																				 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	@Override
+	protected void expandAsNeeded(int... coords) 			{ throw readOnly(); }
+	
+	@Override
+	protected void expandAsNeeded(int[]... bounds) 			{ throw readOnly(); }
+	
+	@Override
+	public void add(int... coords) 							{ throw readOnly(); }
+	
+	@Override
+	public void add(int[]... bounds) 						{ throw readOnly(); }
+	
+	@Override
+	public void add(BitSet blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void add(Bitmap blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void add(Columns columns) 						{ throw readOnly(); }
+	
+	@Override
+	public void add(Shape shape) 							{ throw readOnly(); }
+	
+	@Override
+	public void trimAsNeeded() 								{ throw readOnly(); }
+	
+	@Override
+	public void remove(int... coords) 						{ throw readOnly(); }
+	
+	@Override
+	public void remove(int[]... bounds) 					{ throw readOnly(); }
+	
+	@Override
+	public void remove(BitSet blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void remove(Columns columns) 						{ throw readOnly(); }
+	
+	@Override
+	public void remove(Shape shape) 						{ throw readOnly(); }
+	
+	
+	protected static UnsupportedOperationException readOnly()
+	{
+		return new UnsupportedOperationException("LevelTree is read-only");
+	}
+}
@@ -0,0 +1,1036 @@
+package regions;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.BitSet;
+
+/**
+ * A pointerless, or "linear," octree. Instead of a structure of {@link Tree.Node Nodes}, stores
+ * only the full leaves of the tree, as a sorted array of (Morton code, level) pairs.<p>
+ *
+ * A leaf's Morton code interleaves the bits of its x, z, and y offsets from <tt>min</tt> in the
+ * same order as the Octree child index (x = 1, z = 2, y = 4), left-aligned in a code space of
+ * {@link #MAX_DEPTH} levels. Codes therefore do not depend on the side length of the tree, and
+ * sort in the same depth-first order that {@link #writeBytes(Node, OutputStream)} writes them in.<p>
+ *
+ * Reads and writes the same 2-bit format as {@link Octree}, so either class can load a given file.
+ */
+public class LinearOctree extends Tree
+{
+	/**
+	 * Maximum number of levels below the root. Each level uses 3 bits of a 63-bit code.
+	 */
+	public static final int MAX_DEPTH = 21;
+
+
+	/**
+	 * Sorted array of (Morton code, level) pairs, stored as <tt>pairs[2i]</tt> and
+	 * <tt>pairs[2i + 1]</tt>. Appending in depth-first order keeps the array sorted,
+	 * and merges eight sibling leaves into their parent.
+	 */
+	public static class Leaves
+	{
+		public long[] 	pairs;
+		public int 		size;
+
+		public Leaves(int capacity)
+		{
+			this.pairs	= new long[Math.max(capacity, 1) * 2];
+			this.size	= 0;
+		}
+
+
+		/**
+		 * Number of codes spanned by a node at the given level.
+		 * Not valid for level 0, which spans the entire code space.
+		 *
+		 * @param level		the level of the node
+		 */
+		public static long span(int level)
+		{
+			return 1L << 3 * (MAX_DEPTH - level);
+		}
+
+
+		/**
+		 * Code of the given child of a node.
+		 *
+		 * @param code		code of the parent node
+		 * @param level		level of the parent node
+		 * @param index		child index, 0 - 7
+		 */
+		public static long child(long code, int level, int index)
+		{
+			return code | (long) index << 3 * (MAX_DEPTH - level - 1);
+		}
+
+
+		/**
+		 * Appends a full leaf, which must follow all existing leaves in depth-first order.
+		 * If the leaf completes a set of eight siblings, replaces them with their parent.
+		 *
+		 * @param code		code of the leaf
+		 * @param level		level of the leaf
+		 */
+		public void append(long code, int level)
+		{
+			collapse: while (level > 0 && size >= 7)
+			{
+				int shift = 3 * (MAX_DEPTH - level);
+				if ((code >>> shift & 7) != 7)
+					break;
+
+				long parent = code & ~(7L << shift);
+				for (int i = 0, j = (size - 7) * 2; i < 7; i++, j += 2)
+				{
+					if (pairs[j + 1] != level || pairs[j] != (parent | (long) i << shift))
+						break collapse;
+				}
+				size -= 7;
+				code  = parent;
+				level--;
+			}
+			if (size * 2 == pairs.length)
+			{
+				long[] grown = new long[pairs.length * 2];
+				System.arraycopy(pairs, 0, grown, 0, pairs.length);
+				pairs = grown;
+			}
+			pairs[size * 2]		= code;
+			pairs[size * 2 + 1]	= level;
+			size++;
+		}
+
+
+		/**
+		 * Index of the first leaf whose code is greater than or equal to the given code.
+		 *
+		 * @param code		the code to search for
+		 */
+		public int ceiling(long code)
+		{
+			int low = 0, high = size;
+			while (low < high)
+			{
+				int mid = low + high >>> 1;
+				if (pairs[mid * 2] < code)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+
+		/**
+		 * Index of the last leaf whose code is less than or equal to the given code, or -1.
+		 *
+		 * @param code		the code to search for
+		 */
+		public int floor(long code)
+		{
+			int low = 0, high = size;
+			while (low < high)
+			{
+				int mid = low + high >>> 1;
+				if (pairs[mid * 2] <= code)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low - 1;
+		}
+
+
+		/**
+		 * Whether the leaf at the given index contains the given code.
+		 *
+		 * @param index		index of the leaf
+		 * @param code		the code to evaluate
+		 */
+		public boolean covers(int index, long code)
+		{
+			int level = (int) pairs[index * 2 + 1];
+
+			return code >= pairs[index * 2] && (level == 0 || code - pairs[index * 2] < span(level));
+		}
+
+
+		/**
+		 * Compares the node at the given code and level against the stored leaves.
+		 *
+		 * @param code		code of the node
+		 * @param level		level of the node
+		 * @return			2 (full), 1 (empty), or 0 (partial)
+		 */
+		public int compare(long code, int level)
+		{
+			int i = floor(code);
+			if (i >= 0 && pairs[i * 2 + 1] <= level && covers(i, code))
+				return 2;
+
+			i = ceiling(code);
+			if (i < size && (level == 0 || pairs[i * 2] - code < span(level)))
+				return 0;
+
+			return 1;
+		}
+
+
+		/**
+		 * Appends to this array the contents of the given node in another array,
+		 * either as a single leaf, or as a copy of the leaves inside it.
+		 *
+		 * @param source	the array to copy from
+		 * @param code		code of the node
+		 * @param level		level of the node
+		 */
+		public void copy(Leaves source, long code, int level)
+		{
+			int i = source.floor(code);
+			if (i >= 0 && source.pairs[i * 2 + 1] <= level && source.covers(i, code))
+			{
+				append(code, level);
+				return;
+			}
+			for (i = source.ceiling(code);
+				 i < source.size && (level == 0 || source.pairs[i * 2] - code < span(level));
+				 i++)
+				append(source.pairs[i * 2], (int) source.pairs[i * 2 + 1]);
+		}
+
+
+		/**
+		 * Replaces the leaves from <tt>from</tt> to <tt>to</tt> with room for the given number
+		 * of leaves, moving the leaves after them. Grows the array if needed.
+		 *
+		 * @param from		index of the first leaf to replace
+		 * @param to		index after the last leaf to replace
+		 * @param count		number of leaves to make room for
+		 */
+		protected void splice(int from, int to, int count)
+		{
+			int length = size - (to - from) + count;
+			if (length * 2 > pairs.length)
+			{
+				long[] grown = new long[Math.max(pairs.length * 2, length * 2)];
+				System.arraycopy(pairs, 0, grown, 0, size * 2);
+				pairs = grown;
+			}
+			System.arraycopy(pairs, to * 2, pairs, (from + count) * 2, (size - to) * 2);
+			size = length;
+		}
+
+
+		/**
+		 * Adds a full leaf in place. If the leaf completes a set of eight siblings, replaces
+		 * them with their parent, and so on up. Does nothing if the leaf is already covered.
+		 *
+		 * @param code		code of the leaf
+		 * @param level		level of the leaf
+		 */
+		public void insert(long code, int level)
+		{
+			int i = floor(code);
+			if (i >= 0 && covers(i, code))
+				return;
+
+			i++;
+			splice(i, i, 1);
+			pairs[i * 2]		= code;
+			pairs[i * 2 + 1]	= level;
+
+			collapse: while (level > 0)
+			{
+				int shift = 3 * (MAX_DEPTH - level),
+					first = i - (int) (code >>> shift & 7);
+
+				if (first < 0 || first + 8 > size)
+					break;
+
+				long parent = code & ~(7L << shift);
+				for (int j = 0; j < 8; j++)
+				{
+					if (pairs[(first + j) * 2 + 1] != level || pairs[(first + j) * 2] != (parent | (long) j << shift))
+						break collapse;
+				}
+				splice(first, first + 8, 1);
+
+				i 		= first;
+				code	= parent;
+				level--;
+				pairs[i * 2]		= code;
+				pairs[i * 2 + 1]	= level;
+			}
+		}
+
+
+		/**
+		 * Clears a block in place. The leaf covering it is replaced by the 7 siblings of each
+		 * node on the path from that leaf down to the block, in order.
+		 *
+		 * @param code		code of the block
+		 * @param level		level of the block
+		 */
+		public void delete(long code, int level)
+		{
+			int i = floor(code);
+			if (i < 0 || !covers(i, code))
+				return;
+
+			int top = (int) pairs[i * 2 + 1];
+			splice(i, i + 1, 7 * (level - top));
+
+			int low = i, high = i + 7 * (level - top);
+			for (int l = top; l < level; l++)
+			{
+				long parent = l == 0 ? 0L : code & -span(l);
+				int  index  = (int) (code >>> 3 * (MAX_DEPTH - l - 1) & 7);
+
+				for (int j = 0; j < index; j++, low++)
+				{
+					pairs[low * 2]			= child(parent, l, j);
+					pairs[low * 2 + 1]		= l + 1;
+				}
+				for (int j = 7; j > index; j--)
+				{
+					high--;
+					pairs[high * 2]			= child(parent, l, j);
+					pairs[high * 2 + 1]		= l + 1;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Box or BitSet selection of blocks, evaluated against node bounds while rebuilding the tree.
+	 */
+	protected static abstract class Selection
+	{
+		/**
+		 * @return			2 (all selected), 1 (none selected), or 0 (some selected)
+		 */
+		public abstract int compare(int minX, int minZ, int minY, int maxX, int maxZ, int maxY);
+	}
+
+
+	protected static class Box extends Selection
+	{
+		protected final int minX, minZ, minY, maxX, maxZ, maxY;
+
+		public Box(int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+		{
+			this.minX = minX; this.minZ = minZ; this.minY = minY;
+			this.maxX = maxX; this.maxZ = maxZ; this.maxY = maxY;
+		}
+
+		@Override
+		public int compare(int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+		{
+			if (minX >= this.maxX || maxX <= this.minX ||
+				minZ >= this.maxZ || maxZ <= this.minZ ||
+				minY >= this.maxY || maxY <= this.minY
+				)
+				return 1;
+
+			return 	minX >= this.minX && maxX <= this.maxX &&
+					minZ >= this.minZ && maxZ <= this.maxZ &&
+					minY >= this.minY && maxY <= this.maxY
+
+					? 2 : 0;
+		}
+	}
+
+
+	protected static class Bits extends Box
+	{
+		protected final BitSet blocks;
+
+		public Bits(BitSet blocks, int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+		{
+			super(minX, minZ, minY, maxX, maxZ, maxY);
+			this.blocks = blocks;
+		}
+
+		@Override
+		public int compare(int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+		{
+			int bounded = super.compare(minX, minZ, minY, maxX, maxZ, maxY);
+			if (bounded == 1)
+				return 1;
+
+			int result = _3D.compareRegion(Math.max(minX, this.minX),
+										   Math.max(minZ, this.minZ),
+										   Math.max(minY, this.minY),
+										   Math.min(maxX, this.maxX),
+										   Math.min(maxZ, this.maxZ),
+										   Math.min(maxY, this.maxY),
+										   this.minX, this.minZ, this.minY, this.maxX, this.maxZ, this.maxY,
+										   blocks
+										   );
+
+			return result == 2 && bounded == 0 ? 0 : result;
+		}
+	}
+
+
+	/**
+	 * A selection classified by its own {@link Selection3D#compareRegion}, such as a {@link Bitmap}.
+	 */
+	protected static class Selected extends Box
+	{
+		protected final Selection3D blocks;
+
+		public Selected(Selection3D blocks)
+		{
+			super(blocks.minX, blocks.minZ, blocks.minY, blocks.maxX, blocks.maxZ, blocks.maxY);
+			this.blocks = blocks;
+		}
+
+		@Override
+		public int compare(int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+		{
+			int bounded = super.compare(minX, minZ, minY, maxX, maxZ, maxY);
+			if (bounded == 1)
+				return 1;
+
+			int result = blocks.compareRegion(Math.max(minX, this.minX),
+											  Math.max(minZ, this.minZ),
+											  Math.max(minY, this.minY),
+											  Math.min(maxX, this.maxX),
+											  Math.min(maxZ, this.maxZ),
+											  Math.min(maxY, this.maxY)
+											  );
+
+			return result == 2 && bounded == 0 ? 0 : result;
+		}
+	}
+
+
+
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		FROM BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+
+
+	/**
+	 * Decodes the Octree format directly into {@link #leaves}, without building any nodes.
+	 *
+	 * @return				a childless placeholder node
+	 */
+	@Override
+	public Node parseBytes(DataInputStream input, int parentBits) throws IOException
+	{
+		leaves = new Leaves((int) Math.min(Math.max(nodeCount * 7 + 1, 16), 1 << 20));	//	a tree of n partial nodes has at most 7n + 1 leaves
+		parseBytes(input, parentBits, 0L, 0);
+		return new Node(false);
+	}
+
+
+
+	@Override
+	protected int branches()
+	{
+		return 8;
+	}
+
+
+	/**
+	 *
+	 * @param input			DataInputStream of source bytes
+	 * @param bits			the 2-bit value (00, 01, or 10) of this node
+	 * @param code			code of this node
+	 * @param level			level of this node
+	 * @throws				IOException
+	 */
+	protected void parseBytes(DataInputStream input, int bits, long code, int level) throws IOException
+	{
+		if (bits == 0b00000010)
+		{
+			leaves.append(code, level);
+			return;
+		}
+		if (bits == 0b00000001) return;
+
+		if (level == MAX_DEPTH)
+			throw new IOException("LinearOctree cannot exceed " + MAX_DEPTH + " levels");
+
+		int a = input.read(),	//returns -1 if there are no more bytes
+			b = input.read();
+
+		if (a == -1 || b == -1) return;
+
+		parseBytes(input, (a >>> 6 & 3), Leaves.child(code, level, 0), level + 1);
+		parseBytes(input, (a >>> 4 & 3), Leaves.child(code, level, 1), level + 1);
+		parseBytes(input, (a >>> 2 & 3), Leaves.child(code, level, 2), level + 1);
+		parseBytes(input, (a       & 3), Leaves.child(code, level, 3), level + 1);
+
+		parseBytes(input, (b >>> 6 & 3), Leaves.child(code, level, 4), level + 1);
+		parseBytes(input, (b >>> 4 & 3), Leaves.child(code, level, 5), level + 1);
+		parseBytes(input, (b >>> 2 & 3), Leaves.child(code, level, 6), level + 1);
+		parseBytes(input, (b       & 3), Leaves.child(code, level, 7), level + 1);
+	}
+
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		TO BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+
+
+	/**
+	 * Writes {@link #leaves} in the Octree format. The given node is ignored, as
+	 * a LinearOctree has no node structure.
+	 */
+	@Override
+	public void writeBytes(Node node, OutputStream output) throws IOException
+	{
+		if (leaves.size > 0)
+			writeBytes(leaves, 0L, 0, output);
+	}
+
+
+	/**
+	 * Copies the leaves, which later edits may change in place.
+	 */
+	@Override
+	protected Snapshot snapshot()
+	{
+		final Leaves copy = new Leaves(leaves.size);
+		System.arraycopy(leaves.pairs, 0, copy.pairs, 0, leaves.size * 2);
+		copy.size = leaves.size;
+
+		return new Snapshot()
+		{
+			@Override
+			public void writeTo(OutputStream output) throws IOException
+			{
+				if (copy.size > 0)
+					writeBytes(copy, 0L, 0, output);
+			}
+		};
+	}
+
+
+	/**
+	 *
+	 * @param leaves		the leaves to write
+	 * @param code			code of the node to write
+	 * @param level			level of the node to write
+	 * @param output		the OutputStream to write to
+	 * @throws				IOException
+	 */
+	protected static void writeBytes(Leaves leaves, long code, int level, OutputStream output) throws IOException
+	{
+		int a = 0, b = 0;
+		for (int i = 0; i < 4; i++) a = a << 2 | leaves.compare(Leaves.child(code, level, i), level + 1);
+		for (int i = 4; i < 8; i++) b = b << 2 | leaves.compare(Leaves.child(code, level, i), level + 1);
+
+		output.write(a);
+		output.write(b);
+
+		for (int i = 0; i < 8; i++)
+			if (leaves.compare(Leaves.child(code, level, i), level + 1) == 0)
+				writeBytes(leaves, Leaves.child(code, level, i), level + 1, output);
+	}
+
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONSTRUCTORS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+
+	protected Leaves leaves = new Leaves(16);
+
+	public LinearOctree(File file) throws IOException
+	{
+		super(file, new Node(false));
+
+		parseBytes(file);
+	}
+
+
+	/**
+	 * Number of levels below the root.
+	 */
+	public int depth()
+	{
+		return Integer.numberOfTrailingZeros(max[0] - min[0]);
+	}
+
+
+	/**
+	 * Number of full leaves stored.
+	 */
+	public int leafCount()
+	{
+		return leaves.size;
+	}
+
+
+	/**
+	 * Spreads the low 21 bits of the given value to every third bit.
+	 *
+	 * @param a				the value to spread
+	 */
+	protected static long spread(int a)
+	{
+		long x = a & 0x1fffffL;
+		x = (x | x << 32) & 0x001f00000000ffffL;
+		x = (x | x << 16) & 0x001f0000ff0000ffL;
+		x = (x | x <<  8) & 0x100f00f00f00f00fL;
+		x = (x | x <<  4) & 0x10c30c30c30c30c3L;
+		x = (x | x <<  2) & 0x1249249249249249L;
+		return x;
+	}
+
+
+	/**
+	 * Returns the code of the block at the given coordinates, which must be inside the tree's bounds.
+	 */
+	protected long encode(int x, int z, int y)
+	{
+		return (spread(x - min[0]) | spread(z - min[1]) << 1 | spread(y - min[2]) << 2) << 3 * (MAX_DEPTH - depth());
+	}
+
+
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		EVALUATE																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+
+
+	@Override
+	public boolean testFor(int... coords)
+	{
+		return testFor(coords[0], coords[1], coords[2]);
+	}
+
+
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		if (min == null ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1] ||
+			y < min[2] || y >= max[2]
+			)
+			return false;
+
+		long code = encode(x, z, y);
+		int index = leaves.floor(code);
+
+		return index >= 0 && leaves.covers(index, code);
+	}
+
+
+	/**
+	 *
+	 * @param code			code of the node
+	 * @param level			level of the node
+	 * @param half			half the side length of the node
+	 * @param node_minX
+	 * @param node_minZ
+	 * @param x
+	 * @param z
+	 * @return				whether the node contains any block in the column at x, z
+	 */
+	protected boolean testFor(long code, int level, int half, int node_minX, int node_minZ, int x, int z)
+	{
+		switch (leaves.compare(code, level))
+		{
+			case 1 : return false;
+			case 2 : return true;
+		}
+
+		int index = 0;
+		if (node_minX + half <= x)
+		{
+			node_minX += half;
+			index += 1;
+		}
+		if (node_minZ + half <= z)
+		{
+			node_minZ += half;
+			index += 2;
+		}
+		half >>>= 1;
+
+		return 	testFor(Leaves.child(code, level, index    ), level + 1, half, node_minX, node_minZ, x, z) ||
+				testFor(Leaves.child(code, level, index + 4), level + 1, half, node_minX, node_minZ, x, z);
+	}
+
+
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1]
+			)
+			return false;
+
+		return testFor(0L, 0, max[0] - min[0] >>> 1, min[0], min[1], x, z);
+	}
+
+
+	/**
+	 * Counts the given range of points that the node contains, moving them to the front of
+	 * the range. Like {@link Octree}, points are split by child index before descending, so
+	 * each node is looked up once for all the points inside it, and a full or empty node
+	 * resolves them with one comparison instead of a binary search per point.
+	 *
+	 * @param code			code of the node
+	 * @param level			level of the node
+	 * @param half			half the side length of the node
+	 * @param node_minX
+	 * @param node_minZ
+	 * @param node_minY
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range of <tt>order</tt> inside this node
+	 * @param to			end of the range, exclusive
+	 * @param bounds		scratch space for child ranges, 9 per level below this node
+	 * @return				the number of contained points, now at <tt>order[from]</tt> onward
+	 */
+	protected int testFor(long code, int level, int half, int node_minX, int node_minZ, int node_minY,
+						  int[] xs, int[] zs, int[] ys,
+						  int[] order, int from, int to,
+						  int[] bounds
+						  )
+	{
+		if (from == to)
+			return 0;
+
+		switch (leaves.compare(code, level))
+		{
+			case 1 : return 0;
+			case 2 : return to - from;
+		}
+
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half,
+			offset = level * 9,
+			end = from, i;
+
+		bounds[offset    ] = from;
+		bounds[offset + 8] = to;
+		bounds[offset + 4] = split(ys, midpointY, order, from, to);
+		bounds[offset + 2] = split(zs, midpointZ, order, from, bounds[offset + 4]);
+		bounds[offset + 6] = split(zs, midpointZ, order, bounds[offset + 4], to);
+		for (i = 1; i < 8; i += 2)
+			bounds[offset + i] = split(xs, midpointX, order, bounds[offset + i - 1], bounds[offset + i + 1]);
+
+		for (i = 0; i < 8; i++)
+			end = gather(order, end, bounds[offset + i],
+						 testFor(Leaves.child(code, level, i), level + 1, half >>> 1,
+								 (i & 1) == 0 ? node_minX : midpointX,
+								 (i & 2) == 0 ? node_minZ : midpointZ,
+								 (i & 4) == 0 ? node_minY : midpointY,
+								 xs, zs, ys,
+								 order, bounds[offset + i], bounds[offset + i + 1],
+								 bounds
+								 ));
+		return end - from;
+	}
+
+
+	@Override
+	protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+	{
+		if (min == null)
+			return 0;
+
+		int end = from;
+
+		for (int i = from, point; i < to; i++)
+		{
+			point = order[i];
+			if (xs[point] >= min[0] && xs[point] < max[0] &&
+				zs[point] >= min[1] && zs[point] < max[1] &&
+				ys[point] >= min[2] && ys[point] < max[2]
+				)
+			{
+				order[i] = order[end];
+				order[end++] = point;
+			}
+		}
+
+		return testFor(0L, 0, max[0] - min[0] >>> 1, min[0], min[1], min[2],
+					   xs, zs, ys,
+					   order, from, end,
+					   new int[9 * depth()]
+					   );
+	}
+
+
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		REBUILD																				 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+
+
+	/**
+	 * Appends to <tt>result</tt> the leaves of the given node after setting all selected blocks
+	 * to <tt>value</tt>. Nodes the selection does not change are copied without descending.
+	 *
+	 * @param result		the array to append to
+	 * @param code			code of the node
+	 * @param level			level of the node
+	 * @param minX			min x of the node
+	 * @param minZ			min z of the node
+	 * @param minY			min y of the node
+	 * @param side			side length of the node
+	 * @param selection		the blocks to change
+	 * @param value			<tt>true</tt> to add, <tt>false</tt> to remove
+	 */
+	protected void rebuild(Leaves result, long code, int level,
+						   int minX, int minZ, int minY, int side,
+						   Selection selection, boolean value
+						   )
+	{
+		int existing = leaves.compare(code, level),
+			selected = selection.compare(minX, minZ, minY, minX + side, minZ + side, minY + side);
+
+		if (selected == 1 || existing == (value ? 2 : 1))
+		{
+			result.copy(leaves, code, level);
+			return;
+		}
+		if (selected == 2)
+		{
+			if (value) result.append(code, level);
+			return;
+		}
+
+		side >>>= 1;
+		for (int i = 0; i < 8; i++)
+			rebuild(result, Leaves.child(code, level, i), level + 1,
+					(i & 1) == 0 ? minX : minX + side,
+					(i & 2) == 0 ? minZ : minZ + side,
+					(i & 4) == 0 ? minY : minY + side,
+					side, selection, value
+					);
+	}
+
+
+	/**
+	 * Sets all selected blocks to <tt>value</tt>, replacing {@link #leaves}.
+	 *
+	 * @param selection		the blocks to change
+	 * @param value			<tt>true</tt> to add, <tt>false</tt> to remove
+	 */
+	protected void rebuild(Selection selection, boolean value)
+	{
+		if (min == null) return;
+
+		Leaves result = new Leaves(leaves.size + 8);
+		rebuild(result, 0L, 0, min[0], min[1], min[2], max[0] - min[0], selection, value);
+		leaves = result;
+	}
+
+
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		ADD VOLUME																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+
+
+	@Override
+	protected void expandAsNeeded(int... coords)
+	{
+		expandAsNeeded(new int[] { coords[0], coords[0] + 1 },
+					   new int[] { coords[1], coords[1] + 1 },
+					   new int[] { coords[2], coords[2] + 1 }
+					   );
+	}
+
+
+	/**
+	 * Doubles the side length of the tree, toward the given bounds, until it contains them.
+	 * The old root becomes the child of the new root in the corresponding octant.
+	 */
+	@Override
+	protected void expandAsNeeded(int[]... bounds)
+	{
+		if (min == null)
+		{
+			min = new int[] { bounds[0][0],     bounds[1][0],     bounds[2][0]     };
+			max = new int[] { bounds[0][0] + 1, bounds[1][0] + 1, bounds[2][0] + 1 };
+		}
+
+		while (bounds[0][0] < min[0] || bounds[0][1] > max[0] ||
+			   bounds[1][0] < min[1] || bounds[1][1] > max[1] ||
+			   bounds[2][0] < min[2] || bounds[2][1] > max[2]
+			   )
+		{
+			if (depth() == MAX_DEPTH)
+				throw new IllegalArgumentException("LinearOctree cannot exceed " + MAX_DEPTH + " levels");
+
+			int sideLength = max[0] - min[0],
+				index = 0;
+
+			if (bounds[0][0] < min[0]) { min[0] -= sideLength; index += 1; } else max[0] += sideLength;
+			if (bounds[1][0] < min[1]) { min[1] -= sideLength; index += 2; } else max[1] += sideLength;
+			if (bounds[2][0] < min[2]) { min[2] -= sideLength; index += 4; } else max[2] += sideLength;
+
+			long[] pairs = leaves.pairs;
+			for (int i = 0; i < leaves.size * 2; i += 2)
+			{
+				pairs[i]		= Leaves.child(pairs[i] >>> 3, 0, index);
+				pairs[i + 1]	+= 1;
+			}
+		}
+	}
+
+
+	/**
+	 * Inserts the block's leaf in place. See {@link Leaves#insert(long, int)}.
+	 */
+	@Override
+	public void add(int... coords)
+	{
+		expandAsNeeded(coords);
+
+		leaves.insert(encode(coords[0], coords[1], coords[2]), depth());
+	}
+
+
+	@Override
+	public void add(int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+
+		rebuild(new Box(bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1]), true);
+	}
+
+
+	@Override
+	public void add(BitSet blocks, int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+
+		rebuild(new Bits(blocks, bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1]), true);
+	}
+
+
+	/**
+	 * Adds the blocks selected in a compressed bitmap, classifying each node 
+	 * against the bitmap while rebuilding, without expanding it.
+	 */
+	@Override
+	public void add(Bitmap blocks, int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+
+		rebuild(new Selected(blocks.selection(bounds)), true);
+	}
+
+
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		REMOVE VOLUME																		 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+
+
+	/**
+	 * Halves the side length of the tree while all leaves lie in the same octant of the root.
+	 */
+	@Override
+	public void trimAsNeeded()
+	{
+		int top = 3 * (MAX_DEPTH - 1);
+		long[] pairs = leaves.pairs;
+
+		while (leaves.size > 0 && pairs[1] > 0 &&
+			   pairs[0] >>> top == pairs[(leaves.size - 1) * 2] >>> top
+			   )
+		{
+			int half = max[0] - min[0] >>> 1,
+				index = (int) (pairs[0] >>> top);
+
+			if ((index & 1) == 0) max[0] -= half; else min[0] += half;
+			if ((index & 2) == 0) max[1] -= half; else min[1] += half;
+			if ((index & 4) == 0) max[2] -= half; else min[2] += half;
+
+			for (int i = 0; i < leaves.size * 2; i += 2)
+			{
+				pairs[i]		= pairs[i] << 3 & Long.MAX_VALUE;
+				pairs[i + 1]	-= 1;
+			}
+		}
+	}
+
+
+	/**
+	 * Splits the leaf covering the block in place. See {@link Leaves#delete(long, int)}.
+	 */
+	@Override
+	public void remove(int... coords)
+	{
+		if (min == null ||
+			coords[0] < min[0] || coords[0] >= max[0] ||
+			coords[1] < min[1] || coords[1] >= max[1] ||
+			coords[2] < min[2] || coords[2] >= max[2]
+			)
+			return;
+
+		leaves.delete(encode(coords[0], coords[1], coords[2]), depth());
+
+		trimAsNeeded();
+	}
+
+
+	@Override
+	public void remove(int[]... bounds)
+	{
+		rebuild(new Box(bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1]), false);
+
+		trimAsNeeded();
+	}
+
+
+	@Override
+	public void remove(BitSet blocks, int[]... bounds)
+	{
+		rebuild(new Bits(blocks, bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1]), false);
+
+		trimAsNeeded();
+	}
+
+
+	/**
+	 * Removes the blocks selected in a compressed bitmap. See {@link #add(Bitmap, int[]...)}.
+	 */
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds)
+	{
+		rebuild(new Selected(blocks.selection(bounds)), false);
+
+		trimAsNeeded();
+	}
+}
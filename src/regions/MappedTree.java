@@ -0,0 +1,484 @@
+package regions;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A read-only tree that answers queries directly against a memory-mapped file in the 2-bit
+ * format of {@link Octree} or {@link Quadtree}, without building any {@link Tree.Node Nodes}.<p>
+ *
+ * A descent reads the codes of each partial node on the path, and skips the subtrees of earlier
+ * partial siblings to find the child it needs. Small subtrees are skipped by counting their
+ * partial codes. Subtrees of at least {@link #INDEX_MIN} bytes are skipped in one step through
+ * an index of their start and end offsets, built by one sequential pass when the file is opened.
+ * The index is the only heap the tree uses, about 8 bytes per indexed subtree.<p>
+ *
+ * Edits throw UnsupportedOperationException.
+ */
+public class MappedTree extends Tree
+{
+	/**
+	 * Minimum size in bytes of an indexed subtree.
+	 */
+	public static final int INDEX_MIN = 1024;
+	
+	/**
+	 * Number of partial (00) codes in each byte value.
+	 */
+	protected static final byte[] PARTIALS = new byte[256];
+	static
+	{
+		for (int b = 0; b < 256; b++)
+			for (int shift = 0; shift < 8; shift += 2)
+				if ((b >>> shift & 3) == 0)
+					PARTIALS[b]++;
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		FROM BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Not supported, as a MappedTree does not build nodes.
+	 */
+	@Override
+	public Node parseBytes(DataInputStream input, int parentBits) throws IOException
+	{
+		throw new UnsupportedOperationException("MappedTree does not build nodes");
+	}
+	
+	
+	/**
+	 *
+	 * @param offset		offset of a partial node
+	 * @return				the 2-bit codes of its children, child 0 in the highest bits
+	 */
+	protected int codes(int offset)
+	{
+		return width == 2 ?
+				
+				(buffer.get(offset) & 0xFF) << 8 | buffer.get(offset + 1) & 0xFF :
+				 buffer.get(offset) & 0xFF;
+	}
+	
+	
+	/**
+	 *
+	 * @param offset		offset of a partial node
+	 * @return				the number of its children that are partial
+	 */
+	protected int partials(int offset)
+	{
+		return width == 2 ?
+				
+				PARTIALS[buffer.get(offset) & 0xFF] + PARTIALS[buffer.get(offset + 1) & 0xFF] :
+				PARTIALS[buffer.get(offset) & 0xFF];
+	}
+	
+	
+	/**
+	 * Finds the end of the subtree starting at the given offset, through the index if
+	 * the subtree is indexed, or else by counting partial codes until none are pending.
+	 *
+	 * @param offset		offset of a partial node
+	 * @return				offset of the first byte after its subtree
+	 */
+	protected int skip(int offset)
+	{
+		int found = Arrays.binarySearch(starts, offset);
+		if (found >= 0)
+			return ends[found];
+		
+		int pending = 1;
+		while (pending > 0)
+		{
+			if (offset + width > limit)
+				return limit;
+			
+			pending += partials(offset) - 1;
+			offset 	+= width;
+		}
+		return offset;
+	}
+	
+	
+	/**
+	 * Builds {@link #starts} and {@link #ends} with one pass over the file, using an explicit
+	 * stack of the start offset and pending partial children of each open subtree.
+	 */
+	protected void index()
+	{
+		long[] 	records 		= new long[16];
+		int[] 	stackStart 		= new int[32],
+				stackPending 	= new int[32];
+		
+		int count = 0, depth = 0, offset = 0;
+		
+		if (limit >= width)
+		{
+			stackPending[0] = partials(0);
+			offset = width;
+		}
+		else depth = -1;
+		
+		while (depth >= 0)
+		{
+			if (stackPending[depth] == 0)
+			{
+				if (depth > 0 && offset - stackStart[depth] >= INDEX_MIN)
+				{
+					if (count == records.length)
+						records = Arrays.copyOf(records, count << 1);
+					
+					records[count++] = (long) stackStart[depth] << 32 | offset;
+				}
+				depth--;
+				continue;
+			}
+			stackPending[depth]--;
+			
+			if (offset + width > limit)
+				break;
+			
+			if (++depth == stackStart.length)
+			{
+				stackStart 	 = Arrays.copyOf(stackStart, depth << 1);
+				stackPending = Arrays.copyOf(stackPending, depth << 1);
+			}
+			stackStart[depth] 	= offset;
+			stackPending[depth] = partials(offset);
+			offset += width;
+		}
+		
+		Arrays.sort(records, 0, count);
+		
+		starts 	= new int[count];
+		ends 	= new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			starts[i] 	= (int) (records[i] >>> 32);
+			ends[i] 	= (int) records[i];
+		}
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		TO BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Copies the mapped bytes. The given node is ignored.
+	 */
+	@Override
+	public void writeBytes(Node node, OutputStream output) throws IOException
+	{
+		byte[] bytes = new byte[limit];
+		buffer.duplicate().get(bytes);
+		output.write(bytes);
+	}
+
+
+	/**
+	 * The format of the mapped file, so that saves write a {@link Header} with its bounds.
+	 */
+	@Override
+	protected int branches()
+	{
+		return branches;
+	}
+
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONSTRUCTORS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	protected final ByteBuffer 	buffer;
+	protected final int 		limit;
+	protected final int 		branches;
+	protected final int 		width;
+	
+	/**
+	 * Start and end offsets of indexed subtrees, sorted by start.
+	 */
+	protected int[] starts, ends;
+	
+	
+	/**
+	 * Maps the given file, written by an Octree (8 branches) or Quadtree (4 branches).
+	 *
+	 * @param file			the source file
+	 * @param branches		8 for the Octree format, 4 for the Quadtree format
+	 * @throws 				IOException
+	 */
+	public MappedTree(File file, int branches) throws IOException
+	{
+		super(file, new Node(false));
+		
+		if (branches != 8 && branches != 4)
+			throw new IllegalArgumentException("MappedTree branches must be 8 or 4: " + branches);
+		
+		ByteBuffer mapped;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("MappedTree cannot map more than 2 GB: " + file);
+			
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			channel.close();
+		}
+		if (Header.isHeader(mapped))
+		{
+			Header header = Header.read(mapped, branches == 8 ? 3 : 2);
+			if (header.min != null)
+			{
+				this.min = header.min;
+				this.max = header.max;
+			}
+			mapped = mapped.slice();	//	offsets start at the payload
+		}
+		if (RangeCoder.isCompressed(mapped))
+			throw new IOException("MappedTree cannot query a compressed file: " + file);
+		
+		this.buffer 	= mapped;
+		this.limit 		= buffer.limit();
+		this.branches 	= branches;
+		this.width 		= branches >>> 2;
+		
+		index();
+	}
+	
+	
+	/**
+	 * Maps the given file, with the given bounds.
+	 *
+	 * @param file			the source file
+	 * @param branches		8 for the Octree format, 4 for the Quadtree format
+	 * @param min			min corner of the tree
+	 * @param max			max corner of the tree, exclusive
+	 * @throws 				IOException
+	 */
+	public MappedTree(File file, int branches, int[] min, int[] max) throws IOException
+	{
+		this(file, branches);
+		
+		this.min = min.clone();
+		this.max = max.clone();
+	}
+	
+	
+	/**
+	 * Number of indexed subtrees.
+	 */
+	public int indexSize()
+	{
+		return starts.length;
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		TEST FOR POINT(S)																	 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	@Override
+	public boolean testFor(int... coords)
+	{
+		return coords.length == 2 ? testFor(coords[0], coords[1]) : testFor(coords[0], coords[1], coords[2]);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		if (branches == 4)
+			return testFor(x, z);
+		
+		if (min == null || limit < width ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1] ||
+			y < min[2] || y >= max[2]
+			)
+			return false;
+		
+		int half = max[0] - min[0] >>> 1,
+			minX = min[0],
+			minZ = min[1],
+			minY = min[2],
+			offset = 0,
+			index, codes;
+		
+		while (half > 0)
+		{
+			index = 0;
+			if (minX + half <= x) { minX += half; index += 1; }
+			if (minZ + half <= z) { minZ += half; index += 2; }
+			if (minY + half <= y) { minY += half; index += 4; }
+			
+			switch ((codes = codes(offset)) >>> (7 - index) * 2 & 3)
+			{
+				case 2 : return true;
+				case 1 : return false;
+			}
+			offset = child(offset, codes, index);
+			
+			if (offset + width > limit)
+				return false;
+			half >>>= 1;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Finds the given partial child by skipping the subtrees of its earlier partial siblings.
+	 *
+	 * @param offset		offset of a partial node
+	 * @param codes			the codes of its children
+	 * @param index			index of a partial child
+	 * @return				offset of the child
+	 */
+	protected int child(int offset, int codes, int index)
+	{
+		offset += width;
+		for (int i = 0; i < index; i++)
+			if ((codes >>> (branches - 1 - i) * 2 & 3) == 0)
+				offset = skip(offset);
+		return offset;
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null || limit < width ||
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1]
+			)
+			return false;
+		
+		return testFor(0, max[0] - min[0] >>> 1, min[0], min[1], x, z);
+	}
+	
+	
+	/**
+	 * Tests the column at x, z within the given partial node. Quadtree nodes have one child
+	 * on the column, Octree nodes have two, one above the other.
+	 *
+	 * @param offset		offset of a partial node
+	 * @param half			half the side length of the node
+	 * @param node_minX		min x of the node
+	 * @param node_minZ		min z of the node
+	 * @param x				the column's x
+	 * @param z				the column's z
+	 */
+	protected boolean testFor(int offset, int half, int node_minX, int node_minZ, int x, int z)
+	{
+		if (half == 0 || offset + width > limit)
+			return false;
+		
+		int index = 0, codes = codes(offset), child;
+		if (node_minX + half <= x) { node_minX += half; index += 1; }
+		if (node_minZ + half <= z) { node_minZ += half; index += 2; }
+		
+		for (; index < branches; index += 4)
+		{
+			switch (codes >>> (branches - 1 - index) * 2 & 3)
+			{
+				case 2 : return true;
+				case 1 : continue;
+			}
+			child = child(offset, codes, index);
+			
+			if (testFor(child, half >>> 1, node_minX, node_minZ, x, z))
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		EDITS																				 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	@Override
+	protected void expandAsNeeded(int... coords) 			{ throw readOnly(); }
+	
+	@Override
+	protected void expandAsNeeded(int[]... bounds) 			{ throw readOnly(); }
+	
+	@Override
+	public void add(int... coords) 							{ throw readOnly(); }
+	
+	@Override
+	public void add(int[]... bounds) 						{ throw readOnly(); }
+	
+	@Override
+	public void add(BitSet blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void add(Bitmap blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void add(Columns columns) 						{ throw readOnly(); }
+	
+	@Override
+	public void add(Shape shape) 							{ throw readOnly(); }
+	
+	@Override
+	public void trimAsNeeded() 								{ throw readOnly(); }
+	
+	@Override
+	public void remove(int... coords) 						{ throw readOnly(); }
+	
+	@Override
+	public void remove(int[]... bounds) 					{ throw readOnly(); }
+	
+	@Override
+	public void remove(BitSet blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds) 		{ throw readOnly(); }
+	
+	@Override
+	public void remove(Columns columns) 					{ throw readOnly(); }
+	
+	@Override
+	public void remove(Shape shape) 						{ throw readOnly(); }
+	
+	
+	protected static UnsupportedOperationException readOnly()
+	{
+		return new UnsupportedOperationException("MappedTree is read-only");
+	}
+}
@@ -4,7 +4,11 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class Octree extends Tree
 {
@@ -38,6 +42,62 @@ public class Octree extends Tree
 						  );
 	}
 	
+	
+	/**
+	 * Parses with {@link Tree#parseBytes(ByteBuffer, int)}, without recursion.
+	 */
+	@Override
+	public Node parseBytes(ByteBuffer buffer)
+	{
+		return parseBytes(buffer, 8);
+	}
+	
+	
+	@Override
+	protected int branches()
+	{
+		return 8;
+	}
+	
+	
+	/**
+	 * Reads the given cube of a brick as if it were a node with children.
+	 * Inverse of {@link #writeBytes(long[], int, int, int, int, int, OutputStream)}.
+	 *
+	 * @param input			DataInputStream of source bytes
+	 * @param bits			the brick, cleared inside the cube
+	 * @param side			side length of the brick
+	 * @param x				min x of the cube, relative to the brick
+	 * @param z				min z of the cube, relative to the brick
+	 * @param y				min y of the cube, relative to the brick
+	 * @param size			side length of the cube
+	 * @throws				IOException
+	 */
+	protected static void parseBytes(DataInputStream input, long[] bits, int side, int x, int z, int y, int size)
+			throws IOException
+	{
+		int a = input.read(),	//returns -1 if there are no more bytes
+			b = input.read();
+		
+		if (a == -1 || b == -1) return;
+		
+		int half = size >>> 1, childX, childZ, childY;
+		for (int i = 0; i < 8; i++)
+		{
+			childX = x + (i & 1) * half;
+			childZ = z + (i >>> 1 & 1) * half;
+			childY = y + (i >>> 2) * half;
+			
+			switch ((i < 4 ? a : b) >>> 6 - (i & 3) * 2 & 3)
+			{
+				case 0 : parseBytes(input, bits, side, childX, childZ, childY, half);
+						 break;
+				case 2 : fill(bits, side, childX, childZ, childY, childX + half, childZ + half, childY + half, true);
+						 break;
+			}
+		}
+	}
+	
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
 		TO BYTES
@@ -47,6 +107,21 @@ public class Octree extends Tree
 	@Override
 	public void writeBytes(Node node, OutputStream output) throws IOException
 	{
+		if (node.bits != null)
+		{
+			writeBytes(node.bits, sideOf(node.bits), 0, 0, 0, sideOf(node.bits), output);
+			return;
+		}
+		if (node.children == null)		//	a full root is written as eight full children
+		{
+			if (node.full)
+			{
+				output.write(0b10101010);
+				output.write(0b10101010);
+			}
+			return;
+		}
+		
 		output.write(	getByte( node.children[0],
 								 node.children[1],
 								 node.children[2],
@@ -60,10 +135,40 @@ public class Octree extends Tree
 								 ));
 		
 		for (Node child : node.children) 
-			if (child.children != null)
+			if (child.children != null || child.bits != null)
 				writeBytes(child, output);
 	}
 	
+	
+	/**
+	 * Writes the given cube of a brick as if it were a node with children. 
+	 * Bricks are therefore saved in the same format as any other node.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				min x of the cube, relative to the brick
+	 * @param z				min z of the cube, relative to the brick
+	 * @param y				min y of the cube, relative to the brick
+	 * @param size			side length of the cube
+	 * @param output		the OutputStream to write to
+	 * @throws				IOException
+	 */
+	protected static void writeBytes(long[] bits, int side, int x, int z, int y, int size, OutputStream output) 
+			throws IOException
+	{
+		int half = size >>> 1, a = 0, b = 0, i;
+		
+		for (i = 0; i < 4; i++) a = a << 2 | compareBits(bits, side, x + (i & 1) * half, z + (i >>> 1 & 1) * half, y, half);
+		for (i = 4; i < 8; i++) b = b << 2 | compareBits(bits, side, x + (i & 1) * half, z + (i >>> 1 & 1) * half, y + half, half);
+		
+		output.write(a);
+		output.write(b);
+		
+		for (i = 0; i < 8; i++)
+			if (compareBits(bits, side, x + (i & 1) * half, z + (i >>> 1 & 1) * half, y + (i >>> 2) * half, half) == 0)
+				writeBytes(bits, side, x + (i & 1) * half, z + (i >>> 1 & 1) * half, y + (i >>> 2) * half, half, output);
+	}
+	
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
 		CONSTRUCTORS
@@ -75,6 +180,501 @@ public class Octree extends Tree
 		super(file);
 	}
 	
+	/**
+	 * Builds a tree of the given selection. See {@link Tree#Tree(File, BitSet, int[][])}.
+	 * 
+	 * @param file			The source file, and save destination, for this tree
+	 * @param blocks		BitSet representing all <tt>true</tt> points in the given volume
+	 * @param bounds		Min and max coordinates of the bounding box
+	 */
+	public Octree(File file, BitSet blocks, int[][] bounds)
+	{
+		super(file, blocks, bounds);
+	}
+	
+	/**
+	 * A copy of the given tree, with the same bounds and brick side. Shares the tree's nodes, 
+	 * so that it costs one node, and edits to either tree copy the nodes they change.
+	 * 
+	 * @param file			The source file, and save destination, for the copy
+	 * @param tree			the tree to copy
+	 */
+	public Octree(File file, Octree tree)
+	{
+		super(file, share(tree.root));
+		
+		this.min 		= tree.min == null ? null : tree.min.clone();
+		this.max 		= tree.max == null ? null : tree.max.clone();
+		this.brickSide 	= tree.brickSide;
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		BRICKS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	/**
+	 * Side length of nodes stored as bricks, or 0 if bricks are not used.
+	 */
+	protected int brickSide = 0;
+	
+	public int getBrickSide() { return brickSide; }
+	
+	
+	/**
+	 * Stores every partial node of the given side length as a brick: a bitmap of its blocks, 
+	 * indexed <tt>x + z * side + y * side * side</tt>, in place of its subtree. A brick of side 8 
+	 * is a <tt>long[8]</tt> replacing up to 585 nodes. Testing, editing and saving treat bricks 
+	 * as terminal nodes, and a brick that becomes uniform is replaced by a full or empty leaf.<p>
+	 * 
+	 * Converts the existing tree, first expanding any bricks of a previous side length.
+	 * 
+	 * @param side			4, 8, or 16, or 0 to stop using bricks
+	 */
+	public void setBrickSide(int side)
+	{
+		if (side != 0 && side != 4 && side != 8 && side != 16)
+			throw new IllegalArgumentException("Brick side must be 0, 4, 8, or 16: " + side);
+		
+		if (brickSide != 0)
+			expandBricks(root);
+		
+		brickSide = side;
+		
+		if (brickSide != 0 && min != null)
+			makeBricks(root, max[0] - min[0]);
+	}
+	
+	
+	/**
+	 * Replaces every partial node of side {@link #brickSide} below the given node with a brick.
+	 * 
+	 * @param node			the node to convert
+	 * @param side			side length of the node
+	 */
+	protected void makeBricks(Node node, int side)
+	{
+		if (node.children == null)
+			return;
+		
+		if (side == brickSide)
+		{
+			brick(node, side);
+			normalize(node, side);
+			return;
+		}
+		for (int i = 0; i < 8; i++)
+			makeBricks(writable(node, i), side >>> 1);
+	}
+	
+	
+	/**
+	 * Replaces every brick at or below the given node with the equivalent subtree.
+	 * 
+	 * @param node			the node to convert
+	 */
+	protected static void expandBricks(Node node)
+	{
+		if (node.bits != null)
+		{
+			int side = sideOf(node.bits);
+			Node expanded = fromBits(node.bits, side, 0, 0, 0, side);
+			
+			node.full 		= expanded.full;
+			node.children 	= expanded.children;
+			node.bits 		= null;
+		}
+		else if (node.children != null)
+			for (int i = 0; i < 8; i++)
+				expandBricks(writable(node, i));
+	}
+	
+	
+	/**
+	 * Whether edits to the given node should be made to its bits, because it is a brick 
+	 * or is partial at the side length stored as bricks.
+	 * 
+	 * @param node			the node to edit
+	 * @param side			side length of the node
+	 */
+	protected boolean isBrick(Node node, int side)
+	{
+		return node.bits != null || side == brickSide && side != 0;
+	}
+	
+	
+	/**
+	 * Side length of a brick, from the length of its bit array.
+	 * 
+	 * @param bits			the brick
+	 */
+	protected static int sideOf(long[] bits)
+	{
+		return 1 << Integer.numberOfTrailingZeros(bits.length << 6) / 3;
+	}
+	
+	
+	/**
+	 * Converts the node to a brick, if it is not one already, and returns its bits.
+	 * 
+	 * @param node			the node to convert
+	 * @param side			side length of the node
+	 */
+	protected static long[] brick(Node node, int side)
+	{
+		if (node.bits == null)
+		{
+			long[] bits = new long[Math.max(side * side * side >>> 6, 1)];
+			toBits(node, bits, side, 0, 0, 0, side);
+			
+			node.full 		= false;
+			node.children 	= null;
+			node.bits 		= bits;
+		}
+		return node.bits;
+	}
+	
+	
+	/**
+	 * Replaces a brick with a full or empty leaf if all of its bits are equal.
+	 * 
+	 * @param node			the brick
+	 * @param side			side length of the brick
+	 */
+	protected static void normalize(Node node, int side)
+	{
+		switch (compareBits(node.bits, side, 0, 0, 0, side))
+		{
+			case 1 : node.bits = null; 					 break;
+			case 2 : node.bits = null; node.full = true; break;
+		}
+	}
+	
+	
+	/**
+	 * Sets the bits of a brick covered by the given subtree.
+	 * 
+	 * @param node			the subtree to copy
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				min x of the subtree, relative to the brick
+	 * @param z				min z of the subtree, relative to the brick
+	 * @param y				min y of the subtree, relative to the brick
+	 * @param size			side length of the subtree
+	 */
+	protected static void toBits(Node node, long[] bits, int side, int x, int z, int y, int size)
+	{
+		if (node.full)
+			fill(bits, side, x, z, y, x + size, z + size, y + size, true);
+		
+		else if (node.bits != null)
+		{
+			if (size == side)
+				System.arraycopy(node.bits, 0, bits, 0, bits.length);
+			else 											//	a smaller brick, from a tree with another brick side
+				for (int yy = 0; yy < size; yy++) for (int zz = 0; zz < size; zz++) for (int xx = 0; xx < size; xx++)
+					if (getBit(node.bits, size, xx, zz, yy))
+						setBit(bits, side, x + xx, z + zz, y + yy, true);
+		}
+		else if (node.children != null)
+		{
+			size >>>= 1;
+			for (int i = 0; i < 8; i++)
+				toBits(node.children[i], bits, side,
+					   x + (i & 1) * size, z + (i >>> 1 & 1) * size, y + (i >>> 2) * size, 
+					   size
+					   );
+		}
+	}
+	
+	
+	/**
+	 * Builds the subtree equivalent to the given cube of a brick.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				min x of the cube, relative to the brick
+	 * @param z				min z of the cube, relative to the brick
+	 * @param y				min y of the cube, relative to the brick
+	 * @param size			side length of the cube
+	 */
+	protected static Node fromBits(long[] bits, int side, int x, int z, int y, int size)
+	{
+		switch (compareBits(bits, side, x, z, y, size))
+		{
+			case 1 : return new Node(false);
+			case 2 : return new Node(true);
+		}
+		size >>>= 1;
+		
+		return new Node( fromBits(bits, side, x, 		z, 		  y, 		size),
+						 fromBits(bits, side, x + size, z, 		  y, 		size),
+						 fromBits(bits, side, x, 		z + size, y, 		size),
+						 fromBits(bits, side, x + size, z + size, y, 		size),
+						 fromBits(bits, side, x, 		z, 		  y + size, size),
+						 fromBits(bits, side, x + size, z, 		  y + size, size),
+						 fromBits(bits, side, x, 		z + size, y + size, size),
+						 fromBits(bits, side, x + size, z + size, y + size, size)
+						 );
+	}
+	
+	
+	/**
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				relative to the brick
+	 * @param z				relative to the brick
+	 * @param y				relative to the brick
+	 * @return				the bit for the given block
+	 */
+	protected static boolean getBit(long[] bits, int side, int x, int z, int y)
+	{
+		int index = (y * side + z) * side + x;
+		
+		return (bits[index >>> 6] >>> index & 1) != 0;
+	}
+	
+	
+	/**
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				relative to the brick
+	 * @param z				relative to the brick
+	 * @param y				relative to the brick
+	 * @param value			the new bit for the given block
+	 */
+	protected static void setBit(long[] bits, int side, int x, int z, int y, boolean value)
+	{
+		int index = (y * side + z) * side + x;
+		
+		if (value) 	bits[index >>> 6] |=   1L << index;
+		else 		bits[index >>> 6] &= ~(1L << index);
+	}
+	
+	
+	/**
+	 * Sets all bits of a brick inside the given box. Each row of a brick lies within 
+	 * one word, so each row takes one masked write.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param minX			relative to the brick
+	 * @param minZ			relative to the brick
+	 * @param minY			relative to the brick
+	 * @param maxX			relative to the brick, exclusive
+	 * @param maxZ			relative to the brick, exclusive
+	 * @param maxY			relative to the brick, exclusive
+	 * @param value			the new bit for each block
+	 */
+	protected static void fill(long[] bits, int side, 
+							   int minX, int minZ, int minY, int maxX, int maxZ, int maxY, 
+							   boolean value
+							   )
+	{
+		if (minX >= maxX) return;
+		
+		long mask = (1L << maxX - minX) - 1;
+		int index;
+		for (int y = minY; y < maxY; y++) for (int z = minZ; z < maxZ; z++)
+		{
+			index = (y * side + z) * side + minX;
+			
+			if (value) 	bits[index >>> 6] |=   mask << index;
+			else 		bits[index >>> 6] &= ~(mask << index);
+		}
+	}
+	
+	
+	/**
+	 * Sets the bits of a brick for each block selected.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param node_minX		min x of the brick
+	 * @param node_minZ		min z of the brick
+	 * @param node_minY		min y of the brick
+	 * @param sel_minX
+	 * @param sel_minZ
+	 * @param sel_minY
+	 * @param sel_maxX
+	 * @param sel_maxZ
+	 * @param sel_maxY
+	 * @param blocks		the selected blocks
+	 * @param value			the new bit for each selected block
+	 */
+	protected static void setBits(long[] bits, int side, int node_minX, int node_minZ, int node_minY,
+								  int sel_minX, int sel_minZ, int sel_minY, int sel_maxX, int sel_maxZ, int sel_maxY,
+								  Selection3D blocks, boolean value
+								  )
+	{
+		int minX = Math.max(node_minX, sel_minX), maxX = Math.min(node_minX + side, sel_maxX),
+			minZ = Math.max(node_minZ, sel_minZ), maxZ = Math.min(node_minZ + side, sel_maxZ),
+			minY = Math.max(node_minY, sel_minY), maxY = Math.min(node_minY + side, sel_maxY),
+			x, z, y;
+		
+		if (minX >= maxX || minZ >= maxZ || minY >= maxY)
+			return;
+		
+		if (blocks instanceof Columns)
+		{
+			setBits(bits, side, node_minX, node_minZ, node_minY, 
+					minX, minZ, minY, maxX, maxZ, maxY, 
+					(Columns) blocks, value
+					);
+			return;
+		}
+		
+		for (y = minY; y < maxY; y++)							//	whole layers, then whole rows, as words
+			switch (blocks.compareRegion(minX, minZ, y, maxX, maxZ, y + 1))
+			{
+				case 1 : break;
+				case 2 : fill(bits, side, 
+							  minX - node_minX, minZ - node_minZ, y - node_minY, 
+							  maxX - node_minX, maxZ - node_minZ, y - node_minY + 1, 
+							  value
+							  );
+						 break;
+				default: for (z = minZ; z < maxZ; z++)
+							 switch (blocks.compareRegion(minX, z, y, maxX, z + 1, y + 1))
+							 {
+								 case 1 : break;
+								 case 2 : fill(bits, side, 
+											   minX - node_minX, z - node_minZ, y - node_minY, 
+											   maxX - node_minX, z - node_minZ + 1, y - node_minY + 1, 
+											   value
+											   );
+										  break;
+								 default: for (x = minX; x < maxX; x++)
+											  if (blocks.get(x, z, y))
+												  setBit(bits, side, x - node_minX, z - node_minZ, y - node_minY, value);
+							 }
+			}
+	}
+	
+	
+	/**
+	 * Sets the bits of a brick for each block in the runs of the columns, a layer of words at
+	 * a time. Each run toggles its column's bit in the layer where it starts and the layer 
+	 * where it ends, and a sweep up the brick carries the toggled bits from layer to layer, 
+	 * so the brick costs its runs and its layers rather than its volume.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param node_minX		min x of the brick
+	 * @param node_minZ		min z of the brick
+	 * @param node_minY		min y of the brick
+	 * @param minX			min x of the blocks to set, within the brick and the columns
+	 * @param minZ
+	 * @param minY
+	 * @param maxX
+	 * @param maxZ
+	 * @param maxY
+	 * @param columns		the selected runs
+	 * @param value			the new bit for each selected block
+	 */
+	protected static void setBits(long[] bits, int side, int node_minX, int node_minZ, int node_minY,
+								  int minX, int minZ, int minY, int maxX, int maxZ, int maxY,
+								  Columns columns, boolean value
+								  )
+	{
+		int 	words 	= Math.max(side * side >>> 6, 1),
+				from, to, bit, r, x, z, y, w, i;
+		long[] 	toggles = new long[(side + 1) * words],
+				layer 	= new long[words];
+		
+		for (z = minZ; z < maxZ; z++)
+			for (x = minX, i = columns.column(x, z); x < maxX; x++, i++)
+				for (r = columns.offsets[i]; r < columns.offsets[i + 1]; r += 2)
+				{
+					from = Math.max(columns.ys[r], 	 minY);
+					to 	 = Math.min(columns.ys[r + 1], maxY);
+					if (from >= to)
+						continue;
+					
+					bit = (z - node_minZ) * side + x - node_minX;
+					toggles[(from - node_minY) * words + (bit >>> 6)] ^= 1L << bit;
+					toggles[(to   - node_minY) * words + (bit >>> 6)] ^= 1L << bit;
+				}
+		
+		long mask;
+		for (y = 0; y < side; y++)
+		{
+			bit = y * side * side;								//	first bit of the layer
+			for (w = 0; w < words; w++)
+			{
+				layer[w] ^= toggles[y * words + w];
+				mask 	  = layer[w] << bit;					//	a layer of side 4 is a quarter word
+				
+				if (value) 	bits[(bit >>> 6) + w] |=  mask;
+				else 		bits[(bit >>> 6) + w] &= ~mask;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Compares the bits of a brick inside the given cube.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param x				min x of the cube, relative to the brick
+	 * @param z				min z of the cube, relative to the brick
+	 * @param y				min y of the cube, relative to the brick
+	 * @param size			side length of the cube
+	 * @return				2 (all set), 1 (none set), or 0 (some set)
+	 */
+	protected static int compareBits(long[] bits, int side, int x, int z, int y, int size)
+	{
+		long mask = (1L << size) - 1, row;
+		boolean any = false, all = true;
+		int index;
+		for (int yy = y; yy < y + size; yy++) for (int zz = z; zz < z + size; zz++)
+		{
+			index = (yy * side + zz) * side + x;
+			row	  = bits[index >>> 6] >>> index & mask;
+			any  |= row != 0;
+			all  &= row == mask;
+			if (any && !all) 
+				return 0;
+		}
+		return all ? 2 : 1;
+	}
+	
+	
+	/**
+	 * Compares the bits of a brick inside the given box.
+	 * 
+	 * @param bits			the brick
+	 * @param side			side length of the brick
+	 * @param minX			relative to the brick
+	 * @param minZ			relative to the brick
+	 * @param minY			relative to the brick
+	 * @param maxX			relative to the brick, exclusive
+	 * @param maxZ			relative to the brick, exclusive
+	 * @param maxY			relative to the brick, exclusive
+	 * @return				2 (all set), 1 (none set), or 0 (some set)
+	 */
+	protected static int compareBits(long[] bits, int side, int minX, int minZ, int minY, int maxX, int maxZ, int maxY)
+	{
+		long mask = (1L << maxX - minX) - 1, row;
+		boolean any = false, all = true;
+		int index;
+		for (int y = minY; y < maxY; y++) for (int z = minZ; z < maxZ; z++)
+		{
+			index = (y * side + z) * side + minX;
+			row	  = bits[index >>> 6] >>> index & mask;
+			any  |= row != 0;
+			all  &= row == mask;
+			if (any && !all) 
+				return 0;
+		}
+		return all ? 2 : 1;
+	}
+	
 	
 	/*
 	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
@@ -89,9 +689,17 @@ public class Octree extends Tree
 	@Override
 	public boolean testFor(int... coords)
 	{
-		if (coords[0] < min[0] || coords[0] >= max[0] ||
-			coords[1] < min[1] || coords[1] >= max[1] ||
-			coords[2] < min[2] || coords[2] >= max[2]
+		return testFor(coords[0], coords[1], coords[2]);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		if (min == null || 
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1] ||
+			y < min[2] || y >= max[2]
 			)
 			return false;
 		
@@ -105,21 +713,23 @@ public class Octree extends Tree
 		while (true)
 		{
 			if (node.full) return true;
+			else if (node.bits != null)
+				return getBit(node.bits, half << 1, x - minX, z - minZ, y - minY);
 			else if (node.children == null) 
 				return false;
 			
 			index = 0;
-			if (minX + half <= coords[0])
+			if (minX + half <= x)
 			{
 				minX += half;
 				index += 1;
 			}
-			if (minZ + half <= coords[1])
+			if (minZ + half <= z)
 			{
 				minZ += half;
 				index += 2;
 			}
-			if (minY + half <= coords[2])
+			if (minY + half <= y)
 			{
 				minY += half;
 				index += 4;
@@ -130,6 +740,165 @@ public class Octree extends Tree
 	}
 	
 	
+	/**
+	 * 
+	 * @param node
+	 * @param half
+	 * @param node_minX
+	 * @param node_minZ
+	 * @param x
+	 * @param z
+	 * @return				whether the node contains any block in the column at x, z
+	 */
+	protected static boolean testFor(Node node, int half, int node_minX, int node_minZ, int x, int z)
+	{
+		if (node.full) return true;
+		else if (node.bits != null)
+		{
+			for (int y = 0; y < half << 1; y++)
+				if (getBit(node.bits, half << 1, x - node_minX, z - node_minZ, y))
+					return true;
+			return false;
+		}
+		else if (node.children == null) 
+			return false;
+		
+		int index = 0;
+		if (node_minX + half <= x)
+		{
+			node_minX += half;
+			index += 1;
+		}
+		if (node_minZ + half <= z)
+		{
+			node_minZ += half;
+			index += 2;
+		}
+		half >>>= 1;
+		
+		return 	testFor(node.children[index	   ], half, node_minX, node_minZ, x, z) ||
+				testFor(node.children[index + 4], half, node_minX, node_minZ, x, z);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null || 
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1]
+			)
+			return false;
+		
+		return testFor(root, max[0] - min[0] >>> 1, min[0], min[1], x, z);
+	}
+	
+	
+	/**
+	 * Counts the given range of points that the node contains, moving them to the front of 
+	 * the range. Points are split by child index before descending, which leaves each child's 
+	 * points in a contiguous range and, over the whole descent, sorts them in Morton order. 
+	 * Each node is therefore visited once for all the points inside it, and full or empty 
+	 * nodes resolve them all at once.
+	 * 
+	 * @param node
+	 * @param half
+	 * @param node_minX
+	 * @param node_minZ
+	 * @param node_minY
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range of <tt>order</tt> inside this node
+	 * @param to			end of the range, exclusive
+	 * @param bounds		scratch space for child ranges, 9 per level below this node
+	 * @param offset		start of this node's child ranges in <tt>bounds</tt>
+	 * @return				the number of contained points, now at <tt>order[from]</tt> onward
+	 */
+	protected static int testFor(Node node, int half, int node_minX, int node_minZ, int node_minY,
+								 int[] xs, int[] zs, int[] ys,
+								 int[] order, int from, int to, 
+								 int[] bounds, int offset
+								 )
+	{
+		if (from == to || isEmpty(node)) 
+			return 0;
+		
+		if (node.full)
+			return to - from;
+		
+		int end = from, point, i;
+		
+		if (node.bits != null)
+		{
+			for (i = from; i < to; i++)
+			{
+				point = order[i];
+				if (getBit(node.bits, half << 1, xs[point] - node_minX, zs[point] - node_minZ, ys[point] - node_minY))
+				{
+					order[i] = order[end];
+					order[end++] = point;
+				}
+			}
+			return end - from;
+		}
+		
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half;
+		
+		bounds[offset    ] = from;
+		bounds[offset + 8] = to;
+		bounds[offset + 4] = split(ys, midpointY, order, from, to);
+		bounds[offset + 2] = split(zs, midpointZ, order, from, bounds[offset + 4]);
+		bounds[offset + 6] = split(zs, midpointZ, order, bounds[offset + 4], to);
+		for (i = 1; i < 8; i += 2)
+			bounds[offset + i] = split(xs, midpointX, order, bounds[offset + i - 1], bounds[offset + i + 1]);
+		
+		for (i = 0; i < 8; i++)
+			end = gather(order, end, bounds[offset + i],
+						 testFor(node.children[i], half >>> 1,
+								 (i & 1) == 0 ? node_minX : midpointX,
+								 (i & 2) == 0 ? node_minZ : midpointZ,
+								 (i & 4) == 0 ? node_minY : midpointY,
+								 xs, zs, ys,
+								 order, bounds[offset + i], bounds[offset + i + 1],
+								 bounds, offset + 9
+								 ));
+		return end - from;
+	}
+	
+	
+	@Override
+	protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+	{
+		if (min == null) 
+			return 0;
+		
+		int end = from;
+		
+		for (int i = from, point; i < to; i++)
+		{
+			point = order[i];
+			if (xs[point] >= min[0] && xs[point] < max[0] &&
+				zs[point] >= min[1] && zs[point] < max[1] &&
+				ys[point] >= min[2] && ys[point] < max[2]
+				)
+			{
+				order[i] = order[end];
+				order[end++] = point;
+			}
+		}
+		
+		return testFor(root, max[0] - min[0] >>> 1, min[0], min[1], min[2],
+					   xs, zs, ys,
+					   order, from, end,
+					   new int[9 * Integer.numberOfTrailingZeros(max[0] - min[0])], 0
+					   );
+	}
+
+
 	/*
 	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
 	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
@@ -145,6 +914,10 @@ public class Octree extends Tree
 	------------------------------------------------------------------------------
 	----------------------------------------------------------------------------*/
 	/**
+	 * Grows the tree by whole multiples of its side length, keeping the old root as one node 
+	 * of the new tree. Each argument is the distance to grow on one side, as a fraction of the 
+	 * current side length, rounded up. A full root or a brick root is kept as it is, and an 
+	 * empty root stays empty.
 	 * 
 	 * @param xMinPercent
 	 * @param zMinPercent
@@ -164,10 +937,11 @@ public class Octree extends Tree
 			zMax = (int) Math.ceil(zMaxPercent),
 			yMax = (int) Math.ceil(yMaxPercent),
 			
-			size = nextPowerOfTwo(xMin + xMax + 1, 
-								  zMin + zMax + 1, 
-								  yMin + yMax + 1
-								  ),
+			cells = Math.max(xMin + xMax + 1, 
+						Math.max(zMin + zMax + 1, 
+								 yMin + yMax + 1
+								 )),
+			size  = Integer.highestOneBit(cells - 1) << 1,
 		
 			xMargin = size - (xMin + xMax + 1),
 			zMargin = size - (zMin + zMax + 1),
@@ -194,6 +968,14 @@ public class Octree extends Tree
 		max[1] += (sideLength * zMax);
 		max[2] += (sideLength * yMax);}
 		
+		if (!root.full && root.children == null && root.bits == null)
+			return;
+		
+		Node oldRoot 	 = new Node(root.full);
+		oldRoot.children = root.children;
+		oldRoot.bits 	 = root.bits;
+		oldRoot.shared 	 = root.shared;
+		
 		int index;
 		Node[] children;
 		Node[] newRootChildren = children = Node.emptyNodeArray(8);
@@ -204,24 +986,18 @@ public class Octree extends Tree
 			index = 0;
 			
 			if (xMin >= size)
-				xMin -= size;
-			else
 			{
-				xMax -= size;
+				xMin -= size;
 				index += 1;
 			}
 			if (zMin >= size)
-				zMin -= size;
-			else
 			{
-				zMax -= size;
+				zMin -= size;
 				index += 2;
 			}
 			if (yMin >= size)
-				yMin -= size;
-			else
 			{
-				yMax -= size;
+				yMin -= size;
 				index += 4;
 			}
 			
@@ -229,11 +1005,14 @@ public class Octree extends Tree
 				children[index].children = children = Node.emptyNodeArray(8);
 			else
 			{
-				children[index].children = root.children;
+				children[index] = oldRoot;
 				break;
 			}
 		}
-		root.children = newRootChildren;
+		root.full 		= false;
+		root.bits 		= null;
+		root.shared 	= false;
+		root.children 	= newRootChildren;
 	}
 	
 	
@@ -248,9 +1027,12 @@ public class Octree extends Tree
 	@Override
 	protected void expandAsNeeded(int... coords) 
 	{
-		int sideLength = max[0] - min[0];
+		if (min == null) 
+			place(coords[0], coords[1], coords[2]);
+		
+		double 	sideLength = max[0] - min[0],
 		
-		double	xMinPercent = 0,
+				xMinPercent = 0,
 				zMinPercent = 0,
 				yMinPercent = 0,
 				xMaxPercent = 0,
@@ -258,13 +1040,13 @@ public class Octree extends Tree
 				yMaxPercent = 0;
 		
 		if 		(coords[0] <  min[0]) xMinPercent = (min[0] - coords[0]) / sideLength;
-		else if (coords[0] >= max[0]) xMaxPercent = (coords[0] - max[0]) / sideLength;
+		else if (coords[0] >= max[0]) xMaxPercent = (coords[0] - max[0] + 1) / sideLength;
 		
-		if 		(coords[1] <  min[1]) xMinPercent = (min[1] - coords[1]) / sideLength;
-		else if	(coords[1] >= max[1]) xMaxPercent = (coords[1] - max[1]) / sideLength;
+		if 		(coords[1] <  min[1]) zMinPercent = (min[1] - coords[1]) / sideLength;
+		else if	(coords[1] >= max[1]) zMaxPercent = (coords[1] - max[1] + 1) / sideLength;
 		
-		if 		(coords[2] <  min[2]) xMinPercent = (min[2] - coords[2]) / sideLength;
-		else if (coords[2] >= max[2]) xMaxPercent = (coords[2] - max[2]) / sideLength;
+		if 		(coords[2] <  min[2]) yMinPercent = (min[2] - coords[2]) / sideLength;
+		else if (coords[2] >= max[2]) yMaxPercent = (coords[2] - max[2] + 1) / sideLength;
 		
 		if (xMinPercent != 0 ||
 			zMinPercent != 0 ||
@@ -285,23 +1067,26 @@ public class Octree extends Tree
 	@Override
 	public void expandAsNeeded(int[]... bounds)
 	{
-		int sideLength = max[0] - min[0];
+		if (min == null) 
+			place(bounds[0][0], bounds[1][0], bounds[2][0]);
+		
+		double 	sideLength = max[0] - min[0],
 		
-		double	xMinPercent = 0,
+				xMinPercent = 0,
 				zMinPercent = 0,
 				yMinPercent = 0,
 				xMaxPercent = 0,
 				zMaxPercent = 0,
 				yMaxPercent = 0;
 		
-		if (bounds[0][0] <  min[0]) xMinPercent = (min[0] - bounds[0][0]) / sideLength;
-		if (bounds[0][1] >= max[0]) xMaxPercent = (bounds[0][1] - max[0]) / sideLength;
+		if (bounds[0][0] < min[0]) xMinPercent = (min[0] - bounds[0][0]) / sideLength;
+		if (bounds[0][1] > max[0]) xMaxPercent = (bounds[0][1] - max[0]) / sideLength;
 		
-		if (bounds[1][0] <  min[1]) zMinPercent = (min[1] - bounds[1][0]) / sideLength;
-		if (bounds[1][1] >= max[1]) zMaxPercent = (bounds[1][1] - max[1]) / sideLength;
+		if (bounds[1][0] < min[1]) zMinPercent = (min[1] - bounds[1][0]) / sideLength;
+		if (bounds[1][1] > max[1]) zMaxPercent = (bounds[1][1] - max[1]) / sideLength;
 		
-		if (bounds[2][0] <  min[2]) yMinPercent = (min[2] - bounds[2][0]) / sideLength;
-		if (bounds[2][1] >= max[2]) yMaxPercent = (bounds[2][1] - max[2]) / sideLength;
+		if (bounds[2][0] < min[2]) yMinPercent = (min[2] - bounds[2][0]) / sideLength;
+		if (bounds[2][1] > max[2]) yMaxPercent = (bounds[2][1] - max[2]) / sideLength;
 		
 		if (xMinPercent != 0 ||
 			zMinPercent != 0 ||
@@ -344,7 +1129,13 @@ public class Octree extends Tree
 					   )
 	{
 		if (node.full) return;
-		if (node.children == null) node.children = Node.emptyNodeArray(4);
+		if (isBrick(node, half << 1))
+		{
+			setBit(brick(node, half << 1), half << 1, blockX - node_minX, blockZ - node_minZ, blockY - node_minY, true);
+			normalize(node, half << 1);
+			return;
+		}
+		if (node.children == null) node.children = Node.emptyNodeArray(8);
 		
 		int index = 0;
 		
@@ -370,22 +1161,21 @@ public class Octree extends Tree
 			index += 4;
 		}
 		
-		if (half > 1) add(node.children[index], half >>>= 1,
+		if (half > 1) add(writable(node, index), half >>>= 1,
 						  node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
 						  blockX, blockZ, blockY
 						  );
 		else
+			writable(node, index).full = true;
+		
+		if (node.children[0].full && node.children[1].full && 
+			node.children[2].full && node.children[3].full &&
+			node.children[4].full && node.children[5].full && 
+			node.children[6].full && node.children[7].full
+			)
 		{
-			node.children[index].full = true;
-			if (node.children[0].full && node.children[1].full && 
-				node.children[2].full && node.children[3].full &&
-				node.children[4].full && node.children[5].full && 
-				node.children[6].full && node.children[7].full
-				)
-			{
-				node.full = true;
-				node.children = null;
-			}
+			node.full = true;
+			node.children = null;
 		}
 	}
 	
@@ -395,10 +1185,13 @@ public class Octree extends Tree
 	{
 		expandAsNeeded(coords);
 		
-		add(root, max[0] - min[0] >>> 1,
-			min[0], min[1], min[2], max[0], max[1], max[2],
-			coords[0], coords[1], coords[2]
-			);
+		if (max[0] - min[0] == 1)
+			root.full = true;
+		else
+			add(root, max[0] - min[0] >>> 1,
+				min[0], min[1], min[2], max[0], max[1], max[2],
+				coords[0], coords[1], coords[2]
+				);
 	}
 	
 	
@@ -433,44 +1226,44 @@ public class Octree extends Tree
 					   )
 	{
 		if (node.full) return;
-		if (node_minX >= sel_minX)
+		if (node_minX >= sel_maxX || node_maxX <= sel_minX || 
+			node_minZ >= sel_maxZ || node_maxZ <= sel_minZ ||
+			node_minY >= sel_maxY || node_maxY <= sel_minY
+			)
+			return;
+		
+		if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+			node_minZ >= sel_minZ && node_maxZ <= sel_maxZ &&
+			node_minY >= sel_minY && node_maxY <= sel_maxY
+			)
 		{
-			if (node_maxX <= sel_maxX)
-			{
-				if (node_minZ >= sel_minZ)
-				{
-					if (node_maxZ <= sel_maxZ)
-					{
-						if (node_minY >= sel_minY)
-						{
-							if (node_maxY <= sel_maxY)
-							{
-								node.full = true;
-								node.children = null;
-							}
-							return;
-						}
-						if (node_maxY <= sel_minY)
-							return;
-					}
-					if (node_minY >= sel_maxY || node_maxY <= sel_minY)
-						return;
-				}
-				if (node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
-					return;
-			}
-			if (node_minZ >= sel_maxZ || node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
-				return;
+			node.full = true;
+			node.children = null;
+			node.bits = null;
+			return;
 		}
-		if (node_maxX <= sel_minX || node_minZ >= sel_maxZ || node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
+		
+		if (isBrick(node, half << 1))
+		{
+			fill(brick(node, half << 1), half << 1,
+				 Math.max(node_minX, sel_minX) - node_minX,
+				 Math.max(node_minZ, sel_minZ) - node_minZ,
+				 Math.max(node_minY, sel_minY) - node_minY,
+				 Math.min(node_maxX, sel_maxX) - node_minX,
+				 Math.min(node_maxZ, sel_maxZ) - node_minZ,
+				 Math.min(node_maxY, sel_maxY) - node_minY,
+				 true
+				 );
+			normalize(node, half << 1);
 			return;
+		}
 		
 		if (node.children == null) 
 			node.children = Node.emptyNodeArray(8);
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half,
-			midpointY = min[2] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half;
 		
 		half >>>= 1;
 		
@@ -488,49 +1281,49 @@ public class Octree extends Tree
 			║         ║         ║				║         ║         ║
 		  Z	╚═════════╩═════════╝			  Z	╚═════════╩═════════╝*/
 		
-		add(node.children[0],
+		add(writable(node, 0),
 			half,
 			node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[1],
+		add(writable(node, 1),
 			half,
 			midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[2],
+		add(writable(node, 2),
 			half,
 			node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[3],
+		add(writable(node, 3),
 			half,
 			midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[4],
+		add(writable(node, 4),
 			half,
 			node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[5],
+		add(writable(node, 5),
 			half,
 			midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[6],
+		add(writable(node, 6),
 			half,
 			node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			);
 		
-		add(node.children[7],
+		add(writable(node, 7),
 			half,
 			midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
 			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
@@ -589,7 +1382,7 @@ public class Octree extends Tree
 	protected void add(Node node, int half,
 					   int node_minX, int node_minZ, int node_minY, int node_maxX, int node_maxZ, int node_maxY,
 					   int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY,
-					   BitSet blocks
+					   Selection3D blocks
 					   )
 	{
 		if (node.full ||
@@ -600,25 +1393,46 @@ public class Octree extends Tree
 			return;
 		
 		
-		switch (_3D.compareRegion(	node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
-									sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-									blocks
-									))
+		if (isBrick(node, half << 1))
+		{
+			setBits(brick(node, half << 1), half << 1, node_minX, node_minZ, node_minY,
+					sel_minX, sel_minZ, sel_minY, sel_maxX, sel_maxZ, sel_maxY,
+					blocks, true
+					);
+			normalize(node, half << 1);
+			return;
+		}
+		
+		
+		switch (blocks.compareRegion(	Math.max(node_minX, sel_minX), 
+										Math.max(node_minZ, sel_minZ), 
+										Math.max(node_minY, sel_minY), 
+										Math.min(node_maxX, sel_maxX), 
+										Math.min(node_maxZ, sel_maxZ), 
+										Math.min(node_maxY, sel_maxY)
+										))
 		{
 			case 0 : break;					//	some blocks added
 			case 1 : return;				//	no blocks added
-			case 2 : node.full = true;		//	all blocks added
-					 node.children = null;
-					 return;
+			case 2 : if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+						 node_minZ >= sel_minZ && node_maxZ <= sel_maxZ &&
+						 node_minY >= sel_minY && node_maxY <= sel_maxY
+						 )
+					 {
+						 node.full = true;		//	all blocks added
+						 node.children = null;
+						 return;
+					 }
+					 break;
 		}
 		
 		
 		if (node.children == null) 
 			node.children = Node.emptyNodeArray(8);
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half,
-			midpointY = min[2] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half;
 		
 		half >>>= 1;
 		
@@ -636,76 +1450,297 @@ public class Octree extends Tree
 			║         ║         ║				║         ║         ║
 		  Z	╚═════════╩═════════╝			  Z	╚═════════╩═════════╝*/
 		
-		add(node.children[0], half,
-			node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
-		
-		add(node.children[1], half,
-			midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
-		
-		add(node.children[2], half,
-			node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		if (forks(node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+				  sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
+				  ))
+			fork(node, half, node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
+				 sel_minX, sel_minZ, sel_minY, sel_maxX, sel_maxZ, sel_maxY, blocks, true
+				 );
+		else
+		{
+			add(writable(node, 0), half,
+				node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 1), half,
+				midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 2), half,
+				node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 3), half,
+				midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 4), half,
+				node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 5), half,
+				midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 6), half,
+				node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+	
+			add(writable(node, 7), half,
+				midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
+				sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				blocks
+				);
+		}
 		
-		add(node.children[3], half,
-			midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		if (node.children[0].full && node.children[1].full && 
+			node.children[2].full && node.children[3].full &&
+			node.children[4].full && node.children[5].full && 
+			node.children[6].full && node.children[7].full
+			)
+		{
+			node.full = true;
+			node.children = null;
+		}
+		else if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 		//	after a selection that could not tell
+				 isEmpty(node.children[2]) && isEmpty(node.children[3]) &&
+				 isEmpty(node.children[4]) && isEmpty(node.children[5]) && 
+				 isEmpty(node.children[6]) && isEmpty(node.children[7])
+				 )
+		{
+			node.full = false;
+			node.children = null;
+		}
+	}
+	
+	
+	@Override
+	public void add(BitSet blocks, int[]... bounds) 
+	{
+		expandAsNeeded(bounds);
 		
-		add(node.children[4], half,
-			node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		edit(selection(blocks, bounds), true, bounds);
+	}
+	
+	
+	/**
+	 * Adds the blocks selected in a compressed bitmap, classifying nodes against 
+	 * the bitmap directly, without expanding it.
+	 */
+	@Override
+	public void add(Bitmap blocks, int[]... bounds) 
+	{
+		expandAsNeeded(bounds);
 		
-		add(node.children[5], half,
-			midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		edit(blocks.selection(bounds), true, bounds);
+	}
+	
+	
+	/**
+	 * Adds the blocks selected in runs along y, classifying nodes from the runs of each 
+	 * column they cover.
+	 */
+	@Override
+	public void add(Columns columns) 
+	{
+		int[][] bounds = columns.bounds();
+		expandAsNeeded(bounds);
 		
-		add(node.children[6], half,
-			node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		edit(columns, true, bounds);
+	}
+	
+	
+	/**
+	 * Fills a shape, classifying each node against the shape analytically. Only nodes that 
+	 * cross its surface are subdivided, so the cost follows the surface, not the volume.
+	 */
+	@Override
+	public void add(Shape shape) 
+	{
+		int[][] bounds = shape.bounds();
+		expandAsNeeded(bounds);
 		
-		add(node.children[7], half,
-			midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
-			sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			blocks
-			);
+		edit(shape, true, bounds);
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		PARALLEL add() AND remove() OF COMPLEX BOUNDED SELECTIONS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Selections of at least this many blocks are added and removed on the common ForkJoinPool.
+	 * Within them, a node whose overlap with the selection has at least this many blocks edits 
+	 * its eight children in parallel. Children are disjoint subtrees, so the result is the same 
+	 * as editing them in order; each node collapses only after all of its children have joined.
+	 */
+	public static int PARALLEL_VOLUME = 1 << 18;
+	
+	
+	/**
+	 * Number of blocks in the given bounds.
+	 */
+	protected static long volume(int[]... bounds)
+	{
+		return (long) (bounds[0][1] - bounds[0][0]) * (bounds[1][1] - bounds[1][0]) * (bounds[2][1] - bounds[2][0]);
+	}
+	
+	
+	/**
+	 * Selections of at least this many blocks build a {@link SummedVolume} table before they are 
+	 * added or removed, so that most nodes are classified as empty, full, or mixed without scanning 
+	 * the BitSet. Smaller selections scan, which is cheaper than building the table.
+	 */
+	public static int SUMMED_VOLUME = 1 << 20;
+	
+	
+	/**
+	 * A summed volume table of the selection if it has at least {@link #SUMMED_VOLUME} blocks, 
+	 * or else the BitSet itself.
+	 */
+	protected static Selection3D selection(BitSet blocks, int[]... bounds)
+	{
+		return volume(bounds) >= SUMMED_VOLUME ? new SummedVolume(blocks, bounds) : new Selection3D.Dense(blocks, bounds);
+	}
+	
+	
+	/**
+	 * Adds or removes a selection from the root, on the common ForkJoinPool 
+	 * if it has at least {@link #PARALLEL_VOLUME} blocks.
+	 * 
+	 * @param blocks		the selected blocks
+	 * @param value			true to add, false to remove
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	protected void edit(Selection3D blocks, boolean value, int[]... bounds)
+	{
+		if (min == null) 
+			return;
 		
-		if (node.children[0].full && node.children[1].full && 
-			node.children[2].full && node.children[3].full &&
-			node.children[4].full && node.children[5].full && 
-			node.children[6].full && node.children[7].full
-			)
+		Edit edit = new Edit(root, max[0] - min[0] >>> 1,
+							 min[0], min[1], min[2], max[0], max[1], max[2], 
+							 bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1],
+							 blocks, value
+							 );
+		if (volume(bounds) >= PARALLEL_VOLUME && !ForkJoinTask.inForkJoinPool())
+			ForkJoinPool.commonPool().invoke(edit);
+		else
+			edit.compute();
+	}
+	
+	
+	/**
+	 * Whether a node edits its children in parallel: if this thread is in a ForkJoinPool, 
+	 * and the node's overlap with the selection has at least {@link #PARALLEL_VOLUME} blocks.
+	 */
+	protected static boolean forks(int node_minX, int node_minZ, int node_minY, int node_maxX, int node_maxZ, int node_maxY,
+								   int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY
+								   )
+	{
+		return ForkJoinTask.inForkJoinPool() && 
+			   (long) (Math.min(node_maxX, sel_maxX) - Math.max(node_minX, sel_minX))
+					* (Math.min(node_maxZ, sel_maxZ) - Math.max(node_minZ, sel_minZ))
+					* (Math.min(node_maxY, sel_maxY) - Math.max(node_minY, sel_minY)) >= PARALLEL_VOLUME;
+	}
+	
+	
+	/**
+	 * Edits the eight children of the node in parallel, and returns when all have finished. 
+	 * Children are made writable first, on this thread, so the tasks share no nodes they change.
+	 * 
+	 * @param half			half the side of a child
+	 * @param value			true to add, false to remove
+	 */
+	protected void fork(Node node, int half, 
+						int node_minX, int node_minZ, int node_minY, 
+						int midpointX, int midpointZ, int midpointY,
+						int node_maxX, int node_maxZ, int node_maxY,
+						int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY,
+						Selection3D blocks, boolean value
+						)
+	{
+		Edit[] edits = new Edit[8];
+		for (int i = 0; i < 8; i++)
 		{
-			node.full = true;
-			node.children = null;
+			boolean x = (i & 1) != 0, z = (i & 2) != 0, y = (i & 4) != 0;
+			
+			edits[i] = new Edit(writable(node, i), half,
+								x ? midpointX : node_minX, z ? midpointZ : node_minZ, y ? midpointY : node_minY,
+								x ? node_maxX : midpointX, z ? node_maxZ : midpointZ, y ? node_maxY : midpointY,
+								sel_minX, sel_minZ, sel_minY, sel_maxX, sel_maxZ, sel_maxY,
+								blocks, value
+								);
 		}
+		ForkJoinTask.invokeAll(edits);
 	}
 	
 	
-	@Override
-	public void add(BitSet blocks, int[]... bounds) 
+	/**
+	 * An add or remove of a complex bounded selection in one subtree.
+	 */
+	protected class Edit extends RecursiveAction
 	{
-		expandAsNeeded(bounds);
+		private static final long serialVersionUID = 1L;
 		
-		add(root, max[0] - min[0] >>> 1,
-			min[0], min[1], min[2], max[0], max[1], max[2], 
-			bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1],
-			blocks
-			);
+		protected final Node 			node;
+		protected final int 			half,
+										node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+										sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY;
+		protected final Selection3D 	blocks;
+		protected final boolean 		value;
+		
+		protected Edit(Node node, int half,
+					   int node_minX, int node_minZ, int node_minY, int node_maxX, int node_maxZ, int node_maxY,
+					   int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY,
+					   Selection3D blocks, boolean value
+					   )
+		{
+			this.node 		= node;
+			this.half 		= half;
+			this.node_minX 	= node_minX;	this.node_maxX 	= node_maxX;
+			this.node_minZ 	= node_minZ;	this.node_maxZ 	= node_maxZ;
+			this.node_minY 	= node_minY;	this.node_maxY 	= node_maxY;
+			this.sel_minX 	= sel_minX;		this.sel_maxX 	= sel_maxX;
+			this.sel_minZ 	= sel_minZ;		this.sel_maxZ 	= sel_maxZ;
+			this.sel_minY 	= sel_minY;		this.sel_maxY 	= sel_maxY;
+			this.blocks 	= blocks;
+			this.value 		= value;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (value)
+				add(node, half,
+					node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+					sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+					blocks
+					);
+			else
+				remove(node, half,
+					   node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+					   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+					   blocks
+					   );
+		}
 	}
 
 	
@@ -729,128 +1764,28 @@ public class Octree extends Tree
 	@Override
 	public void trimAsNeeded()
 	{
-		int half;
+		int half, index, i;
 		
-		while (!root.full && root.children != null)
+		while (min != null && !root.full && root.children != null)
 		{
-			half = max[0] - min[0] >>> 1;
-			if (root.children[0].children != null)
-			{
-				if (root.children[1].children == null &&
-					root.children[2].children == null &&
-					root.children[3].children == null &&
-					root.children[4].children == null &&
-					root.children[5].children == null &&
-					root.children[6].children == null &&
-					root.children[7].children == null
-					)
-				{
-					root.children = root.children[0].children;
-					max[0] -= half;
-					max[1] -= half;
-					max[2] -= half;
-					continue;
-				}
-			}
-			
-			else if (root.children[1].children != null)
-			{
-				if (root.children[2].children == null &&
-					root.children[3].children == null &&
-					root.children[4].children == null &&
-					root.children[5].children == null &&
-					root.children[6].children == null &&
-					root.children[7].children == null
-					)
-				{
-					root.children = root.children[1].children;
-					min[0] += half;
-					max[1] -= half;
-					max[2] -= half;
-					continue;
-				}
-			}
-			
-			else if (root.children[2].children != null)
-			{
-				if (root.children[3].children == null &&
-					root.children[4].children == null &&
-					root.children[5].children == null &&
-					root.children[6].children == null &&
-					root.children[7].children == null)
-				{
-					root.children = root.children[2].children;
-					max[0] -= half;
-					min[1] += half;
-					max[2] -= half;
-					continue;
-				}
-			}
-			
-			else if (root.children[3].children != null)
-			{
-				if (root.children[4].children == null &&
-					root.children[5].children == null &&
-					root.children[6].children == null &&
-					root.children[7].children == null)
-				{
-					root.children = root.children[3].children;
-					max[0] -= half;
-					min[1] += half;
-					max[2] -= half;
-					continue;
-				}
-			}
-			
-			if (root.children[4].children != null)
-			{
-				if (root.children[5].children == null &&
-					root.children[6].children == null &&
-					root.children[7].children == null
-					)
-				{
-					root.children = root.children[4].children;
-					max[0] -= half;
-					max[1] -= half;
-					min[2] += half;
-					continue;
-				}
-			}
-			
-			else if (root.children[5].children != null)
+			half  = max[0] - min[0] >>> 1;
+			index = -1;
+			for (i = 0; i < 8; i++)
 			{
-				if (root.children[6].children == null &&
-					root.children[7].children == null
-					)
-				{
-					root.children = root.children[5].children;
-					min[0] += half;
-					max[1] -= half;
-					min[2] += half;
+				if (isEmpty(root.children[i])) 
 					continue;
-				}
+				if (index != -1 || root.children[i].children == null) 
+					return;
+				index = i;
 			}
+			if (index == -1) 
+				return;
 			
-			else if (root.children[6].children != null)
-			{
-				if (root.children[7].children == null)
-				{
-					root.children = root.children[6].children;
-					max[0] -= half;
-					min[1] += half;
-					min[2] += half;
-					continue;
-				}
-			}
+			root.children = writable(root, index).children;
 			
-			else if (root.children[7].children != null)
-			{
-				root.children = root.children[7].children;
-				max[0] -= half;
-				min[1] += half;
-				min[2] += half;
-				continue;
-			}
+			if ((index & 1) == 0) max[0] -= half; else min[0] += half;
+			if ((index & 2) == 0) max[1] -= half; else min[1] += half;
+			if ((index & 4) == 0) max[2] -= half; else min[2] += half;
 		}
 	}
 	
@@ -877,12 +1812,18 @@ public class Octree extends Tree
 						  int blockX, int blockZ, int blockY
 						  )
 	{
+		if (isEmpty(node)) return;
+		if (isBrick(node, half << 1))
+		{
+			setBit(brick(node, half << 1), half << 1, blockX - node_minX, blockZ - node_minZ, blockY - node_minY, false);
+			normalize(node, half << 1);
+			return;
+		}
 		if (node.full)
 		{
 			node.full = false; 
-			node.children = Node.fullNodeArray(4);
+			node.children = Node.fullNodeArray(8);
 		}
-		else if (node.children == null) return;
 		
 		int index = 0;
 		
@@ -908,33 +1849,39 @@ public class Octree extends Tree
 			index += 4;
 		}
 		
-		if (half > 1) add(node.children[index], half >>>= 1,
-						  node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
-						  blockX, blockZ, blockY
-						  );
+		if (half > 1) remove(writable(node, index), half >>>= 1,
+							 node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+							 blockX, blockZ, blockY
+							 );
 		else
-		{
-			node.children[index].full = true;
-			if (node.children[0].full && node.children[1].full && 
-				node.children[2].full && node.children[3].full &&
-				node.children[4].full && node.children[5].full && 
-				node.children[6].full && node.children[7].full
-				)
-			{
-				node.full = true;
-				node.children = null;
-			}
-		}
+			writable(node, index).full = false;
+		
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3]) &&
+			isEmpty(node.children[4]) && isEmpty(node.children[5]) && 
+			isEmpty(node.children[6]) && isEmpty(node.children[7])
+			)
+			node.children = null;
 	}
 	
 
 	@Override
 	public void remove(int... coords) 
 	{
-		remove(root, max[0] - min[0] >>> 1,
-			   min[0], min[1], min[2], max[0], max[1], max[2], 
-			   coords[0], coords[1], coords[2]
-			   );
+		if (min == null || 
+			coords[0] < min[0] || coords[0] >= max[0] ||
+			coords[1] < min[1] || coords[1] >= max[1] ||
+			coords[2] < min[2] || coords[2] >= max[2]
+			)
+			return;
+		
+		if (max[0] - min[0] == 1)
+			root.full = false;
+		else
+			remove(root, max[0] - min[0] >>> 1,
+				   min[0], min[1], min[2], max[0], max[1], max[2], 
+				   coords[0], coords[1], coords[2]
+				   );
 		
 		trimAsNeeded();
 	}
@@ -971,39 +1918,39 @@ public class Octree extends Tree
 						  int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY
 						  )
 	{
-		if (!node.full && node.children == null) return;
+		if (isEmpty(node)) return;
+		
+		if (node_minX >= sel_maxX || node_maxX <= sel_minX || 
+			node_minZ >= sel_maxZ || node_maxZ <= sel_minZ ||
+			node_minY >= sel_maxY || node_maxY <= sel_minY
+			)
+			return;
 		
-		if (node_minX >= sel_minX)
+		if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+			node_minZ >= sel_minZ && node_maxZ <= sel_maxZ &&
+			node_minY >= sel_minY && node_maxY <= sel_maxY
+			)
 		{
-			if (node_maxX <= sel_maxX)
-			{
-				if (node_minZ >= sel_minZ)
-				{
-					if (node_maxZ <= sel_maxZ)
-					{
-						if (node_minY >= sel_minY)
-						{
-							if (node_maxY <= sel_maxY)
-							{
-								node.full = true;
-								node.children = null;
-							}
-							return;
-						}
-						if (node_maxY <= sel_minY)
-							return;
-					}
-					if (node_minY >= sel_maxY || node_maxY <= sel_minY)
-						return;
-				}
-				if (node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
-					return;
-			}
-			if (node_minZ >= sel_maxZ || node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
-				return;
+			node.full = false;
+			node.children = null;
+			node.bits = null;
+			return;
 		}
-		if (node_maxX <= sel_minX || node_minZ >= sel_maxZ || node_maxZ <= sel_minZ || node_minY >= sel_maxY || node_maxY <= sel_minY)
+		
+		if (isBrick(node, half << 1))
+		{
+			fill(brick(node, half << 1), half << 1,
+				 Math.max(node_minX, sel_minX) - node_minX,
+				 Math.max(node_minZ, sel_minZ) - node_minZ,
+				 Math.max(node_minY, sel_minY) - node_minY,
+				 Math.min(node_maxX, sel_maxX) - node_minX,
+				 Math.min(node_maxZ, sel_maxZ) - node_minZ,
+				 Math.min(node_maxY, sel_maxY) - node_minY,
+				 false
+				 );
+			normalize(node, half << 1);
 			return;
+		}
 		
 		if (node.full) 
 		{
@@ -1011,9 +1958,9 @@ public class Octree extends Tree
 			node.children = Node.fullNodeArray(8);
 		}
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half,
-			midpointY = min[2] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half;
 		
 		half >>>= 1;
 		
@@ -1031,50 +1978,50 @@ public class Octree extends Tree
 			║         ║         ║				║         ║         ║
 		  Z	╚═════════╩═════════╝			  Z	╚═════════╩═════════╝*/
 		
-		remove(node.children[0], half,
+		remove(writable(node, 0), half,
 			   node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[1], half,
+		remove(writable(node, 1), half,
 			   midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[2], half,
+		remove(writable(node, 2), half,
 			   node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[3], half,
+		remove(writable(node, 3), half,
 			   midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[4], half,
+		remove(writable(node, 4), half,
 			   node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[5], half,
+		remove(writable(node, 5), half,
 			   midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[6], half,
+		remove(writable(node, 6), half,
 			   node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		remove(node.children[7], half,
+		remove(writable(node, 7), half,
 			   midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
 			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
 			   );
 		
-		if (node.children[0].children == null && node.children[1].children == null && 
-			node.children[2].children == null && node.children[3].children == null &&
-			node.children[4].children == null && node.children[5].children == null && 
-			node.children[6].children == null && node.children[7].children == null
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3]) &&
+			isEmpty(node.children[4]) && isEmpty(node.children[5]) && 
+			isEmpty(node.children[6]) && isEmpty(node.children[7])
 			)
 		{
 			node.full = false;
@@ -1086,6 +2033,9 @@ public class Octree extends Tree
 	@Override
 	public void remove(int[]... bounds) 
 	{
+		if (min == null) 
+			return;
+		
 		remove(root, max[0] - min[0] >>> 1,
 			   min[0], min[1], min[2], max[0], max[1], max[2], 
 			   bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1]
@@ -1119,14 +2069,15 @@ public class Octree extends Tree
 	 * @param sel_maxX
 	 * @param sel_maxZ
 	 * @param sel_maxY
+	 * @param blocks
 	 */
 	protected void remove(Node node, int half,
 						  int node_minX, int node_minZ, int node_minY, int node_maxX, int node_maxZ, int node_maxY,
 						  int sel_minX,  int sel_minZ,  int sel_minY,  int sel_maxX,  int sel_maxZ,  int sel_maxY,
-						  BitSet blocks
+						  Selection3D blocks
 						  )
 	{
-		if ((!node.full && node.children == null) ||
+		if (isEmpty(node) ||
 			node_minX >= sel_maxX || node_maxX <= sel_minX || 
 			node_minZ >= sel_maxZ || node_maxZ <= sel_minZ ||
 			node_minY >= sel_maxY || node_maxY <= sel_minY
@@ -1134,16 +2085,37 @@ public class Octree extends Tree
 			return;
 		
 		
-		switch (_3D.compareRegion(	node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
-									sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-									blocks
-									))
+		if (isBrick(node, half << 1))
+		{
+			setBits(brick(node, half << 1), half << 1, node_minX, node_minZ, node_minY,
+					sel_minX, sel_minZ, sel_minY, sel_maxX, sel_maxZ, sel_maxY,
+					blocks, false
+					);
+			normalize(node, half << 1);
+			return;
+		}
+		
+		
+		switch (blocks.compareRegion(	Math.max(node_minX, sel_minX), 
+										Math.max(node_minZ, sel_minZ), 
+										Math.max(node_minY, sel_minY), 
+										Math.min(node_maxX, sel_maxX), 
+										Math.min(node_maxZ, sel_maxZ), 
+										Math.min(node_maxY, sel_maxY)
+										))
 		{
 			case 0 : break;					//	some blocks removed
 			case 1 : return;				//	no blocks removed
-			case 2 : node.full = false;		//	all blocks removed
-					 node.children = null;
-					 return;
+			case 2 : if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+						 node_minZ >= sel_minZ && node_maxZ <= sel_maxZ &&
+						 node_minY >= sel_minY && node_maxY <= sel_maxY
+						 )
+					 {
+						 node.full = false;		//	all blocks removed
+						 node.children = null;
+						 return;
+					 }
+					 break;
 		}
 		
 		
@@ -1153,9 +2125,9 @@ public class Octree extends Tree
 			node.children = Node.fullNodeArray(8);
 		}
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half,
-			midpointY = min[2] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			midpointY = node_minY + half;
 		
 		half >>>= 1;
 		
@@ -1173,75 +2145,174 @@ public class Octree extends Tree
 			║         ║         ║				║         ║         ║
 		  Z	╚═════════╩═════════╝			  Z	╚═════════╩═════════╝*/
 		
-		remove(node.children[0], half,
-			   node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[1], half,
-			   midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[2], half,
-			   node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[3], half,
-			   midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[4], half,
-			   node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[5], half,
-			   midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[6], half,
-			   node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
-		
-		remove(node.children[7], half,
-			   midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
-			   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
-			   blocks
-			   );
+		if (forks(node_minX, node_minZ, node_minY, node_maxX, node_maxZ, node_maxY,
+				  sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY
+				  ))
+			fork(node, half, node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
+				 sel_minX, sel_minZ, sel_minY, sel_maxX, sel_maxZ, sel_maxY, blocks, false
+				 );
+		else
+		{
+			remove(writable(node, 0), half,
+				   node_minX, node_minZ, node_minY, midpointX, midpointZ, midpointY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 1), half,
+				   midpointX, node_minZ, node_minY, node_maxX, midpointZ, midpointY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 2), half,
+				   node_minX, midpointZ, node_minY, midpointX, node_maxZ, midpointY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 3), half,
+				   midpointX, midpointZ, node_minY, node_maxX, node_maxZ, midpointY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 4), half,
+				   node_minX, node_minZ, midpointY, midpointX, midpointZ, node_maxY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 5), half,
+				   midpointX, node_minZ, midpointY, node_maxX, midpointZ, node_maxY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 6), half,
+				   node_minX, midpointZ, midpointY, midpointX, node_maxZ, node_maxY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+	
+			remove(writable(node, 7), half,
+				   midpointX, midpointZ, midpointY, node_maxX, node_maxZ, node_maxY,
+				   sel_minX,  sel_minZ,  sel_minY,  sel_maxX,  sel_maxZ,  sel_maxY,
+				   blocks
+				   );
+		}
 		
-		if (node.children[0].children == null && node.children[1].children == null && 
-			node.children[2].children == null && node.children[3].children == null &&
-			node.children[4].children == null && node.children[5].children == null && 
-			node.children[6].children == null && node.children[7].children == null
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3]) &&
+			isEmpty(node.children[4]) && isEmpty(node.children[5]) && 
+			isEmpty(node.children[6]) && isEmpty(node.children[7])
 			)
 		{
 			node.full = false;
 			node.children = null;
 		}
+		else if (node.children[0].full && node.children[1].full && 		//	after a selection that could not tell
+				 node.children[2].full && node.children[3].full &&
+				 node.children[4].full && node.children[5].full && 
+				 node.children[6].full && node.children[7].full
+				 )
+		{
+			node.full = true;
+			node.children = null;
+		}
 	}
 	
 	
 	@Override
 	public void remove(BitSet blocks, int[]... bounds) 
 	{
-		remove(root, max[0] - min[0] >>> 1,
-			   min[0], min[1], min[2], max[0], max[1], max[2], 
-			   bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1],
-			   blocks
-			   );
+		edit(selection(blocks, bounds), false, bounds);
+		
+		trimAsNeeded();
+	}
+	
+	
+	/**
+	 * Removes the blocks selected in a compressed bitmap. See {@link #add(Bitmap, int[]...)}.
+	 */
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds) 
+	{
+		edit(blocks.selection(bounds), false, bounds);
+		
+		trimAsNeeded();
+	}
+	
+	
+	/**
+	 * Removes the blocks selected in runs along y. See {@link #add(Columns)}.
+	 */
+	@Override
+	public void remove(Columns columns) 
+	{
+		edit(columns, false, columns.bounds());
+		
+		trimAsNeeded();
+	}
+	
+	
+	/**
+	 * Clears a shape. See {@link #add(Shape)}.
+	 */
+	@Override
+	public void remove(Shape shape) 
+	{
+		edit(shape, false, shape.bounds());
 		
 		trimAsNeeded();
 	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		SET ALGEBRA
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Adds every block of the other tree, combining nodes rather than blocks, 
+	 * and expanding this tree to cover it. See {@link Algebra}.<p>
+	 * 
+	 * Subtrees taken whole from the other tree are not copied, but marked {@link Node#shared shared}, 
+	 * so whichever tree edits one later copies it first. The other tree's blocks are not changed.
+	 */
+	public void union(Octree other)
+	{
+		Algebra.combine(this, other, Algebra.UNION);
+	}
+	
+	
+	/**
+	 * Removes every block the other tree does not have. See {@link #union(Octree)}.
+	 */
+	public void intersection(Octree other)
+	{
+		Algebra.combine(this, other, Algebra.INTERSECTION);
+	}
+	
+	
+	/**
+	 * Removes every block of the other tree. See {@link #union(Octree)}.
+	 */
+	public void difference(Octree other)
+	{
+		Algebra.combine(this, other, Algebra.DIFFERENCE);
+	}
+	
+	
+	/**
+	 * Adds every block of the other tree that this tree does not have, and removes 
+	 * every block both have. See {@link #union(Octree)}.
+	 */
+	public void symmetricDifference(Octree other)
+	{
+		Algebra.combine(this, other, Algebra.SYMMETRIC_DIFFERENCE);
+	}
 }
@@ -0,0 +1,291 @@
+package regions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import regions.Tree.Node;
+
+/**
+ * Structural diff between two versions of an Octree or Quadtree, and the patch that turns one
+ * into the other in place. The diff walks both trees in lockstep and writes only the subtrees
+ * that differ, each with its path from the root.<p>
+ *
+ * Subtrees that are the same instance in both trees are skipped without being visited. Edits
+ * copy on write every node they change (see {@link Tree#writable(Node, int)}), so the diff
+ * between a tree and its {@link #checkpoint(Tree) checkpoint} visits only the paths to the
+ * changed nodes. Interned trees (see {@link Tree.NodePool}) share identical subtrees too.<p>
+ *
+ * <pre>
+ * int 		MAGIC			0xFF 'R' 'D' 'P'
+ * byte 	branches		8 for an Octree, 4 for a Quadtree
+ * then for each changed subtree:
+ * byte 	depth			or 0xFF to end the patch
+ * byte[] 	path			child index at each depth
+ * byte 	code			00 = partial, 01 = empty, 10 = full, 11 = brick
+ * int 		length			if partial, length of the subtree's bytes; if a brick, of its bits
+ * byte[] 	subtree			if partial, the subtree in the 2-bit format
+ * long[] 	bits			if a brick, its bits (see {@link Octree#setBrickSide(int)})
+ * </pre>
+ *
+ * Partial subtrees applied to an Octree with bricks have their nodes of the brick side 
+ * turned back into bricks, so a patched tree is stored as the tree it was written from.
+ */
+public class Patch
+{
+	public static final int 	MAGIC 	= 0xFF524450;
+	protected static final int 	END 	= 0xFF;
+	
+	
+	/**
+	 * Number of children of the given tree's partial nodes.
+	 *
+	 * @throws 				UnsupportedOperationException if the tree is not an Octree or Quadtree
+	 */
+	protected static int branches(Tree tree)
+	{
+		if (tree instanceof Octree) 	return 8;
+		if (tree instanceof Quadtree) 	return 4;
+		
+		throw new UnsupportedOperationException("Patches need an Octree or Quadtree, not " + tree.getClass().getSimpleName());
+	}
+	
+	
+	/**
+	 * Returns a copy of the tree's current state to diff against later. Like a snapshot, costs
+	 * one node: later edits copy the nodes they change rather than changing the checkpoint.
+	 *
+	 * @param tree			an Octree or Quadtree
+	 * @return				the root of the checkpoint
+	 */
+	public static Node checkpoint(Tree tree)
+	{
+		branches(tree);
+		
+		return Tree.share(tree.root);
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		DIFF
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Writes the patch from one tree to another of the same type and bounds.
+	 *
+	 * @param from			the tree the patch will be applied to
+	 * @param to			the tree the patch produces
+	 * @param output		the OutputStream to write to
+	 * @throws 				IOException
+	 * @throws 				IllegalArgumentException if the trees differ in type or bounds
+	 */
+	public static void write(Tree from, Tree to, OutputStream output) throws IOException
+	{
+		if (branches(from) != branches(to))
+			throw new IllegalArgumentException("Cannot diff a " + from.getClass().getSimpleName()
+											   + " against a " + to.getClass().getSimpleName()
+											   );
+		if (!Arrays.equals(from.min, to.min) || !Arrays.equals(from.max, to.max))
+			throw new IllegalArgumentException("Cannot diff trees with different bounds: "
+											   + Arrays.toString(from.min) + " to " + Arrays.toString(from.max) + " against "
+											   + Arrays.toString(to.min) + " to " + Arrays.toString(to.max)
+											   );
+		write(to, from.root, to.root, output);
+	}
+	
+	
+	/**
+	 * Writes the patch from the given checkpoint to the tree's current state.
+	 *
+	 * @param tree			the tree
+	 * @param checkpoint	a root returned by {@link #checkpoint(Tree)}
+	 * @param output		the OutputStream to write to
+	 * @throws 				IOException
+	 */
+	public static void write(Tree tree, Node checkpoint, OutputStream output) throws IOException
+	{
+		write(tree, checkpoint, tree.root, output);
+	}
+	
+	
+	/**
+	 * Writes the patch from one root to another.
+	 *
+	 * @param tree			the tree to write subtrees with
+	 * @param from			root of the version the patch will be applied to
+	 * @param to			root of the version the patch produces
+	 * @param output		the OutputStream to write to
+	 * @throws 				IOException
+	 */
+	protected static void write(Tree tree, Node from, Node to, OutputStream output) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(MAGIC);
+		data.writeByte(branches(tree));
+		
+		diff(tree, from, to, new byte[64], 0, data);
+		
+		data.writeByte(END);
+		data.flush();
+	}
+	
+	
+	/**
+	 * Writes the differences between two nodes at the same path.
+	 */
+	protected static void diff(Tree tree, Node a, Node b, byte[] path, int depth, DataOutputStream output)
+			throws IOException
+	{
+		if (a == b)
+			return;
+		
+		boolean aLeaf = a.children == null && a.bits == null,
+				bLeaf = b.children == null && b.bits == null;
+		
+		if (aLeaf && bLeaf && a.full == b.full)
+			return;
+		
+		if (a.bits != null && b.bits != null && Arrays.equals(a.bits, b.bits))
+			return;
+		
+		if (a.children != null && b.children != null && depth < path.length)
+		{
+			for (byte i = 0; i < b.children.length; i++)
+			{
+				path[depth] = i;
+				diff(tree, a.children[i], b.children[i], path, depth + 1, output);
+			}
+			return;
+		}
+		
+		output.writeByte(depth);
+		output.write(path, 0, depth);
+		
+		if (bLeaf)
+			output.writeByte(b.full ? 2 : 1);
+		else if (b.bits != null)
+		{
+			output.writeByte(3);
+			output.writeInt(b.bits.length);
+			for (long word : b.bits)
+				output.writeLong(word);
+		}
+		else
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			tree.writeBytes(b, bytes);
+			
+			output.writeByte(0);
+			output.writeInt(bytes.size());
+			bytes.writeTo(output);
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		APPLY
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Applies a patch to the tree in place, replacing each changed subtree. Nodes on the path
+	 * to each change are copied on write, so snapshots and checkpoints of the tree are unaffected.
+	 * The tree should be in the state the patch was written from.<p>
+	 *
+	 * Does not close the input stream.
+	 *
+	 * @param tree			an Octree or Quadtree
+	 * @param input			the patch
+	 * @throws 				IOException if the patch is invalid, or its paths do not exist in the tree
+	 */
+	public static void apply(Tree tree, InputStream input) throws IOException
+	{
+		DataInputStream data = new DataInputStream(input);
+		
+		int branches = branches(tree);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a tree patch");
+		if (data.readUnsignedByte() != branches)
+			throw new IOException("Patch is for a tree with a different number of branches");
+		
+		byte[] path = new byte[64];
+		int depth;
+		while ((depth = data.readUnsignedByte()) != END)
+		{
+			if (depth > path.length)
+				throw new IOException("Invalid patch depth " + depth);
+			
+			data.readFully(path, 0, depth);
+			
+			Node replacement;
+			int code = data.readUnsignedByte();
+			switch (code)
+			{
+				case 1 	: replacement = Tree.NodePool.EMPTY; break;
+				case 2 	: replacement = Tree.NodePool.FULL; break;
+				case 0 	:
+					byte[] bytes = new byte[data.readInt()];
+					data.readFully(bytes);
+					replacement = Tree.parseBytes(ByteBuffer.wrap(bytes), branches);
+					if (tree instanceof Octree && ((Octree) tree).brickSide != 0)
+						((Octree) tree).makeBricks(replacement, side(tree, depth));
+					break;
+				case 3 	:
+					int length = data.readInt(),
+						side   = side(tree, depth);
+					if (!(tree instanceof Octree) || side > 16 || length != Math.max(side * side * side >>> 6, 1))
+						throw new IOException("Invalid brick of " + length + " words at depth " + depth);
+					
+					replacement = new Node(false);
+					replacement.bits = new long[length];
+					for (int i = 0; i < length; i++)
+						replacement.bits[i] = data.readLong();
+					break;
+				default : throw new IOException("Invalid patch code " + code);
+			}
+			
+			if (depth == 0)		//	the root is final, and is changed rather than replaced
+			{
+				tree.root.full 		= replacement.full;
+				tree.root.children 	= replacement.children == null ? null : replacement.children.clone();
+				tree.root.bits 		= replacement.bits;
+				continue;
+			}
+			
+			Node parent = tree.root;
+			for (int i = 0; i < depth - 1; i++)
+			{
+				if (parent.children == null || path[i] < 0 || path[i] >= branches)
+					throw new IOException("Patch path does not exist in the tree");
+				
+				parent = Tree.writable(parent, path[i]);
+			}
+			int last = path[depth - 1];
+			if (parent.children == null || last < 0 || last >= branches)
+				throw new IOException("Patch path does not exist in the tree");
+			
+			parent.children[last] = replacement;
+		}
+	}
+	
+	
+	/**
+	 * Side length of the tree's nodes at the given depth.
+	 */
+	protected static int side(Tree tree, int depth)
+	{
+		return depth < 31 ? tree.max[0] - tree.min[0] >>> depth : 0;
+	}
+}
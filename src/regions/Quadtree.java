@@ -4,6 +4,7 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 
 import regions.BitRegionUtil._3D;
@@ -35,6 +36,23 @@ public class Quadtree extends Tree
 						  );
 	}
 	
+	
+	/**
+	 * Parses with {@link Tree#parseBytes(ByteBuffer, int)}, without recursion.
+	 */
+	@Override
+	public Node parseBytes(ByteBuffer buffer)
+	{
+		return parseBytes(buffer, 4);
+	}
+	
+	
+	@Override
+	protected int branches()
+	{
+		return 4;
+	}
+	
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
 		TO BYTES
@@ -44,6 +62,13 @@ public class Quadtree extends Tree
 	@Override
 	public void writeBytes(Node node, OutputStream output) throws IOException
 	{
+		if (node.children == null)		//	a full root is written as four full children
+		{
+			if (node.full)
+				output.write(0b10101010);
+			return;
+		}
+		
 		output.write(	getByte( node.children[0],
 								 node.children[1],
 								 node.children[2],
@@ -67,6 +92,33 @@ public class Quadtree extends Tree
 		super(file);
 	}
 	
+	/**
+	 * Builds a tree of the given selection. See {@link Tree#Tree(File, BitSet, int[][])}.
+	 * 
+	 * @param file			The source file, and save destination, for this tree
+	 * @param blocks		BitSet representing all <tt>true</tt> points in the given volume
+	 * @param bounds		Min and max coordinates of the bounding box
+	 */
+	public Quadtree(File file, BitSet blocks, int[][] bounds)
+	{
+		super(file, blocks, bounds);
+	}
+	
+	/**
+	 * A copy of the given tree, with the same bounds. Shares the tree's nodes, so that 
+	 * it costs one node, and edits to either tree copy the nodes they change.
+	 * 
+	 * @param file			The source file, and save destination, for the copy
+	 * @param tree			the tree to copy
+	 */
+	public Quadtree(File file, Quadtree tree)
+	{
+		super(file, share(tree.root));
+		
+		this.min = tree.min == null ? null : tree.min.clone();
+		this.max = tree.max == null ? null : tree.max.clone();
+	}
+	
 	
 	/*
 	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
@@ -87,8 +139,23 @@ public class Quadtree extends Tree
 	@Override
 	public boolean testFor(int... coords)
 	{
-		if (coords[0] < min[0] || coords[0] >= max[0] ||
-			coords[1] < min[1] || coords[1] >= max[1]
+		return testFor(coords[0], coords[1]);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		return testFor(x, z);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null || 
+			x < min[0] || x >= max[0] ||
+			z < min[1] || z >= max[1]
 			)
 			return false;
 		
@@ -105,12 +172,12 @@ public class Quadtree extends Tree
 				return false;
 			
 			index = 0;
-			if (minX + half <= coords[0])
+			if (minX + half <= x)
 			{
 				minX += half;
 				index += 1;
 			}
-			if (minZ + half <= coords[1])
+			if (minZ + half <= z)
 			{
 				minZ += half;
 				index += 2;
@@ -121,6 +188,87 @@ public class Quadtree extends Tree
 	}
 	
 	
+	/**
+	 * Counts the given range of points that the node contains, moving them to the front of 
+	 * the range. Points are split by child index before descending, which sorts them in 
+	 * Morton order and visits each node once for all the points inside it.
+	 * 
+	 * @param node
+	 * @param half
+	 * @param node_minX
+	 * @param node_minZ
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range of <tt>order</tt> inside this node
+	 * @param to			end of the range, exclusive
+	 * @param bounds		scratch space for child ranges, 5 per level below this node
+	 * @param offset		start of this node's child ranges in <tt>bounds</tt>
+	 * @return				the number of contained points, now at <tt>order[from]</tt> onward
+	 */
+	protected static int testFor(Node node, int half, int node_minX, int node_minZ,
+								 int[] xs, int[] zs,
+								 int[] order, int from, int to, 
+								 int[] bounds, int offset
+								 )
+	{
+		if (from == to || !node.full && node.children == null) 
+			return 0;
+		
+		if (node.full)
+			return to - from;
+		
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half,
+			end = from, i;
+		
+		bounds[offset    ] = from;
+		bounds[offset + 4] = to;
+		bounds[offset + 2] = split(zs, midpointZ, order, from, to);
+		bounds[offset + 1] = split(xs, midpointX, order, from, bounds[offset + 2]);
+		bounds[offset + 3] = split(xs, midpointX, order, bounds[offset + 2], to);
+		
+		for (i = 0; i < 4; i++)
+			end = gather(order, end, bounds[offset + i],
+						 testFor(node.children[i], half >>> 1,
+								 (i & 1) == 0 ? node_minX : midpointX,
+								 (i & 2) == 0 ? node_minZ : midpointZ,
+								 xs, zs,
+								 order, bounds[offset + i], bounds[offset + i + 1],
+								 bounds, offset + 5
+								 ));
+		return end - from;
+	}
+	
+	
+	@Override
+	protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+	{
+		if (min == null) 
+			return 0;
+		
+		int end = from;
+		
+		for (int i = from, point; i < to; i++)
+		{
+			point = order[i];
+			if (xs[point] >= min[0] && xs[point] < max[0] &&
+				zs[point] >= min[1] && zs[point] < max[1]
+				)
+			{
+				order[i] = order[end];
+				order[end++] = point;
+			}
+		}
+		
+		return testFor(root, max[0] - min[0] >>> 1, min[0], min[1],
+					   xs, zs,
+					   order, from, end,
+					   new int[5 * Integer.numberOfTrailingZeros(max[0] - min[0])], 0
+					   );
+	}
+
+
 	/*----------------------------------------------------------------------------TODO
 	------------------------------------------------------------------------------
 		contains() BOUNDED SELECTION
@@ -150,7 +298,10 @@ public class Quadtree extends Tree
 	----------------------------------------------------------------------------*/
 	
 	/**
-	 * Method for sharing logic among the variants of expandAsNeeded()
+	 * Method for sharing logic among the variants of expandAsNeeded(). Grows the tree by whole 
+	 * multiples of its side length, keeping the old root as one node of the new tree. Each 
+	 * argument is the distance to grow on one side, as a fraction of the current side length, 
+	 * rounded up.
 	 * 
 	 * @param xMinPercent
 	 * @param zMinPercent
@@ -164,9 +315,10 @@ public class Quadtree extends Tree
 			xMax = (int) Math.ceil(xMaxPercent),
 			zMax = (int) Math.ceil(zMaxPercent),
 			
-			size = nextPowerOfTwo(xMin + xMax + 1, 
-								  zMin + zMax + 1
-								  ),
+			cells = Math.max(xMin + xMax + 1, 
+							 zMin + zMax + 1
+							 ),
+			size  = Integer.highestOneBit(cells - 1) << 1,
 		
 			xMargin = size - (xMin + xMax + 1),
 			zMargin = size - (zMin + zMax + 1),
@@ -186,6 +338,13 @@ public class Quadtree extends Tree
 		max[0] += (sideLength * xMax);
 		max[1] += (sideLength * zMax);}
 		
+		if (isEmpty(root))
+			return;
+		
+		Node oldRoot 	 = new Node(root.full);
+		oldRoot.children = root.children;
+		oldRoot.shared 	 = root.shared;
+		
 		/* child index:
 			
 			X         →         X
@@ -209,17 +368,13 @@ public class Quadtree extends Tree
 			index = 0;
 			
 			if (xMin >= size)
-				xMin -= size;
-			else
 			{
-				xMax -= size;
+				xMin -= size;
 				index += 1;
 			}
 			if (zMin >= size)
-				zMin -= size;
-			else
 			{
-				zMax -= size;
+				zMin -= size;
 				index += 2;
 			}
 			
@@ -227,11 +382,13 @@ public class Quadtree extends Tree
 				children[index].children = children = Node.emptyNodeArray(4);
 			else
 			{
-				children[index].children = root.children;
+				children[index] = oldRoot;
 				break;
 			}
 		}
-		root.children = newRootChildren;
+		root.full 		= false;
+		root.shared 	= false;
+		root.children 	= newRootChildren;
 	}
 	
 	
@@ -246,18 +403,21 @@ public class Quadtree extends Tree
 	@Override
 	protected void expandAsNeeded(int... coords) 
 	{
-		int sideLength = max[0] - min[0];
+		if (min == null) 
+			place(coords[0], coords[1]);
 		
-		double	xMinPercent = 0,
+		double 	sideLength = max[0] - min[0],
+		
+				xMinPercent = 0,
 				zMinPercent = 0,
 				xMaxPercent = 0,
 				zMaxPercent = 0;
 		
 		if 		(coords[0] <  min[0]) xMinPercent = (min[0] - coords[0]) / sideLength;
-		else if (coords[0] >= max[0]) xMaxPercent = (coords[0] - max[0]) / sideLength;
+		else if (coords[0] >= max[0]) xMaxPercent = (coords[0] - max[0] + 1) / sideLength;
 		
 		if 		(coords[1] <  min[1]) zMinPercent = (min[1] - coords[1]) / sideLength;
-		else if	(coords[1] >= max[1]) zMaxPercent = (coords[1] - max[1]) / sideLength;
+		else if	(coords[1] >= max[1]) zMaxPercent = (coords[1] - max[1] + 1) / sideLength;
 		
 		if (xMinPercent != 0 ||
 			zMinPercent != 0 ||
@@ -274,18 +434,21 @@ public class Quadtree extends Tree
 	@Override
 	public void expandAsNeeded(int[]... bounds)
 	{
-		int sideLength = max[0] - min[0];
+		if (min == null) 
+			place(bounds[0][0], bounds[1][0]);
+		
+		double 	sideLength = max[0] - min[0],
 		
-		double	xMinPercent = 0,
+				xMinPercent = 0,
 				zMinPercent = 0,
 				xMaxPercent = 0,
 				zMaxPercent = 0;
 		
-		if (bounds[0][0] <  min[0]) xMinPercent = (min[0] - bounds[0][0]) / sideLength;
-		if (bounds[0][1] >= max[0]) xMaxPercent = (bounds[0][1] - max[0]) / sideLength;
+		if (bounds[0][0] < min[0]) xMinPercent = (min[0] - bounds[0][0]) / sideLength;
+		if (bounds[0][1] > max[0]) xMaxPercent = (bounds[0][1] - max[0]) / sideLength;
 		
-		if (bounds[1][0] <  min[1]) zMinPercent = (min[1] - bounds[1][0]) / sideLength;
-		if (bounds[1][1] >= max[1]) zMaxPercent = (bounds[1][1] - max[1]) / sideLength;
+		if (bounds[1][0] < min[1]) zMinPercent = (min[1] - bounds[1][0]) / sideLength;
+		if (bounds[1][1] > max[1]) zMaxPercent = (bounds[1][1] - max[1]) / sideLength;
 		
 		if (xMinPercent != 0 ||
 			zMinPercent != 0 ||
@@ -343,22 +506,19 @@ public class Quadtree extends Tree
 			index += 2;
 		}
 		
-		if (half > 1) add(node.children[index], half >>>= 1,
+		if (half > 1) add(writable(node, index), half >>>= 1,
 						  node_minX, node_minZ, node_maxX, node_maxZ,
 						  blockX, blockZ
 						  );
 		else
+			writable(node, index).full = true;
+		
+		if (node.children[0].full && node.children[1].full && 
+			node.children[2].full && node.children[3].full
+			)
 		{
-			node.children[index].full = true;
-			if (node.children[0].full && 
-				node.children[1].full && 
-				node.children[2].full && 
-				node.children[3].full
-				)
-			{
-				node.full = true;
-				node.children = null;
-			}
+			node.full = true;
+			node.children = null;
 		}
 	}
 	
@@ -368,10 +528,13 @@ public class Quadtree extends Tree
 	{
 		expandAsNeeded(coords);
 		
-		add(root, max[0] - min[0] >>> 1,
-			this.min[0], this.min[1], this.max[0], this.max[1],
-			coords[0], coords[1]
-			);
+		if (max[0] - min[0] == 1)
+			root.full = true;
+		else
+			add(root, max[0] - min[0] >>> 1,
+				this.min[0], this.min[1], this.max[0], this.max[1],
+				coords[0], coords[1]
+				);
 	}
 	
 	
@@ -401,34 +564,26 @@ public class Quadtree extends Tree
 					   int sel_minX,  int sel_minZ,  int sel_maxX,  int sel_maxZ
 					   )
 	{
-		if (node.full) return;
-		if (node_minX >= sel_minX)
+		if (node.full ||
+			node_minX >= sel_maxX || node_maxX <= sel_minX || 
+			node_minZ >= sel_maxZ || node_maxZ <= sel_minZ
+			)
+			return;
+		
+		if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+			node_minZ >= sel_minZ && node_maxZ <= sel_maxZ
+			)
 		{
-			if (node_maxX <= sel_maxX)
-			{
-				if (node_minZ >= sel_minZ)
-				{
-					if (node_maxZ <= sel_maxZ)
-					{
-						node.full = true;
-						node.children = null;
-					}
-					return;
-				}
-				if (node_maxZ <= sel_minZ)
-					return;
-			}
-			if (node_minZ >= sel_maxZ || node_maxZ <= sel_minZ)
-				return;
-		}
-		if (node_maxX <= sel_minX || node_minZ >= sel_maxZ || node_maxZ <= sel_minZ)
+			node.full = true;
+			node.children = null;
 			return;
+		}
 		
 		if (node.children == null) 
 			node.children = Node.emptyNodeArray(4);
 		
-		int midpointX = min[0] + half, 
-			midpointZ = min[1] + half;
+		int midpointX = node_minX + half, 
+			midpointZ = node_minZ + half;
 		
 		half >>>= 1;
 		
@@ -446,22 +601,22 @@ public class Quadtree extends Tree
 			║         ║         ║
 		  Z	╚═════════╩═════════╝*/
 		
-		add(node.children[0], half,
+		add(writable(node, 0), half,
 			node_minX, node_minZ, midpointX, midpointZ, 
 			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			);
 		
-		add(node.children[1], half,
+		add(writable(node, 1), half,
 			midpointX, node_minZ, node_maxX, midpointZ, 
 			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			);
 		
-		add(node.children[2], half,
+		add(writable(node, 2), half,
 			node_minX, midpointZ, midpointX, node_maxZ, 
 			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			);
 		
-		add(node.children[3], half,
+		add(writable(node, 3), half,
 			midpointX, midpointZ, node_maxX, node_maxZ, 
 			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			);
@@ -513,7 +668,7 @@ public class Quadtree extends Tree
 	protected void add(Node node, int half,
 					   int node_minX, int node_minZ, int node_maxX, int node_maxZ, 
 					   int sel_minX,  int sel_minZ,  int sel_maxX,  int sel_maxZ,
-					   BitSet blocks
+					   Selection2D blocks
 					   )
 	{
 		if (node.full ||
@@ -523,23 +678,30 @@ public class Quadtree extends Tree
 			return;
 		
 		
-		switch (_2D.compareRegion(	node_minX, node_minZ, node_maxX, node_maxZ,
-									sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
-									blocks
-									))
+		switch (blocks.compareRegion(	Math.max(node_minX, sel_minX), 
+										Math.max(node_minZ, sel_minZ), 
+										Math.min(node_maxX, sel_maxX), 
+										Math.min(node_maxZ, sel_maxZ)
+										))
 		{
 			case 0 : break;					//	some blocks added
 			case 1 : return;				//	no blocks added
-			case 2 : node.full = true;		//	all blocks added
-					 node.children = null;
-					 return;
+			case 2 : if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+						 node_minZ >= sel_minZ && node_maxZ <= sel_maxZ
+						 )
+					 {
+						 node.full = true;		//	all blocks added
+						 node.children = null;
+						 return;
+					 }
+					 break;
 		}
 		
 		
 		if (node.children == null) node.children = Node.emptyNodeArray(4);
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half;
 		
 		half >>>= 1;
 		
@@ -557,24 +719,28 @@ public class Quadtree extends Tree
 			║         ║         ║
 		  Z	╚═════════╩═════════╝*/
 		
-		add(node.children[0], half,
+		add(writable(node, 0), half,
 			node_minX, node_minZ, midpointX, midpointZ, 
-			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
+			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
+			blocks
 			);
 		
-		add(node.children[1], half,
+		add(writable(node, 1), half,
 			midpointX, node_minZ, node_maxX, midpointZ, 
-			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
+			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
+			blocks
 			);
 		
-		add(node.children[2], half,
+		add(writable(node, 2), half,
 			node_minX, midpointZ, midpointX, node_maxZ, 
-			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
+			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
+			blocks
 			);
 		
-		add(node.children[3], half,
+		add(writable(node, 3), half,
 			midpointX, midpointZ, node_maxX, node_maxZ, 
-			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
+			sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
+			blocks
 			);
 		
 		if (node.children[0].full && node.children[1].full && 
@@ -584,6 +750,13 @@ public class Quadtree extends Tree
 			node.full = true;
 			node.children = null;
 		}
+		else if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 		//	after a selection that could not tell
+				 isEmpty(node.children[2]) && isEmpty(node.children[3])
+				 )
+		{
+			node.full = false;
+			node.children = null;
+		}
 	}
 	
 	
@@ -595,7 +768,54 @@ public class Quadtree extends Tree
 		add(root, max[0] - min[0] >>> 1,
 			min[0], min[1], max[0], max[1],
 			bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
-			blocks
+			new Selection2D.Dense(blocks, bounds)
+			);
+	}
+	
+	
+	/**
+	 * Adds the blocks selected in a compressed bitmap, classifying nodes against 
+	 * the bitmap directly, without expanding it.
+	 */
+	@Override
+	public void add(Bitmap blocks, int[]... bounds) 
+	{
+		expandAsNeeded(bounds);
+		
+		add(root, max[0] - min[0] >>> 1,
+			min[0], min[1], max[0], max[1],
+			bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
+			blocks.selection2D(bounds)
+			);
+	}
+	
+	
+	/**
+	 * Adds the footprint of the columns with any blocks selected.
+	 */
+	@Override
+	public void add(Columns columns) 
+	{
+		int[][] bounds = columns.bounds();
+		
+		add(columns.footprint(), bounds[0], bounds[1]);
+	}
+	
+	
+	/**
+	 * Fills the outline of a shape on x and z, classifying nodes against the outline 
+	 * directly. See {@link Shape#outline()}.
+	 */
+	@Override
+	public void add(Shape shape) 
+	{
+		Selection2D outline = shape.outline();
+		expandAsNeeded(new int[] { outline.minX, outline.maxX }, new int[] { outline.minZ, outline.maxZ });
+		
+		add(root, max[0] - min[0] >>> 1,
+			min[0], min[1], max[0], max[1],
+			outline.minX, outline.minZ, outline.maxX, outline.maxZ,
+			outline
 			);
 	}
 
@@ -620,55 +840,27 @@ public class Quadtree extends Tree
 	@Override
 	public void trimAsNeeded()
 	{
-		int half;
+		int half, index, i;
 		
-		while (!root.full && root.children != null)
+		while (min != null && !root.full && root.children != null)
 		{
-			half = max[0] - min[0] >>> 1;
-			if (root.children[0].children != null)
-			{
-				if (root.children[1].children == null &&
-					root.children[2].children == null &&
-					root.children[3].children == null
-					)
-				{
-					root.children = root.children[0].children;
-					max[0] -= half;
-					max[1] -= half;
-					continue;
-				}
-			}
-			
-			else if (root.children[1].children != null)
+			half  = max[0] - min[0] >>> 1;
+			index = -1;
+			for (i = 0; i < 4; i++)
 			{
-				if (root.children[2].children == null &&
-					root.children[3].children == null
-					)
-				{
-					root.children = root.children[1].children;
-					min[0] += half;
-					max[1] -= half;
+				if (isEmpty(root.children[i])) 
 					continue;
-				}
+				if (index != -1 || root.children[i].children == null) 
+					return;
+				index = i;
 			}
+			if (index == -1) 
+				return;
 			
-			else if (root.children[2].children != null)
-			{
-				if (root.children[3].children == null)
-				{
-					root.children = root.children[2].children;
-					max[0] -= half;
-					min[1] += half;
-					continue;
-				}
-			}
+			root.children = writable(root, index).children;
 			
-			else if (root.children[3].children != null)
-			{
-				root.children = root.children[3].children;
-				min[0] += half;
-				min[1] += half;
-			}
+			if ((index & 1) == 0) max[0] -= half; else min[0] += half;
+			if ((index & 2) == 0) max[1] -= half; else min[1] += half;
 		}
 	}
 	
@@ -721,22 +913,19 @@ public class Quadtree extends Tree
 			index += 2;
 		}
 		
-		if (half > 1) remove(node.children[index], half >>>= 1,
+		if (half > 1) remove(writable(node, index), half >>>= 1,
 							 node_minX, node_minZ, node_maxX, node_maxZ,
 							 blockX, blockZ
 							 );
 		else
+			writable(node, index).full = false;
+		
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3])
+			)
 		{
-			node.children[index].full = false;
-			if (node.children[0].children == null && 
-				node.children[1].children == null && 
-				node.children[2].children == null && 
-				node.children[3].children == null
-				)
-			{
-				node.full = false;
-				node.children = null;
-			}
+			node.full = false;
+			node.children = null;
 		}
 	}
 	
@@ -744,10 +933,19 @@ public class Quadtree extends Tree
 	@Override
 	public void remove(int... coords) 
 	{
-		remove(root, max[0] - min[0] >>> 1,
-			   this.min[0], this.min[1], this.max[0], this.max[1],
-			   coords[0], coords[1]
-			   );
+		if (min == null || 
+			coords[0] < min[0] || coords[0] >= max[0] ||
+			coords[1] < min[1] || coords[1] >= max[1]
+			)
+			return;
+		
+		if (max[0] - min[0] == 1)
+			root.full = false;
+		else
+			remove(root, max[0] - min[0] >>> 1,
+				   this.min[0], this.min[1], this.max[0], this.max[1],
+				   coords[0], coords[1]
+				   );
 		
 		trimAsNeeded();
 	}
@@ -779,30 +977,20 @@ public class Quadtree extends Tree
 						  int sel_minX,  int sel_minZ,  int sel_maxX,  int sel_maxZ
 						  )
 	{
-		if (!node.full && node.children == null) 
+		if (isEmpty(node) ||
+			node_minX >= sel_maxX || node_maxX <= sel_minX || 
+			node_minZ >= sel_maxZ || node_maxZ <= sel_minZ
+			)
 			return;
 		
-		if (node_minX >= sel_minX)
+		if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+			node_minZ >= sel_minZ && node_maxZ <= sel_maxZ
+			)
 		{
-			if (node_maxX <= sel_maxX)
-			{
-				if (node_minZ >= sel_minZ)
-				{
-					if (node_maxZ <= sel_maxZ)
-					{
-						node.full = false;
-						node.children = null;
-					}
-					return;
-				}
-				if (node_maxZ <= sel_minZ)
-					return;
-			}
-			if (node_minZ >= sel_maxZ || node_maxZ <= sel_minZ)
-				return;
-		}
-		if (node_maxX <= sel_minX || node_minZ >= sel_maxZ || node_maxZ <= sel_minZ)
+			node.full = false;
+			node.children = null;
 			return;
+		}
 		
 		if (node.full) 
 		{
@@ -810,8 +998,8 @@ public class Quadtree extends Tree
 			node.children = Node.fullNodeArray(4);
 		}
 		
-		int midpointX = min[0] + half, 
-			midpointZ = min[1] + half;
+		int midpointX = node_minX + half, 
+			midpointZ = node_minZ + half;
 		
 		half >>>= 1;
 		
@@ -829,28 +1017,28 @@ public class Quadtree extends Tree
 			║         ║         ║
 		  Z	╚═════════╩═════════╝*/
 		
-		remove(node.children[0], half,
+		remove(writable(node, 0), half,
 			   node_minX, node_minZ, midpointX, midpointZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			   );
 		
-		remove(node.children[1], half,
+		remove(writable(node, 1), half,
 			   midpointX, node_minZ, node_maxX, midpointZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			   );
 		
-		remove(node.children[2], half,
+		remove(writable(node, 2), half,
 			   node_minX, midpointZ, midpointX, node_maxZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			   );
 		
-		remove(node.children[3], half,
+		remove(writable(node, 3), half,
 			   midpointX, midpointZ, node_maxX, node_maxZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ
 			   );
 		
-		if (node.children[0].children == null && node.children[1].children == null && 
-			node.children[2].children == null && node.children[3].children == null
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3])
 			)
 		{
 			node.full = false;
@@ -862,6 +1050,9 @@ public class Quadtree extends Tree
 	@Override
 	public void remove(int[]... bounds) 
 	{
+		if (min == null) 
+			return;
+		
 		remove(root, max[0] - min[0] >>> 1,
 			   this.min[0], this.min[1], this.max[0], this.max[1],
 			   bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1]
@@ -930,7 +1121,7 @@ public class Quadtree extends Tree
 	protected void remove(Node node, int half,
 						  int node_minX, int node_minZ, int node_maxX, int node_maxZ, 
 						  int sel_minX,  int sel_minZ,  int sel_maxX,  int sel_maxZ,
-						  BitSet blocks
+						  Selection2D blocks
 						  )
 	{
 		if ((!node.full && node.children == null) ||
@@ -940,23 +1131,34 @@ public class Quadtree extends Tree
 			return;
 		
 		
-		switch (_2D.compareRegion(	node_minX, node_minZ, node_maxX, node_maxZ,
-									sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
-									blocks
-									))
+		switch (blocks.compareRegion(	Math.max(node_minX, sel_minX), 
+										Math.max(node_minZ, sel_minZ), 
+										Math.min(node_maxX, sel_maxX), 
+										Math.min(node_maxZ, sel_maxZ)
+										))
 		{
 			case 0 : break;					//	some blocks removed
 			case 1 : return;				//	no blocks removed
-			case 2 : node.full = false;		//	all blocks removed
-					 node.children = null;
-					 return;
+			case 2 : if (node_minX >= sel_minX && node_maxX <= sel_maxX &&
+						 node_minZ >= sel_minZ && node_maxZ <= sel_maxZ
+						 )
+					 {
+						 node.full = false;	//	all blocks removed
+						 node.children = null;
+						 return;
+					 }
+					 break;
 		}
 		
 		
-		if (node.children == null) node.children = Node.fullNodeArray(4);
+		if (node.full) 
+		{
+			node.full = false;
+			node.children = Node.fullNodeArray(4);
+		}
 		
-		int midpointX = min[0] + half,
-			midpointZ = min[1] + half;
+		int midpointX = node_minX + half,
+			midpointZ = node_minZ + half;
 		
 		half >>>= 1;
 		
@@ -974,49 +1176,160 @@ public class Quadtree extends Tree
 			║         ║         ║
 		  Z	╚═════════╩═════════╝*/
 		
-		remove(node.children[0], half,
+		remove(writable(node, 0), half,
 			   node_minX, node_minZ, midpointX, midpointZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
 			   blocks
 			   );
 		
-		remove(node.children[1], half,
+		remove(writable(node, 1), half,
 			   midpointX, node_minZ, node_maxX, midpointZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
 			   blocks
 			   );
 		
-		remove(node.children[2], half,
+		remove(writable(node, 2), half,
 			   node_minX, midpointZ, midpointX, node_maxZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
 			   blocks
 			   );
 		
-		remove(node.children[3], half,
+		remove(writable(node, 3), half,
 			   midpointX, midpointZ, node_maxX, node_maxZ, 
 			   sel_minX,  sel_minZ,  sel_maxX,  sel_maxZ,
 			   blocks
 			   );
 		
-		if (node.children[0].children == null && node.children[1].children == null && 
-			node.children[2].children == null && node.children[3].children == null
+		if (isEmpty(node.children[0]) && isEmpty(node.children[1]) && 
+			isEmpty(node.children[2]) && isEmpty(node.children[3])
 			)
 		{
 			node.full = false;
 			node.children = null;
 		}
+		else if (node.children[0].full && node.children[1].full && 		//	after a selection that could not tell
+				 node.children[2].full && node.children[3].full
+				 )
+		{
+			node.full = true;
+			node.children = null;
+		}
 	}
 	
 	
 	@Override
 	public void remove(BitSet blocks, int[]... bounds) 
 	{
+		if (min == null) 
+			return;
+		
 		remove(root, max[0] - min[0] >>> 1,
 			   min[0], min[1], max[0], max[1],
 			   bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
-			   blocks
+			   new Selection2D.Dense(blocks, bounds)
 			   );
 		
 		trimAsNeeded();
 	}
+	
+	
+	/**
+	 * Removes the blocks selected in a compressed bitmap. See {@link #add(Bitmap, int[]...)}.
+	 */
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds) 
+	{
+		if (min == null) 
+			return;
+		
+		remove(root, max[0] - min[0] >>> 1,
+			   min[0], min[1], max[0], max[1],
+			   bounds[0][0], bounds[1][0], bounds[0][1], bounds[1][1],
+			   blocks.selection2D(bounds)
+			   );
+		
+		trimAsNeeded();
+	}
+	
+	
+	/**
+	 * Removes the footprint of the columns with any blocks selected.
+	 */
+	@Override
+	public void remove(Columns columns) 
+	{
+		int[][] bounds = columns.bounds();
+		
+		remove(columns.footprint(), bounds[0], bounds[1]);
+	}
+	
+	
+	/**
+	 * Clears the outline of a shape on x and z. See {@link #add(Shape)}.
+	 */
+	@Override
+	public void remove(Shape shape) 
+	{
+		if (min == null) 
+			return;
+		
+		Selection2D outline = shape.outline();
+		
+		remove(root, max[0] - min[0] >>> 1,
+			   min[0], min[1], max[0], max[1],
+			   outline.minX, outline.minZ, outline.maxX, outline.maxZ,
+			   outline
+			   );
+		
+		trimAsNeeded();
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		SET ALGEBRA
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Adds every block of the other tree, combining nodes rather than blocks, 
+	 * and expanding this tree to cover it. See {@link Algebra}.<p>
+	 * 
+	 * Subtrees taken whole from the other tree are not copied, but marked {@link Node#shared shared}, 
+	 * so whichever tree edits one later copies it first. The other tree's blocks are not changed.
+	 */
+	public void union(Quadtree other)
+	{
+		Algebra.combine(this, other, Algebra.UNION);
+	}
+	
+	
+	/**
+	 * Removes every block the other tree does not have. See {@link #union(Quadtree)}.
+	 */
+	public void intersection(Quadtree other)
+	{
+		Algebra.combine(this, other, Algebra.INTERSECTION);
+	}
+	
+	
+	/**
+	 * Removes every block of the other tree. See {@link #union(Quadtree)}.
+	 */
+	public void difference(Quadtree other)
+	{
+		Algebra.combine(this, other, Algebra.DIFFERENCE);
+	}
+	
+	
+	/**
+	 * Adds every block of the other tree that this tree does not have, and removes 
+	 * every block both have. See {@link #union(Quadtree)}.
+	 */
+	public void symmetricDifference(Quadtree other)
+	{
+		Algebra.combine(this, other, Algebra.SYMMETRIC_DIFFERENCE);
+	}
 }
@@ -0,0 +1,479 @@
+package regions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed encoding of the depth-first 2-bit format written by {@link Tree#writeBytes(Node, OutputStream)}.
+ * Each 2-bit code is coded as up to two binary decisions, partial or not and then full or empty,
+ * by an adaptive binary range coder. Probabilities adapt separately for each depth and for the
+ * code of the previous sibling, so long runs of similar nodes at one level cost a small fraction
+ * of a bit each.<p>
+ *
+ * A compressed file starts with a five byte header: {@link #MAGIC}, then 8 or 4 for the number of
+ * branches. The first byte, 0xFF, cannot begin an uncompressed file, whose codes are never 11.
+ * The coded stream carries its own end, which is where the tree is complete.<p>
+ *
+ * {@link Encoder} compresses the raw bytes as a Tree writes them, and {@link Decoder} expands them
+ * as a Tree parses them, so neither holds the uncompressed stream in memory.
+ */
+public class RangeCoder
+{
+	/**
+	 * First four bytes of a compressed file: 0xFF, 'R', 'C', and the version, 1.
+	 */
+	public static final int 	MAGIC 		= 0xFF524301;
+	
+	/**
+	 * Depths past this share the probabilities of this depth.
+	 */
+	protected static final int 	MAX_DEPTH 	= 31;
+	
+	protected static final int 	BITS 		= 11,
+								ONE 		= 1 << BITS,
+								ADAPT 		= 5,
+								TOP 		= 1 << 24;
+	
+	
+	/**
+	 * Whether the buffer's remaining bytes start with a compressed header.
+	 *
+	 * @param buffer		ByteBuffer of source bytes
+	 */
+	public static boolean isCompressed(ByteBuffer buffer)
+	{
+		return buffer.remaining() >= 5 && buffer.getInt(buffer.position()) == MAGIC;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		MODEL
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Adaptive probabilities for each context, and the position in the depth-first walk,
+	 * which encoder and decoder advance identically.
+	 */
+	protected static class Model
+	{
+		protected final int 	branches;
+		
+		/**
+		 * 11-bit probability of a 0 for each context, where the context is
+		 * <tt>depth * 4 + previous sibling's code</tt>, and 3 stands for the first sibling.
+		 */
+		protected final short[] partial,
+								full;
+		
+		/**
+		 * Depth and number of partial children not yet visited, for each partial ancestor.
+		 */
+		protected int[] 		depths 		= new int[16],
+								remaining 	= new int[16];
+		protected int 			top 		= -1;
+		
+		protected boolean 		started;
+		
+		
+		protected Model(int branches) throws IOException
+		{
+			if (branches != 8 && branches != 4)
+				throw new IOException("Invalid number of branches " + branches);
+			
+			this.branches 	= branches;
+			this.partial 	= new short[(MAX_DEPTH + 1) * 4];
+			this.full 		= new short[(MAX_DEPTH + 1) * 4];
+			Arrays.fill(partial, (short) (ONE / 2));
+			Arrays.fill(full, (short) (ONE / 2));
+		}
+		
+		
+		/**
+		 * Depth of the next partial node in depth-first order, or -1 if the tree is complete.
+		 */
+		protected int next()
+		{
+			if (!started)
+				return 0;
+			
+			while (top >= 0 && remaining[top] == 0)
+				top--;
+			if (top < 0)
+				return -1;
+			
+			remaining[top]--;
+			return depths[top];
+		}
+		
+		
+		/**
+		 * Records that the node at the given depth has the given number of partial children.
+		 */
+		protected void visited(int depth, int partials)
+		{
+			started = true;
+			if (partials == 0)
+				return;
+			
+			if (++top == depths.length)
+			{
+				depths 		= Arrays.copyOf(depths, top * 2);
+				remaining 	= Arrays.copyOf(remaining, top * 2);
+			}
+			depths[top] 	= depth + 1;
+			remaining[top] 	= partials;
+		}
+		
+		
+		protected static int context(int depth, int previous)
+		{
+			return Math.min(depth, MAX_DEPTH) << 2 | previous;
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		ENCODER
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Compresses the raw bytes written to it. Writes the header at once, and the end of the
+	 * coded stream on {@link #finish()} or {@link #close()}, which does not close the
+	 * underlying stream.
+	 */
+	public static class Encoder extends OutputStream
+	{
+		protected final OutputStream 	output;
+		protected final Model 			model;
+		protected final byte[] 			group;
+		protected int 					length;
+		
+		protected long 					low 		= 0;
+		protected int 					range 		= -1;
+		protected int 					cache 		= 0;
+		protected long 					cacheSize 	= 1;
+		protected boolean 				finished;
+		
+		
+		/**
+		 * @param output		the OutputStream to write compressed bytes to
+		 * @param branches		8 for an Octree, 4 for a Quadtree
+		 * @throws 				IOException
+		 */
+		public Encoder(OutputStream output, int branches) throws IOException
+		{
+			this.output = output;
+			this.model 	= new Model(branches);
+			this.group 	= new byte[branches / 4];
+			
+			output.write(MAGIC >>> 24);
+			output.write(MAGIC >>> 16);
+			output.write(MAGIC >>> 8);
+			output.write(MAGIC);
+			output.write(branches);
+		}
+		
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			group[length++] = (byte) b;
+			if (length == group.length)
+			{
+				length = 0;
+				encodeGroup();
+			}
+		}
+		
+		
+		/**
+		 * Codes the 2-bit codes of one partial node's children.
+		 */
+		protected void encodeGroup() throws IOException
+		{
+			int depth = model.next();
+			if (depth < 0)
+				throw new IOException("Bytes written past the end of the tree");
+			if (!model.started)
+				encodeBit(null, 0, 1);
+			
+			int previous = 3, partials = 0;
+			for (int i = 0; i < model.branches; i++)
+			{
+				int code 	= group[i >>> 2] >>> (6 - 2 * (i & 3)) & 3,
+					context = Model.context(depth, previous);
+				
+				if (code == 3)
+					throw new IOException("Invalid 2-bit code 11");
+				
+				encodeBit(model.partial, context, code == 0 ? 0 : 1);
+				if (code == 0)
+					partials++;
+				else
+					encodeBit(model.full, context, code == 2 ? 1 : 0);
+				
+				previous = code;
+			}
+			model.visited(depth, partials);
+		}
+		
+		
+		/**
+		 * Codes one bit with the given probability, adapting it. A null array codes with
+		 * a fixed probability of one half.
+		 */
+		protected void encodeBit(short[] probabilities, int i, int bit) throws IOException
+		{
+			int p 		= probabilities == null ? ONE / 2 : probabilities[i],
+				bound 	= (range >>> BITS) * p;
+			
+			if (bit == 0)
+			{
+				range = bound;
+				if (probabilities != null)
+					probabilities[i] = (short) (p + ((ONE - p) >>> ADAPT));
+			}
+			else
+			{
+				low 	+= bound & 0xFFFFFFFFL;
+				range 	-= bound;
+				if (probabilities != null)
+					probabilities[i] = (short) (p - (p >>> ADAPT));
+			}
+			while (Integer.compareUnsigned(range, TOP) < 0)
+			{
+				range <<= 8;
+				shiftLow();
+			}
+		}
+		
+		
+		protected void shiftLow() throws IOException
+		{
+			if (low < 0xFF000000L || low > 0xFFFFFFFFL)
+			{
+				int carry = (int) (low >>> 32),
+					temp  = cache;
+				do
+				{
+					output.write(temp + carry);
+					temp = 0xFF;
+				}
+				while (--cacheSize != 0);
+				cache = (int) (low >>> 24) & 0xFF;
+			}
+			cacheSize++;
+			low = (low & 0x00FFFFFFL) << 8;
+		}
+		
+		
+		/**
+		 * Ends the coded stream. The tree written must be complete.
+		 *
+		 * @throws 				IOException
+		 */
+		public void finish() throws IOException
+		{
+			if (finished)
+				return;
+			finished = true;
+			
+			if (length != 0 || model.started && model.next() >= 0)
+				throw new IOException("Tree ended before it was complete");
+			if (!model.started)
+				encodeBit(null, 0, 0);
+			
+			for (int i = 0; i < 5; i++)
+				shiftLow();
+		}
+		
+		
+		@Override
+		public void flush() throws IOException
+		{
+			output.flush();
+		}
+		
+		
+		@Override
+		public void close() throws IOException
+		{
+			finish();
+			output.flush();
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		DECODER
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Expands a compressed buffer, one partial node at a time, into the raw bytes
+	 * a Tree parses. Ends where the tree is complete.
+	 */
+	public static class Decoder extends InputStream
+	{
+		protected final ByteBuffer 		input;
+		protected final Model 			model;
+		protected final byte[] 			group;
+		protected int 					position;
+		
+		protected int 					range 	= -1;
+		protected int 					code;
+		protected int 					overrun;
+		protected boolean 				done;
+		
+		
+		/**
+		 * Reads the header and starts decoding.
+		 *
+		 * @param input			ByteBuffer of compressed bytes, starting with the header
+		 * @throws 				IOException
+		 */
+		public Decoder(ByteBuffer input) throws IOException
+		{
+			if (!isCompressed(input))
+				throw new IOException("Not a compressed tree");
+			
+			input.getInt();
+			this.input 		= input;
+			this.model 		= new Model(input.get());
+			this.group 		= new byte[model.branches / 4];
+			this.position 	= group.length;
+			
+			for (int i = 0; i < 5; i++)
+				code = code << 8 | nextByte();
+			
+			this.done = decodeBit(null, 0) == 0;
+		}
+		
+		
+		/**
+		 * 8 for an Octree, 4 for a Quadtree.
+		 */
+		public int branches()
+		{
+			return model.branches;
+		}
+		
+		
+		@Override
+		public int read() throws IOException
+		{
+			if (position == group.length && !decodeGroup())
+				return -1;
+			
+			return group[position++] & 0xFF;
+		}
+		
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException
+		{
+			int count = 0;
+			while (count < length)
+			{
+				if (position == group.length && !decodeGroup())
+					break;
+				
+				int n = Math.min(length - count, group.length - position);
+				System.arraycopy(group, position, bytes, offset + count, n);
+				position 	+= n;
+				count 		+= n;
+			}
+			return count == 0 && length > 0 ? -1 : count;
+		}
+		
+		
+		/**
+		 * Decodes the children of the next partial node, or returns false if the tree is complete.
+		 */
+		protected boolean decodeGroup() throws IOException
+		{
+			int depth = done || overrun > 5 ? -1 : model.next();
+			if (depth < 0)
+			{
+				done = true;
+				return false;
+			}
+			
+			int previous = 3, partials = 0;
+			Arrays.fill(group, (byte) 0);
+			for (int i = 0; i < model.branches; i++)
+			{
+				int context = Model.context(depth, previous),
+					code 	= decodeBit(model.partial, context) == 0 ? 0
+							: decodeBit(model.full, context) == 1 ? 2 : 1;
+				
+				if (code == 0)
+					partials++;
+				
+				group[i >>> 2] |= code << (6 - 2 * (i & 3));
+				previous = code;
+			}
+			model.visited(depth, partials);
+			position = 0;
+			return true;
+		}
+		
+		
+		protected int decodeBit(short[] probabilities, int i) throws IOException
+		{
+			int p 		= probabilities == null ? ONE / 2 : probabilities[i],
+				bound 	= (range >>> BITS) * p,
+				bit;
+			
+			if (Integer.compareUnsigned(code, bound) < 0)
+			{
+				range = bound;
+				if (probabilities != null)
+					probabilities[i] = (short) (p + ((ONE - p) >>> ADAPT));
+				bit = 0;
+			}
+			else
+			{
+				code 	-= bound;
+				range 	-= bound;
+				if (probabilities != null)
+					probabilities[i] = (short) (p - (p >>> ADAPT));
+				bit = 1;
+			}
+			while (Integer.compareUnsigned(range, TOP) < 0)
+			{
+				range 	<<= 8;
+				code 	= code << 8 | nextByte();
+			}
+			return bit;
+		}
+		
+		
+		/**
+		 * The next compressed byte. Past the end of a truncated file, zeros, and decoding
+		 * ends soon after, as for a truncated uncompressed file.
+		 */
+		protected int nextByte()
+		{
+			if (input.hasRemaining())
+				return input.get() & 0xFF;
+			
+			overrun++;
+			return 0;
+		}
+	}
+}
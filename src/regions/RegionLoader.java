@@ -0,0 +1,429 @@
+package regions;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Loads every region file under a folder in parallel, on a ForkJoinPool of bounded size,
+ * instead of one at a time on the server thread. {@link #loadAll(File)} returns at once with a
+ * {@link Pending} tree for each file, which can be placed in a {@link Directory} straight away
+ * and which delegates to the loaded tree once it is ready.<p>
+ *
+ * Until then, a Pending tree either blocks, or, if the loader does not block and the file has a
+ * {@link Header}, answers queries by the bounding box in the header: <tt>true</tt> for any
+ * point within the bounds. Region files protect what they contain, so the box errs on the side
+ * of protecting too much until the tree is loaded. Headers are read on the pool too, ahead of
+ * the trees; a query that comes before its file's header waits for the header, and one against
+ * a file without a header waits for the tree. Edits and saves always block.<p>
+ *
+ * Region files are <tt>.oct</tt> files, loaded as Octrees, and <tt>.quad</tt> files,
+ * loaded as Quadtrees. Subclasses can override {@link #open(File)} for other types.
+ */
+public class RegionLoader
+{
+	protected final ForkJoinPool 	pool;
+	
+	/**
+	 * Whether queries against trees not yet loaded block, rather than answering by bounding box.
+	 */
+	public final boolean 			block;
+	
+	protected final List<CompletableFuture<Tree>> 	futures = new ArrayList<CompletableFuture<Tree>>();
+	
+	protected final AtomicLong 		bytes 	= new AtomicLong(),
+									trees 	= new AtomicLong(),
+									start 	= new AtomicLong(),
+									end 	= new AtomicLong();
+	
+	
+	/**
+	 * Creates a loader that parses on a pool of one thread per available processor,
+	 * and answers queries against trees not yet loaded by bounding box.
+	 */
+	public RegionLoader()
+	{
+		this(Runtime.getRuntime().availableProcessors(), false);
+	}
+	
+	
+	/**
+	 * @param parallelism	the number of threads to parse on
+	 * @param block			whether queries against trees not yet loaded block,
+	 * 						rather than answering by bounding box
+	 */
+	public RegionLoader(int parallelism, boolean block)
+	{
+		this.pool 	= new ForkJoinPool(parallelism);
+		this.block 	= block;
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		LOADING
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Finds the region files in the given folder and its subfolders, and starts loading each.
+	 * Returns at once, with the pending trees of each folder that has region files, in
+	 * depth-first order of folders and name order of files, for building {@link Directory}
+	 * objects that mirror the folders.
+	 *
+	 * @param folder		the root folder
+	 * @return				each folder that has region files, mapped to its pending trees
+	 */
+	public Map<File, List<Tree>> loadAll(File folder)
+	{
+		start.compareAndSet(0, System.nanoTime());
+		
+		Map<File, List<Tree>> folders = new LinkedHashMap<File, List<Tree>>();
+		discover(folder, folders);
+		return folders;
+	}
+	
+	
+	protected void discover(File folder, Map<File, List<Tree>> folders)
+	{
+		File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		
+		Arrays.sort(files);
+		
+		List<Tree> pending = new ArrayList<Tree>();
+		for (File file : files)
+			if (file.isFile() && dimensions(file) != 0)
+				pending.add(load(file));
+		
+		if (!pending.isEmpty())
+			folders.put(folder, pending);
+		
+		for (File file : files)
+			if (file.isDirectory())
+				discover(file, folders);
+	}
+	
+	
+	/**
+	 * Starts reading the header of the given region file on the pool, and then loading the file. 
+	 * An invalid header fails the load.
+	 *
+	 * @param file			the region file
+	 * @return				a tree that delegates to the loaded tree once it is ready
+	 */
+	public Pending load(final File file)
+	{
+		start.compareAndSet(0, System.nanoTime());
+		
+		CompletableFuture<Header> header = CompletableFuture.supplyAsync(new Supplier<Header>()
+		{
+			@Override
+			public Header get()
+			{
+				try
+				{
+					return Header.peek(file, dimensions(file));
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+		}, pool);
+		
+		final long length = file.length();
+		CompletableFuture<Tree> future = header.thenApplyAsync(new Function<Header, Tree>()
+		{
+			@Override
+			public Tree apply(Header header)
+			{
+				try
+				{
+					Tree tree = open(file);
+					bytes.addAndGet(length);
+					trees.incrementAndGet();
+					end.set(System.nanoTime());
+					return tree;
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+		}, pool);
+		
+		synchronized (futures)
+		{
+			futures.add(future);
+		}
+		return new Pending(file, header, future, block);
+	}
+	
+	
+	/**
+	 * Number of dimensions of the given region file, or 0 if it is not a region file.
+	 */
+	protected int dimensions(File file)
+	{
+		String name = file.getName();
+		return name.endsWith(".oct") ? 3 : name.endsWith(".quad") ? 2 : 0;
+	}
+	
+	
+	/**
+	 * Loads the given region file. Runs on the pool.
+	 *
+	 * @param file			the region file
+	 * @return				the loaded tree
+	 * @throws 				IOException
+	 */
+	protected Tree open(File file) throws IOException
+	{
+		return dimensions(file) == 3 ? new Octree(file) : new Quadtree(file);
+	}
+	
+	
+	/**
+	 * A future completed when every tree started so far has loaded, or completed
+	 * exceptionally if any failed to load.
+	 */
+	public CompletableFuture<Void> allLoaded()
+	{
+		synchronized (futures)
+		{
+			return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+		}
+	}
+	
+	
+	/**
+	 * Load throughput so far, from the start of loading to the last tree loaded,
+	 * for example <tt>"1204 trees, 96.3 MB in 2.41 s: 40.0 MB/s, 499.6 trees/s"</tt>.
+	 */
+	public String throughput()
+	{
+		long 	count 	= trees.get();
+		double 	mb 		= bytes.get() / 1e6,
+				seconds = Math.max(end.get() - start.get(), 1) / 1e9;
+		
+		return String.format("%d trees, %.1f MB in %.2f s: %.1f MB/s, %.1f trees/s",
+							 count, mb, seconds, mb / seconds, count / seconds
+							 );
+	}
+	
+	
+	/**
+	 * Stops the pool once loading started so far has finished.
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		PENDING TREE
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Stands in for a tree being loaded, and delegates to it once it has loaded.
+	 */
+	public static class Pending extends Tree
+	{
+		protected final CompletableFuture<Header> 	header;
+		protected final CompletableFuture<Tree> 	future;
+		protected final boolean 					block;
+		
+		
+		/**
+		 * @param file			the region file
+		 * @param header		the file's header being read, completed with null if it has none
+		 * @param future		the tree being loaded
+		 * @param block			whether queries block until the tree has loaded,
+		 * 						rather than answering by the header's bounding box
+		 */
+		protected Pending(File file, CompletableFuture<Header> header, CompletableFuture<Tree> future, boolean block)
+		{
+			super(file, new Node(false));
+			
+			this.header = header;
+			this.future = future;
+			this.block 	= block;
+		}
+		
+		
+		/**
+		 * The file's header if it has bounds, waiting for it if it is still being read, or else null.
+		 *
+		 * @throws 			UncheckedIOException if the header is invalid
+		 */
+		protected Header bounds()
+		{
+			Header header = join(this.header);
+			return header != null && header.min != null ? header : null;
+		}
+		
+		
+		/**
+		 * The loaded tree, or null if it is still loading.
+		 *
+		 * @throws 			UncheckedIOException if the tree failed to load
+		 */
+		public Tree loaded()
+		{
+			return future.isDone() ? get() : null;
+		}
+		
+		
+		/**
+		 * The loaded tree, waiting for it if it is still loading.
+		 *
+		 * @throws 			UncheckedIOException if the tree failed to load
+		 */
+		public Tree get()
+		{
+			return join(future);
+		}
+		
+		
+		/**
+		 * The result of the future, with the IOException it failed with, if any, unwrapped.
+		 */
+		protected static <T> T join(CompletableFuture<T> future)
+		{
+			try
+			{
+				return future.join();
+			}
+			catch (RuntimeException e)
+			{
+				if (e.getCause() instanceof UncheckedIOException)
+					throw (UncheckedIOException) e.getCause();
+				throw e;
+			}
+		}
+		
+		
+		/**
+		 * The loaded tree if it has loaded, or if queries block or the file's header has no bounds, 
+		 * the tree once it has loaded, or else null, to answer by bounding box.
+		 */
+		protected Tree query()
+		{
+			Tree tree = block ? get() : loaded();
+			return tree != null || bounds() != null ? tree : get();
+		}
+		
+		
+		/**
+		 * Whether the point is within the bounds from the file's header.
+		 */
+		protected boolean inBounds(int... coords)
+		{
+			Header header = bounds();
+			for (int i = 0; i < coords.length && i < header.min.length; i++)
+				if (coords[i] < header.min[i] || coords[i] >= header.max[i])
+					return false;
+			return true;
+		}
+		
+		
+		@Override
+		public boolean testFor(int... coords)
+		{
+			Tree tree = query();
+			return tree != null ? tree.testFor(coords) : inBounds(coords);
+		}
+		
+		@Override
+		public boolean testFor(int x, int z, int y)
+		{
+			Tree tree = query();
+			return tree != null ? tree.testFor(x, z, y) : inBounds(x, z, y);
+		}
+		
+		@Override
+		public boolean testFor(int x, int z)
+		{
+			Tree tree = query();
+			return tree != null ? tree.testFor(x, z) : inBounds(x, z);
+		}
+		
+		@Override
+		protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+		{
+			Tree tree = query();
+			if (tree != null)
+				return tree.testFor(xs, zs, ys, order, from, to);
+			
+			int end = from;
+			for (int i = from, point; i < to; i++)
+				if (inBounds(xs[point = order[i]], zs[point], ys[point]))
+				{
+					order[i] = order[end];
+					order[end++] = point;
+				}
+			return end - from;
+		}
+		
+		@Override public int[] getMin() 								{ Tree tree = query(); return tree != null ? tree.getMin() : bounds().min.clone(); }
+		@Override public int[] getMax() 								{ Tree tree = query(); return tree != null ? tree.getMax() : bounds().max.clone(); }
+		
+		@Override protected void expandAsNeeded(int... coords) 			{ get().expandAsNeeded(coords); }
+		@Override protected void expandAsNeeded(int[]... bounds) 		{ get().expandAsNeeded(bounds); }
+		@Override public void add(int... coords) 						{ get().add(coords); }
+		@Override public void add(int[]... bounds) 						{ get().add(bounds); }
+		@Override public void add(BitSet blocks, int[]... bounds) 		{ get().add(blocks, bounds); }
+		@Override public void add(Bitmap blocks, int[]... bounds) 		{ get().add(blocks, bounds); }
+		@Override public void add(Columns columns) 						{ get().add(columns); }
+		@Override public void add(Shape shape) 							{ get().add(shape); }
+		@Override public void trimAsNeeded() 							{ get().trimAsNeeded(); }
+		@Override public void remove(int... coords) 					{ get().remove(coords); }
+		@Override public void remove(int[]... bounds) 					{ get().remove(bounds); }
+		@Override public void remove(BitSet blocks, int[]... bounds) 	{ get().remove(blocks, bounds); }
+		@Override public void remove(Bitmap blocks, int[]... bounds) 	{ get().remove(blocks, bounds); }
+		@Override public void remove(Columns columns) 					{ get().remove(columns); }
+		@Override public void remove(Shape shape) 						{ get().remove(shape); }
+		
+		@Override protected Snapshot snapshot() 						{ return get().snapshot(); }
+		@Override protected Snapshot encoded(Snapshot snapshot) 		{ return get().encoded(snapshot); }
+		@Override public void setCompressed(boolean compressed) 		{ get().setCompressed(compressed); }
+		@Override public void compact(NodePool pool) 					{ get().compact(pool); }
+		
+		@Override
+		public void writeBytes(Node node, OutputStream output) throws IOException
+		{
+			get().writeBytes(node, output);
+		}
+		
+		/**
+		 * Not used: a Pending tree does not parse its file itself.
+		 */
+		@Override
+		public Node parseBytes(DataInputStream input, int parentBits) throws IOException
+		{
+			throw new UnsupportedOperationException("Pending trees are parsed by their loader");
+		}
+	}
+}
@@ -0,0 +1,801 @@
+package regions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A region stored as the 16x16x16 chunk sections the server itself works in. A hash table,
+ * keyed by packed section coordinates, maps each section to a full leaf (all blocks in the
+ * region) or to a brick of 4096 bits, indexed as in {@link Octree#setBrickSide(int)}.
+ * Sections with no blocks in the region are absent. A point test is one hash probe and one bit.<p>
+ *
+ * Sections are grouped by chunk column, so a column's sections can be unloaded with its chunk
+ * and loaded again later; see {@link #unloadChunk(int, int)}.<p>
+ *
+ * Each section is saved as its 8-byte key, then 2 (full) or 0 (partial) followed by the brick
+ * in the 2-bit {@link Octree} format.
+ */
+public class SectionTree extends Tree
+{
+	/**
+	 * Side length of a section, as in a Minecraft chunk section.
+	 */
+	public static final int SIDE = 16;
+	
+	
+	/**
+	 * Packs section coordinates into one key: 22 bits of x, 22 bits of z, and 20 bits of y,
+	 * so that all sections of a chunk column share the same <tt>key >> 20</tt>.
+	 *
+	 * @param sectionX		block x >> 4
+	 * @param sectionZ		block z >> 4
+	 * @param sectionY		block y >> 4
+	 */
+	public static long key(int sectionX, int sectionZ, int sectionY)
+	{
+		return (long) sectionX << 42 | ((long) sectionZ & 0x3FFFFF) << 20 | sectionY & 0xFFFFF;
+	}
+	
+	public static int sectionX(long key) { return (int) (key >> 42); }
+	public static int sectionZ(long key) { return (int) (key << 22 >> 42); }
+	public static int sectionY(long key) { return (int) (key << 44 >> 44); }
+	
+	
+	/**
+	 * Open-addressing hash table from section keys to nodes, with linear probing.
+	 * Keys are primitive longs, so a lookup allocates nothing.
+	 */
+	public static class Sections
+	{
+		public long[] 	keys;
+		public Node[] 	values;
+		public int 		size;
+		
+		public Sections(int capacity)
+		{
+			capacity 	= Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+			
+			this.keys 	= new long[capacity];
+			this.values = new Node[capacity];
+			this.size	= 0;
+		}
+		
+		
+		/**
+		 * Home slot of the given key.
+		 *
+		 * @param key			the section key
+		 */
+		protected int slot(long key)
+		{
+			return (int) (key * 0x9E3779B97F4A7C15L >>> 32) & keys.length - 1;
+		}
+		
+		
+		/**
+		 *
+		 * @param key			the section key
+		 * @return				the section, or null if it is absent
+		 */
+		public Node get(long key)
+		{
+			for (int i = slot(key); values[i] != null; i = i + 1 & keys.length - 1)
+				if (keys[i] == key)
+					return values[i];
+			return null;
+		}
+		
+		
+		/**
+		 *
+		 * @param key			the section key
+		 * @param node			the section
+		 */
+		public void put(long key, Node node)
+		{
+			if (size + 1 << 1 > keys.length)
+				resize(keys.length << 1);
+			
+			int i = slot(key);
+			for (; values[i] != null; i = i + 1 & keys.length - 1)
+				if (keys[i] == key)
+				{
+					values[i] = node;
+					return;
+				}
+			keys[i] 	= key;
+			values[i] 	= node;
+			size++;
+		}
+		
+		
+		/**
+		 * Removes the key, then moves later entries of the same probe run back
+		 * into the gap, so that no lookup stops short of its key.
+		 *
+		 * @param key			the section key
+		 * @return				the removed section, or null if it was absent
+		 */
+		public Node remove(long key)
+		{
+			int mask = keys.length - 1, i = slot(key), j, home;
+			for (; values[i] != null; i = i + 1 & mask)
+				if (keys[i] == key)
+					break;
+			
+			Node node = values[i];
+			if (node == null)
+				return null;
+			
+			values[i] = null;
+			size--;
+			
+			for (j = i + 1 & mask; values[j] != null; j = j + 1 & mask)
+			{
+				home = slot(keys[j]);
+				if ((j - home & mask) >= (j - i & mask))
+				{
+					keys[i] 	= keys[j];
+					values[i] 	= values[j];
+					values[j] 	= null;
+					i = j;
+				}
+			}
+			return node;
+		}
+		
+		
+		protected void resize(int capacity)
+		{
+			long[] oldKeys 	 = keys;
+			Node[] oldValues = values;
+			
+			keys 	= new long[capacity];
+			values 	= new Node[capacity];
+			size 	= 0;
+			
+			for (int i = 0; i < oldKeys.length; i++)
+				if (oldValues[i] != null)
+					put(oldKeys[i], oldValues[i]);
+		}
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		FROM BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Reads sections into {@link #sections} until the end of the input.
+	 *
+	 * @return				a childless placeholder node
+	 */
+	@Override
+	public Node parseBytes(DataInputStream input, int parentBits) throws IOException
+	{
+		long key;
+		int b, i, type;
+		Node node;
+		while (true)
+		{
+			key = 0;
+			for (i = 0; i < 8; i++)
+			{
+				if ((b = input.read()) == -1)
+					return new Node(false);
+				key = key << 8 | b;
+			}
+			
+			if ((type = input.read()) == 2)
+				node = new Node(true);
+			else if (type == 0)
+			{
+				node = new Node(false);
+				node.bits = new long[SIDE * SIDE * SIDE >>> 6];
+				Octree.parseBytes(input, node.bits, SIDE, 0, 0, 0, SIDE);
+			}
+			else
+				throw new IOException("Invalid section type " + type + " for section " +
+									  sectionX(key) + ", " + sectionZ(key) + ", " + sectionY(key)
+									  );
+			
+			sections.put(key, node);
+			expandAsNeeded(key);
+		}
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		TO BYTES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Writes every section, loaded or unloaded. The given node is ignored.
+	 */
+	@Override
+	public void writeBytes(Node node, OutputStream output) throws IOException
+	{
+		for (int i = 0; i < sections.keys.length; i++)
+			if (sections.values[i] != null)
+				writeBytes(sections.keys[i], sections.values[i], output);
+		
+		for (byte[] column : unloaded.values())
+			output.write(column);
+	}
+	
+	
+	/**
+	 * Copies the table, and the bits of each partial section, which later edits change in place.
+	 * Unloaded columns are immutable, and are shared.
+	 */
+	@Override
+	protected Snapshot snapshot()
+	{
+		final long[] keys 	 = sections.keys.clone();
+		final Node[] values  = sections.values.clone();
+		final byte[][] columns = unloaded.values().toArray(new byte[unloaded.size()][]);
+		
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null)
+				values[i] = values[i].copy();
+		
+		return new Snapshot()
+		{
+			@Override
+			public void writeTo(OutputStream output) throws IOException
+			{
+				for (int i = 0; i < keys.length; i++)
+					if (values[i] != null)
+						writeBytes(keys[i], values[i], output);
+				
+				for (byte[] column : columns)
+					output.write(column);
+			}
+		};
+	}
+	
+	
+	/**
+	 *
+	 * @param key			the section key
+	 * @param node			the section
+	 * @param output		the OutputStream to write to
+	 * @throws				IOException
+	 */
+	protected static void writeBytes(long key, Node node, OutputStream output) throws IOException
+	{
+		for (int shift = 56; shift >= 0; shift -= 8)
+			output.write((int) (key >>> shift));
+		
+		if (node.full)
+			output.write(2);
+		else
+		{
+			output.write(0);
+			Octree.writeBytes(node.bits, SIDE, 0, 0, 0, SIDE, output);
+		}
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONSTRUCTORS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	protected final Sections 			sections = new Sections(64);
+	
+	/**
+	 * Saved bytes of unloaded chunk columns, keyed by <tt>key >> 20</tt>.
+	 */
+	protected final HashMap<Long, byte[]> unloaded = new HashMap<Long, byte[]>();
+	
+	public SectionTree(File file) throws IOException
+	{
+		super(file, new Node(false));
+		
+		parseBytes(file);
+	}
+	
+	
+	/**
+	 * Number of loaded sections that are not empty.
+	 */
+	public int sectionCount()
+	{
+		return sections.size;
+	}
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CHUNKS
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Moves the sections of the given chunk column out of the table, keeping only their
+	 * saved bytes. They are loaded again by {@link #loadChunk(int, int)}, or on the first
+	 * test or edit that touches them.
+	 *
+	 * @param chunkX		block x >> 4
+	 * @param chunkZ		block z >> 4
+	 */
+	public void unloadChunk(int chunkX, int chunkZ)
+	{
+		if (min == null || unloaded.containsKey(key(chunkX, chunkZ, 0) >> 20))
+			return;
+		
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		long key;
+		Node node;
+		for (int sectionY = min[2] >> 4; sectionY <= max[2] - 1 >> 4; sectionY++)
+		{
+			if ((node = sections.remove(key = key(chunkX, chunkZ, sectionY))) == null)
+				continue;
+			try
+			{
+				writeBytes(key, node, output);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (output.size() > 0)
+			unloaded.put(key(chunkX, chunkZ, 0) >> 20, output.toByteArray());
+	}
+	
+	
+	/**
+	 * Moves the sections of the given chunk column back into the table,
+	 * if they were unloaded by {@link #unloadChunk(int, int)}.
+	 *
+	 * @param chunkX		block x >> 4
+	 * @param chunkZ		block z >> 4
+	 */
+	public void loadChunk(int chunkX, int chunkZ)
+	{
+		load(key(chunkX, chunkZ, 0) >> 20);
+	}
+	
+	
+	/**
+	 *
+	 * @param column		the column key, <tt>key >> 20</tt>
+	 */
+	protected void load(long column)
+	{
+		byte[] bytes = unloaded.remove(column);
+		if (bytes == null)
+			return;
+		try
+		{
+			parseBytes(new DataInputStream(new ByteArrayInputStream(bytes)), 0);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	/**
+	 * Returns the section with the given key, loading its chunk column first if needed.
+	 *
+	 * @param key			the section key
+	 * @return				the section, or null if it has no blocks in the region
+	 */
+	protected Node section(long key)
+	{
+		if (!unloaded.isEmpty())
+			load(key >> 20);
+		
+		return sections.get(key);
+	}
+	
+	
+	/**
+	 * Returns the section with the given key as a brick, creating or converting it if needed.
+	 *
+	 * @param key			the section key
+	 */
+	protected long[] brick(long key)
+	{
+		Node node = section(key);
+		if (node == null)
+			sections.put(key, node = new Node(false));
+		
+		return Octree.brick(node, SIDE);
+	}
+	
+	
+	/**
+	 * Replaces the section with a full leaf, or removes it, if all of its bits are equal.
+	 *
+	 * @param key			the section key
+	 */
+	protected void normalize(long key)
+	{
+		Node node = sections.get(key);
+		
+		Octree.normalize(node, SIDE);
+		if (isEmpty(node))
+			sections.remove(key);
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		TEST FOR POINT(S)																	 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	@Override
+	public boolean testFor(int... coords)
+	{
+		return coords.length == 2 ? testFor(coords[0], coords[1]) : testFor(coords[0], coords[1], coords[2]);
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z, int y)
+	{
+		Node node = section(key(x >> 4, z >> 4, y >> 4));
+		
+		return node != null && (node.full || Octree.getBit(node.bits, SIDE, x & 15, z & 15, y & 15));
+	}
+	
+	
+	@Override
+	public boolean testFor(int x, int z)
+	{
+		if (min == null)
+			return false;
+		
+		Node node;
+		for (int sectionY = min[2] >> 4; sectionY <= max[2] - 1 >> 4; sectionY++)
+		{
+			if ((node = section(key(x >> 4, z >> 4, sectionY))) == null)
+				continue;
+			if (node.full)
+				return true;
+			for (int y = 0; y < SIDE; y++)
+				if (Octree.getBit(node.bits, SIDE, x & 15, z & 15, y))
+					return true;
+		}
+		return false;
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		ADD VOLUME																			 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	/**
+	 * Grows the bounds to contain the given section.
+	 *
+	 * @param key			the section key
+	 */
+	protected void expandAsNeeded(long key)
+	{
+		int x = sectionX(key) << 4, z = sectionZ(key) << 4, y = sectionY(key) << 4;
+		
+		expandAsNeeded(new int[] { x, x + SIDE }, new int[] { z, z + SIDE }, new int[] { y, y + SIDE });
+	}
+	
+	
+	@Override
+	protected void expandAsNeeded(int... coords)
+	{
+		expandAsNeeded(new int[] { coords[0], coords[0] + 1 },
+					   new int[] { coords[1], coords[1] + 1 },
+					   new int[] { coords[2], coords[2] + 1 }
+					   );
+	}
+	
+	
+	/**
+	 * Grows the bounds, aligned to sections, to contain the given bounds.
+	 * No stored data moves, as sections are keyed by absolute coordinates.
+	 */
+	@Override
+	protected void expandAsNeeded(int[]... bounds)
+	{
+		if (min == null)
+		{
+			min = new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+			max = new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+		}
+		for (int axis = 0; axis < 3; axis++)
+		{
+			min[axis] = Math.min(min[axis], bounds[axis][0] & -SIDE);
+			max[axis] = Math.max(max[axis], (bounds[axis][1] - 1 & -SIDE) + SIDE);
+		}
+	}
+	
+	
+	/**
+	 * Calls the given edit for each section overlapping the given bounds, clipped to the section.
+	 *
+	 * @param bounds		min and max coordinates of the selection
+	 * @param edit			the edit
+	 */
+	protected void forEachSection(int[][] bounds, SectionEdit edit)
+	{
+		int sectionX, sectionZ, sectionY, x, z, y;
+		for (sectionY = bounds[2][0] >> 4; sectionY <= bounds[2][1] - 1 >> 4; sectionY++)
+		for (sectionZ = bounds[1][0] >> 4; sectionZ <= bounds[1][1] - 1 >> 4; sectionZ++)
+		for (sectionX = bounds[0][0] >> 4; sectionX <= bounds[0][1] - 1 >> 4; sectionX++)
+		{
+			x = sectionX << 4;
+			z = sectionZ << 4;
+			y = sectionY << 4;
+			
+			edit.apply(key(sectionX, sectionZ, sectionY), x, z, y,
+					   Math.max(bounds[0][0] - x, 0), Math.max(bounds[1][0] - z, 0), Math.max(bounds[2][0] - y, 0),
+					   Math.min(bounds[0][1] - x, SIDE), Math.min(bounds[1][1] - z, SIDE), Math.min(bounds[2][1] - y, SIDE)
+					   );
+		}
+	}
+	
+	
+	/**
+	 * Edit applied by {@link SectionTree#forEachSection(int[][], SectionEdit)}.
+	 */
+	protected static abstract class SectionEdit
+	{
+		/**
+		 *
+		 * @param key			the section key
+		 * @param x				min x of the section
+		 * @param z				min z of the section
+		 * @param y				min y of the section
+		 * @param minX			min x of the selection, relative to the section
+		 * @param minZ			min z of the selection, relative to the section
+		 * @param minY			min y of the selection, relative to the section
+		 * @param maxX			max x of the selection, relative to the section, exclusive
+		 * @param maxZ			max z of the selection, relative to the section, exclusive
+		 * @param maxY			max y of the selection, relative to the section, exclusive
+		 */
+		public abstract void apply(long key, int x, int z, int y,
+								   int minX, int minZ, int minY, int maxX, int maxZ, int maxY
+								   );
+	}
+	
+	
+	/**
+	 * Sets the blocks in the given bounds to the given value, section by section.
+	 * Sections covered entirely become full leaves, or are removed, without a brick.
+	 *
+	 * @param value			the new value of each block
+	 * @param bounds		min and max coordinates of the selection
+	 */
+	protected void set(final boolean value, int[]... bounds)
+	{
+		forEachSection(bounds, new SectionEdit()
+		{
+			@Override
+			public void apply(long key, int x, int z, int y,
+							  int minX, int minZ, int minY, int maxX, int maxZ, int maxY
+							  )
+			{
+				if (minX == 0 && minZ == 0 && minY == 0 && maxX == SIDE && maxZ == SIDE && maxY == SIDE)
+				{
+					if (!unloaded.isEmpty())
+						load(key >> 20);
+					
+					if (value)	sections.put(key, new Node(true));
+					else		sections.remove(key);
+					return;
+				}
+				if (value ? !isFull(key) : section(key) != null)
+				{
+					Octree.fill(brick(key), SIDE, minX, minZ, minY, maxX, maxZ, maxY, value);
+					normalize(key);
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Sets the selected blocks to the given value, section by section.
+	 *
+	 * @param value			the new value of each selected block
+	 * @param blocks		the selected blocks
+	 * @param bounds		min and max coordinates of the selection
+	 */
+	protected void set(final boolean value, final Selection3D blocks, final int[]... bounds)
+	{
+		forEachSection(bounds, new SectionEdit()
+		{
+			@Override
+			public void apply(long key, int x, int z, int y,
+							  int minX, int minZ, int minY, int maxX, int maxZ, int maxY
+							  )
+			{
+				if (value ? isFull(key) : section(key) == null)
+					return;
+				
+				Octree.setBits(brick(key), SIDE, x, z, y,
+							   bounds[0][0], bounds[1][0], bounds[2][0], bounds[0][1], bounds[1][1], bounds[2][1],
+							   blocks, value
+							   );
+				normalize(key);
+			}
+		});
+	}
+	
+	
+	/**
+	 *
+	 * @param key			the section key
+	 * @return				whether the section is a full leaf
+	 */
+	protected boolean isFull(long key)
+	{
+		Node node = section(key);
+		
+		return node != null && node.full;
+	}
+	
+	
+	@Override
+	public void add(int... coords)
+	{
+		expandAsNeeded(coords);
+		
+		long key = key(coords[0] >> 4, coords[1] >> 4, coords[2] >> 4);
+		if (isFull(key))
+			return;
+		
+		Octree.setBit(brick(key), SIDE, coords[0] & 15, coords[1] & 15, coords[2] & 15, true);
+		normalize(key);
+	}
+	
+	
+	@Override
+	public void add(int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+		
+		set(true, bounds);
+	}
+	
+	
+	@Override
+	public void add(BitSet blocks, int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+		
+		set(true, new Selection3D.Dense(blocks, bounds), bounds);
+	}
+	
+	
+	@Override
+	public void add(Bitmap blocks, int[]... bounds)
+	{
+		expandAsNeeded(bounds);
+		
+		set(true, blocks.selection(bounds), bounds);
+	}
+	
+	
+	@Override
+	public void add(Columns columns)
+	{
+		int[][] bounds = columns.bounds();
+		expandAsNeeded(bounds);
+		
+		set(true, columns, bounds);
+	}
+	
+	
+	@Override
+	public void add(Shape shape)
+	{
+		int[][] bounds = shape.bounds();
+		expandAsNeeded(bounds);
+		
+		set(true, shape, bounds);
+	}
+	
+	
+	/*
+	╔══════════════════════════════════════════════════════════════════════════════════════════════╗
+	║ ╔══════════════════════════════════════════════════════════════════════════════════════════╗ ║
+	║ ║																							 ║ ║
+	║ ║		REMOVE VOLUME																		 ║ ║
+	║ ║																							 ║ ║
+	║ ╚══════════════════════════════════════════════════════════════════════════════════════════╝ ║
+	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
+	
+	
+	/**
+	 * Shrinks the bounds to the loaded sections. Does nothing while any chunk column is
+	 * unloaded, as the bounds must still cover its sections.
+	 */
+	@Override
+	public void trimAsNeeded()
+	{
+		if (!unloaded.isEmpty())
+			return;
+		
+		min = max = null;
+		for (int i = 0; i < sections.keys.length; i++)
+			if (sections.values[i] != null)
+				expandAsNeeded(sections.keys[i]);
+	}
+	
+	
+	@Override
+	public void remove(int... coords)
+	{
+		long key = key(coords[0] >> 4, coords[1] >> 4, coords[2] >> 4);
+		if (section(key) == null)
+			return;
+		
+		Octree.setBit(brick(key), SIDE, coords[0] & 15, coords[1] & 15, coords[2] & 15, false);
+		normalize(key);
+	}
+	
+	
+	@Override
+	public void remove(int[]... bounds)
+	{
+		set(false, bounds);
+	}
+	
+	
+	@Override
+	public void remove(BitSet blocks, int[]... bounds)
+	{
+		set(false, new Selection3D.Dense(blocks, bounds), bounds);
+	}
+	
+	
+	@Override
+	public void remove(Bitmap blocks, int[]... bounds)
+	{
+		set(false, blocks.selection(bounds), bounds);
+	}
+	
+	
+	@Override
+	public void remove(Columns columns)
+	{
+		set(false, columns, columns.bounds());
+	}
+	
+	
+	@Override
+	public void remove(Shape shape)
+	{
+		set(false, shape, shape.bounds());
+	}
+}
@@ -0,0 +1,543 @@
+package regions;
+
+import regions.BitRegionUtil.Selection2D;
+import regions.BitRegionUtil.Selection3D;
+
+/**
+ * A solid described analytically, to fill or clear without rasterizing it. A block belongs to
+ * the shape if its center does, so <tt>(x, z, y)</tt> is tested at <tt>(x + 0.5, z + 0.5, y + 0.5)</tt>.
+ * The bounds are the blocks the shape may touch.<p>
+ *
+ * {@link #compareRegion(int, int, int, int, int, int)} compares the shape with the box of the
+ * block centers in a node: inside, outside, or crossing its surface. Tests that cannot tell
+ * answer crossing, which only costs a subdivision; a single block is always tested exactly.
+ * The bulk edits of an Octree or SectionTree subdivide only nodes that cross the surface, so
+ * a fill costs the shape's surface rather than its volume. A Quadtree fills the shape's
+ * {@link #outline()} on x and z.
+ */
+public abstract class Shape extends Selection3D
+{
+	/**
+	 * @param bounds		Min and max coordinates of the blocks the shape may touch
+	 */
+	protected Shape(int[]... bounds)
+	{
+		super(bounds);
+	}
+	
+	
+	/**
+	 * Whether the point is inside the shape.
+	 */
+	public abstract boolean contains(double x, double z, double y);
+	
+	
+	/**
+	 * Compares the shape with a box of points.
+	 *
+	 * @return				2 (all inside), 1 (all outside), or 0 (crossing, or cannot tell)
+	 */
+	public abstract int compareBox(double minX, double minZ, double minY, double maxX, double maxZ, double maxY);
+	
+	
+	/**
+	 * Whether the point is inside the shape's outline on x and z.
+	 *
+	 * @throws 				UnsupportedOperationException if the shape has no outline
+	 */
+	public boolean outlineContains(double x, double z)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no outline");
+	}
+	
+	
+	/**
+	 * Compares the shape's outline on x and z with a box of points.
+	 *
+	 * @return				2 (all inside), 1 (all outside), or 0 (crossing, or cannot tell)
+	 * @throws 				UnsupportedOperationException if the shape has no outline
+	 */
+	public int compareOutline(double minX, double minZ, double maxX, double maxZ)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no outline");
+	}
+	
+	
+	@Override
+	public int compareRegion(int minX1, int minZ1, int minY1, int maxX1, int maxZ1, int maxY1)
+	{
+		if (maxX1 - minX1 == 1 && maxZ1 - minZ1 == 1 && maxY1 - minY1 == 1)
+			return get(minX1, minZ1, minY1) ? 2 : 1;
+		
+		return compareBox(minX1 + 0.5, minZ1 + 0.5, minY1 + 0.5, maxX1 - 0.5, maxZ1 - 0.5, maxY1 - 0.5);
+	}
+	
+	
+	@Override
+	public boolean get(int x, int z, int y)
+	{
+		return contains(x + 0.5, z + 0.5, y + 0.5);
+	}
+	
+	
+	/**
+	 * The shape's outline on x and z, as the selection a Quadtree fills:
+	 * the blocks whose centers are inside the outline.
+	 *
+	 * @throws 				UnsupportedOperationException if the shape has no outline
+	 */
+	public Selection2D outline()
+	{
+		return new Selection2D(new int[] { minX, maxX }, new int[] { minZ, maxZ })
+		{
+			@Override
+			public int compareRegion(int minX1, int minZ1, int maxX1, int maxZ1)
+			{
+				if (maxX1 - minX1 == 1 && maxZ1 - minZ1 == 1)
+					return outlineContains(minX1 + 0.5, minZ1 + 0.5) ? 2 : 1;
+				
+				return compareOutline(minX1 + 0.5, minZ1 + 0.5, maxX1 - 0.5, maxZ1 - 0.5);
+			}
+		};
+	}
+	
+	
+	/**
+	 * Compares an ellipse or ellipsoid, in coordinates scaled to a unit circle or sphere, with
+	 * a box: the nearest point of the box against the farthest.
+	 *
+	 * @param near			squared distance to the nearest point of the box
+	 * @param far			squared distance to the farthest point of the box
+	 */
+	protected static int compareUnit(double near, double far)
+	{
+		return near > 1 ? 1 : far <= 1 ? 2 : 0;
+	}
+	
+	
+	/**
+	 * Distance on one axis from a value to the nearest point of a range, or 0 if within it.
+	 */
+	protected static double near(double center, double min, double max)
+	{
+		return center < min ? min - center : center > max ? center - max : 0;
+	}
+	
+	
+	/**
+	 * Distance on one axis from a value to the farthest point of a range.
+	 */
+	protected static double far(double center, double min, double max)
+	{
+		return Math.max(Math.abs(min - center), Math.abs(max - center));
+	}
+	
+	
+	/**
+	 * Compares a range on y with <tt>[bottom, top]</tt>.
+	 */
+	protected static int compareRange(double min, double max, double bottom, double top)
+	{
+		return max < bottom || min > top ? 1 : min >= bottom && max <= top ? 2 : 0;
+	}
+	
+	
+	/**
+	 * Combines the comparisons of the outline and of the range on y of a vertical solid.
+	 */
+	protected static int combine(int outline, int range)
+	{
+		return outline == 1 || range == 1 ? 1 : outline == 2 && range == 2 ? 2 : 0;
+	}
+	
+	
+	/**
+	 * The blocks that points from <tt>min</tt> to <tt>max</tt> may fall in.
+	 */
+	protected static int[] bounds(double min, double max)
+	{
+		return new int[] { (int) Math.floor(min), (int) Math.floor(max) + 1 };
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		ELLIPSOID
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	public static class Ellipsoid extends Shape
+	{
+		public final double 	centerX, centerZ, centerY,
+								radiusX, radiusZ, radiusY;
+		
+		
+		public Ellipsoid(double centerX, double centerZ, double centerY,
+						 double radiusX, double radiusZ, double radiusY
+						 )
+		{
+			super(bounds(centerX - radiusX, centerX + radiusX),
+				  bounds(centerZ - radiusZ, centerZ + radiusZ),
+				  bounds(centerY - radiusY, centerY + radiusY)
+				  );
+			
+			this.centerX = centerX;		this.radiusX = radiusX;
+			this.centerZ = centerZ;		this.radiusZ = radiusZ;
+			this.centerY = centerY;		this.radiusY = radiusY;
+		}
+		
+		
+		@Override
+		public boolean contains(double x, double z, double y)
+		{
+			x = (x - centerX) / radiusX;
+			z = (z - centerZ) / radiusZ;
+			y = (y - centerY) / radiusY;
+			return x * x + z * z + y * y <= 1;
+		}
+		
+		
+		@Override
+		public int compareBox(double minX, double minZ, double minY, double maxX, double maxZ, double maxY)
+		{
+			double nearX = near(centerX, minX, maxX) / radiusX, farX = far(centerX, minX, maxX) / radiusX,
+				   nearZ = near(centerZ, minZ, maxZ) / radiusZ, farZ = far(centerZ, minZ, maxZ) / radiusZ,
+				   nearY = near(centerY, minY, maxY) / radiusY, farY = far(centerY, minY, maxY) / radiusY;
+			
+			return compareUnit(nearX * nearX + nearZ * nearZ + nearY * nearY,
+							   farX  * farX  + farZ  * farZ  + farY  * farY
+							   );
+		}
+		
+		
+		@Override
+		public boolean outlineContains(double x, double z)
+		{
+			x = (x - centerX) / radiusX;
+			z = (z - centerZ) / radiusZ;
+			return x * x + z * z <= 1;
+		}
+		
+		
+		@Override
+		public int compareOutline(double minX, double minZ, double maxX, double maxZ)
+		{
+			double nearX = near(centerX, minX, maxX) / radiusX, farX = far(centerX, minX, maxX) / radiusX,
+				   nearZ = near(centerZ, minZ, maxZ) / radiusZ, farZ = far(centerZ, minZ, maxZ) / radiusZ;
+			
+			return compareUnit(nearX * nearX + nearZ * nearZ, farX * farX + farZ * farZ);
+		}
+	}
+	
+	
+	public static class Sphere extends Ellipsoid
+	{
+		public Sphere(double centerX, double centerZ, double centerY, double radius)
+		{
+			super(centerX, centerZ, centerY, radius, radius, radius);
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CYLINDER
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * An upright cylinder, with its axis along y.
+	 */
+	public static class Cylinder extends Shape
+	{
+		public final double 	centerX, centerZ, radius,
+								bottom, top;
+		
+		
+		/**
+		 * @param centerX		x of the axis
+		 * @param centerZ		z of the axis
+		 * @param radius		radius
+		 * @param bottom		min y
+		 * @param top			max y
+		 */
+		public Cylinder(double centerX, double centerZ, double radius, double bottom, double top)
+		{
+			super(bounds(centerX - radius, centerX + radius),
+				  bounds(centerZ - radius, centerZ + radius),
+				  bounds(bottom, top)
+				  );
+			
+			this.centerX 	= centerX;
+			this.centerZ 	= centerZ;
+			this.radius 	= radius;
+			this.bottom 	= bottom;
+			this.top 		= top;
+		}
+		
+		
+		@Override
+		public boolean contains(double x, double z, double y)
+		{
+			return y >= bottom && y <= top && outlineContains(x, z);
+		}
+		
+		
+		@Override
+		public int compareBox(double minX, double minZ, double minY, double maxX, double maxZ, double maxY)
+		{
+			return combine(compareOutline(minX, minZ, maxX, maxZ), compareRange(minY, maxY, bottom, top));
+		}
+		
+		
+		@Override
+		public boolean outlineContains(double x, double z)
+		{
+			x -= centerX;
+			z -= centerZ;
+			return x * x + z * z <= radius * radius;
+		}
+		
+		
+		@Override
+		public int compareOutline(double minX, double minZ, double maxX, double maxZ)
+		{
+			double nearX = near(centerX, minX, maxX), farX = far(centerX, minX, maxX),
+				   nearZ = near(centerZ, minZ, maxZ), farZ = far(centerZ, minZ, maxZ),
+				   square = radius * radius;
+			
+			return nearX * nearX + nearZ * nearZ > square ? 1 : farX * farX + farZ * farZ <= square ? 2 : 0;
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		CONVEX POLYHEDRON
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * A convex polyhedron, the intersection of half-spaces <tt>a x + b z + c y <= d</tt>.
+	 * A box is inside if all its corners are inside every half-space, and outside if all its
+	 * corners are outside any one of them. Boxes outside the polyhedron but not outside any
+	 * one half-space, near its edges, are subdivided.<p>
+	 * 
+	 * Its outline is its shadow on x and z: the points above or below which some point between the 
+	 * lowest and highest block centers of the bounds is inside every half-space. The shadow of a convex 
+	 * polyhedron is convex, so a box is inside the outline exactly when its four corners are.
+	 */
+	public static class Polyhedron extends Shape
+	{
+		/**
+		 * <tt>{ a, b, c, d }</tt> of each half-space.
+		 */
+		protected final double[][] 	planes;
+		
+		
+		/**
+		 * @param planes		<tt>{ a, b, c, d }</tt> of each half-space <tt>a x + b z + c y <= d</tt>
+		 * @param bounds		Min and max coordinates of the blocks the polyhedron may touch
+		 */
+		public Polyhedron(double[][] planes, int[]... bounds)
+		{
+			super(bounds);
+			
+			this.planes = planes.clone();
+		}
+		
+		
+		@Override
+		public boolean contains(double x, double z, double y)
+		{
+			for (double[] plane : planes)
+				if (plane[0] * x + plane[1] * z + plane[2] * y > plane[3])
+					return false;
+			return true;
+		}
+		
+		
+		@Override
+		public int compareBox(double minX, double minZ, double minY, double maxX, double maxZ, double maxY)
+		{
+			boolean inside = true;
+			for (double[] plane : planes)
+			{
+				double a = plane[0], b = plane[1], c = plane[2],
+					
+					   least 	= a * (a > 0 ? minX : maxX) + b * (b > 0 ? minZ : maxZ) + c * (c > 0 ? minY : maxY),
+					   most 	= a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxZ : minZ) + c * (c > 0 ? maxY : minY);
+				
+				if (least > plane[3])
+					return 1;
+				if (most > plane[3])
+					inside = false;
+			}
+			return inside ? 2 : 0;
+		}
+		
+		
+		/**
+		 * Whether some y from the lowest to the highest block center of the bounds satisfies 
+		 * every half-space at the given x and z. Each half-space bounds y from above or below, 
+		 * or, if it is vertical, holds or fails for all y.
+		 */
+		@Override
+		public boolean outlineContains(double x, double z)
+		{
+			double low 	= minY + 0.5,
+				   high = maxY - 0.5,
+				   rest;
+			
+			for (double[] plane : planes)
+			{
+				rest = plane[3] - plane[0] * x - plane[1] * z;
+				
+				if 		(plane[2] > 0) 	high = Math.min(high, rest / plane[2]);
+				else if (plane[2] < 0) 	low  = Math.max(low,  rest / plane[2]);
+				else if (rest < 0) 		return false;
+			}
+			return low <= high;
+		}
+		
+		
+		@Override
+		public int compareOutline(double minX, double minZ, double maxX, double maxZ)
+		{
+			if (compareBox(minX, minZ, minY + 0.5, maxX, maxZ, maxY - 0.5) == 1)
+				return 1;
+			
+			return outlineContains(minX, minZ) && outlineContains(maxX, minZ) &&
+				   outlineContains(minX, maxZ) && outlineContains(maxX, maxZ)
+				   
+				   ? 2 : 0;
+		}
+	}
+	
+	
+	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		PRISM
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * A polygon on x and z, extruded along y. The polygon may be concave; points are inside
+	 * by the even-odd rule. A box is crossing if any edge of the polygon meets it, and otherwise
+	 * is inside or outside as its first corner is.
+	 */
+	public static class Prism extends Shape
+	{
+		protected final double[] 	xs, zs;
+		public final double 		bottom, top;
+		
+		
+		/**
+		 * @param xs			x of each vertex of the polygon
+		 * @param zs			z of each vertex of the polygon
+		 * @param bottom		min y
+		 * @param top			max y
+		 */
+		public Prism(double[] xs, double[] zs, double bottom, double top)
+		{
+			super(bounds(min(xs), max(xs)), bounds(min(zs), max(zs)), bounds(bottom, top));
+			
+			if (xs.length != zs.length || xs.length < 3)
+				throw new IllegalArgumentException("A polygon needs at least 3 vertices, each with x and z");
+			
+			this.xs 	= xs.clone();
+			this.zs 	= zs.clone();
+			this.bottom = bottom;
+			this.top 	= top;
+		}
+		
+		
+		protected static double min(double[] values)
+		{
+			double min = Double.POSITIVE_INFINITY;
+			for (double value : values)
+				min = Math.min(min, value);
+			return min;
+		}
+		
+		
+		protected static double max(double[] values)
+		{
+			double max = Double.NEGATIVE_INFINITY;
+			for (double value : values)
+				max = Math.max(max, value);
+			return max;
+		}
+		
+		
+		@Override
+		public boolean contains(double x, double z, double y)
+		{
+			return y >= bottom && y <= top && outlineContains(x, z);
+		}
+		
+		
+		@Override
+		public int compareBox(double minX, double minZ, double minY, double maxX, double maxZ, double maxY)
+		{
+			return combine(compareOutline(minX, minZ, maxX, maxZ), compareRange(minY, maxY, bottom, top));
+		}
+		
+		
+		@Override
+		public boolean outlineContains(double x, double z)
+		{
+			boolean inside = false;
+			for (int i = 0, j = xs.length - 1; i < xs.length; j = i++)
+				if ((zs[i] > z) != (zs[j] > z) &&
+					x < (xs[j] - xs[i]) * (z - zs[i]) / (zs[j] - zs[i]) + xs[i]
+					)
+					inside = !inside;
+			return inside;
+		}
+		
+		
+		@Override
+		public int compareOutline(double minX, double minZ, double maxX, double maxZ)
+		{
+			for (int i = 0, j = xs.length - 1; i < xs.length; j = i++)
+				if (crosses(xs[j], zs[j], xs[i], zs[i], minX, minZ, maxX, maxZ))
+					return 0;
+			
+			return outlineContains(minX, minZ) ? 2 : 1;
+		}
+		
+		
+		/**
+		 * Whether the segment from <tt>(ax, az)</tt> to <tt>(bx, bz)</tt> meets the box: if their
+		 * extents overlap, and the box's corners are not all on one side of the segment's line.
+		 */
+		protected static boolean crosses(double ax, double az, double bx, double bz,
+										 double minX, double minZ, double maxX, double maxZ
+										 )
+		{
+			if (Math.max(ax, bx) < minX || Math.min(ax, bx) > maxX ||
+				Math.max(az, bz) < minZ || Math.min(az, bz) > maxZ
+				)
+				return false;
+			
+			double nx = bz - az,
+				   nz = ax - bx,
+				   s0 = nx * (minX - ax) + nz * (minZ - az),
+				   s1 = nx * (maxX - ax) + nz * (minZ - az),
+				   s2 = nx * (minX - ax) + nz * (maxZ - az),
+				   s3 = nx * (maxX - ax) + nz * (maxZ - az);
+			
+			return !(s0 > 0 && s1 > 0 && s2 > 0 && s3 > 0) &&
+				   !(s0 < 0 && s1 < 0 && s2 < 0 && s3 < 0);
+		}
+	}
+}
@@ -1,13 +1,28 @@
 package regions;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A superclass for octrees and quadtrees. Concept credit to Don Meagher, who first named and 
@@ -31,12 +46,15 @@ import java.util.BitSet;
 public abstract class Tree extends BitRegionUtil
 {
 	/**
-	 * Tree node containing a boolean and an array of sub-nodes
+	 * Tree node containing a boolean and an array of sub-nodes. A node may instead hold a 
+	 * bitmap of its blocks, or brick, in place of sub-nodes (see {@link Octree#setBrickSide(int)}).
 	 */
 	public static class Node
 	{
 		public boolean 	full;
+		public boolean 	shared;
 		public Node[] 	children;
+		public long[]	bits;
 
 		public Node(boolean full)
 		{
@@ -78,6 +96,111 @@ public abstract class Tree extends BitRegionUtil
 			}
 			return array;
 		}
+		
+		/**
+		 * Returns an unshared copy of this node, with its own copy of the children array.
+		 * The children themselves are not copied. If this node is shared, its children are 
+		 * marked shared as well, as they are still reachable through it.
+		 */
+		public Node copy()
+		{
+			Node copy = new Node(full);
+			if (children != null)
+			{
+				copy.children = children.clone();
+				if (shared)
+					for (Node child : children)
+						child.shared = true;
+			}
+			if (bits != null)
+				copy.bits = bits.clone();
+			return copy;
+		}
+	}
+	
+	
+	/**
+	 * Canonicalizing table of shared nodes. Interning a tree turns it into a directed acyclic
+	 * graph, where all empty leaves, all full leaves, and all identical subtrees are one instance.
+	 * Interned nodes are marked {@link Node#shared shared}, and are copied on write by 
+	 * {@link Tree#writable(Node, int)} before any edit. A single pool may be used by many trees.
+	 */
+	public static class NodePool
+	{
+		public static final Node EMPTY = new Node(false),
+								 FULL  = new Node(true);
+		static
+		{
+			EMPTY.shared = true;
+			FULL .shared = true;
+		}
+		
+		/**
+		 * Interned nodes, keyed by a list view of their children. Because children are interned
+		 * before their parents, and Node does not override equals(), comparing children by 
+		 * identity is enough to find identical subtrees.
+		 */
+		protected final HashMap<List<Node>, Node> table = new HashMap<List<Node>, Node>();
+		
+		/**
+		 * Interned bricks, keyed by a buffer view of their bits, which compares by content.
+		 */
+		protected final HashMap<LongBuffer, Node> bricks = new HashMap<LongBuffer, Node>();
+		
+		/**
+		 * Returns the shared instance of the given subtree, interning its descendants first.
+		 * The given node is not modified.
+		 * 
+		 * @param node		root of the subtree to intern
+		 */
+		public synchronized Node intern(Node node)
+		{
+			if (node.shared) 			return node;
+			if (node.full) 				return FULL;
+			if (node.bits != null)
+			{
+				Node canonical = bricks.get(LongBuffer.wrap(node.bits));
+				if (canonical == null)
+				{
+					canonical = node.copy();
+					canonical.shared = true;
+					bricks.put(LongBuffer.wrap(canonical.bits), canonical);
+				}
+				return canonical;
+			}
+			if (node.children == null) 	return EMPTY;
+			
+			Node[] children = new Node[node.children.length];
+			for (int i = 0; i < children.length; i++)
+				children[i] = intern(node.children[i]);
+			
+			List<Node> key = Arrays.asList(children);
+			Node canonical = table.get(key);
+			if (canonical == null)
+			{
+				canonical = new Node(children);
+				canonical.shared = true;
+				table.put(key, canonical);
+			}
+			return canonical;
+		}
+		
+		/**
+		 * Number of distinct partial nodes in the pool.
+		 */
+		public synchronized int size()
+		{
+			return table.size() + bricks.size();
+		}
+		
+		/**
+		 * Empties the pool. Nodes already interned stay shared, and are still copied on write.
+		 */
+		public synchronized void clear()
+		{
+			table.clear();
+			bricks.clear();
+		}
 	}
 	
 	
@@ -135,6 +258,9 @@ public abstract class Tree extends BitRegionUtil
 	 * and 10 = full (<tt>true</tt>). Octree nodes use 2 bytes each, Quadtree nodes use 1 byte each. 
 	 * Assumes a depth-first arrangement.<p>
 	 * 
+	 * If the file starts with a {@link Header}, validates it and takes the bounds and node count 
+	 * from it. Files without a header, saved before headers were written, load as before.
+	 * 
 	 * @param file			binary file to read bytes from
 	 * @return 				a new Node
 	 * @throws 				IOException 	
@@ -142,11 +268,145 @@ public abstract class Tree extends BitRegionUtil
 	public Node parseBytes(File file) throws IOException
 	{
 		if (file.length() == 0) return new Node(false);
+		
+		ByteBuffer buffer = readBytes(file);
+		if (branches() != 0 && Header.isHeader(buffer))
+		{
+			Header header = Header.read(buffer, branches() == 8 ? 3 : 2);
+			if (header.min != null)
+			{
+				min = header.min;
+				max = header.max;
+			}
+			nodeCount = header.nodes;
+		}
+		if (branches() != 0 && RangeCoder.isCompressed(buffer))
+		{
+			compressed = true;
+			return parseBytes(new RangeCoder.Decoder(buffer));
+		}
+		return parseBytes(buffer);
+	}
 	
-		DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream(file) ));
-		Node node = parseBytes(input);
-		input.close();
-		return node;
+	
+	/**
+	 * Parses a compressed file as it is decoded, through {@link #parseBytes(DataInputStream)}.
+	 * 
+	 * @param decoder		the decoder of the compressed bytes
+	 * @return 				a new Node
+	 * @throws 				IOException 	
+	 */
+	public Node parseBytes(RangeCoder.Decoder decoder) throws IOException
+	{
+		if (decoder.branches() != branches())
+			throw new IOException("Compressed tree has " + decoder.branches() + " branches, expected " + branches());
+		
+		return parseBytes(new DataInputStream(decoder));
+	}
+	
+	
+	/**
+	 * Reads the whole file into a heap ByteBuffer with a single channel read loop.
+	 * 
+	 * @param file			binary file to read bytes from
+	 * @return				a ByteBuffer of the file's contents, ready to read
+	 * @throws 				IOException
+	 */
+	public static ByteBuffer readBytes(File file) throws IOException
+	{
+		FileInputStream input = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = input.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1);
+			buffer.flip();
+			return buffer;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	
+	/**
+	 * Parses the remaining bytes of the buffer. By default, reads them through
+	 * {@link #parseBytes(DataInputStream)}; Octree and Quadtree override this with
+	 * {@link #parseBytes(ByteBuffer, int)}, which does not recurse.
+	 * 
+	 * @param buffer		ByteBuffer of source bytes
+	 * @return 				a new Node
+	 * @throws 				IOException 	
+	 */
+	public Node parseBytes(ByteBuffer buffer) throws IOException
+	{
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		
+		return parseBytes(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	
+	
+	/**
+	 * Reads the depth-first 2-bit format without recursion. Each partial node reads 
+	 * <tt>branches / 4</tt> bytes at once, and an explicit stack holds the child array, 
+	 * 2-bit codes, and next child index of each partial ancestor, so a deep or corrupt 
+	 * file cannot overflow the call stack.<p>
+	 * 
+	 * Full and empty leaves are the shared {@link NodePool#FULL} and {@link NodePool#EMPTY},
+	 * which edits replace through {@link #writable(Node, int)}, so only partial nodes are allocated.
+	 * As in the recursive parser, a partial node with no bytes left becomes an empty leaf.
+	 * 
+	 * @param buffer		ByteBuffer of source bytes
+	 * @param branches		8 for an Octree, 4 for a Quadtree
+	 * @return 				a new Node
+	 */
+	public static Node parseBytes(ByteBuffer buffer, int branches)
+	{
+		int width = branches >>> 2;
+		
+		Node root = new Node(false);
+		if (buffer.remaining() < width)
+			return root;
+		
+		Node[][] 	children 	= new Node[32][];
+		int[]		codes		= new int[32],
+					next		= new int[32];
+		
+		int depth = 0, index, bits;
+		
+		children[0] = root.children = new Node[branches];
+		codes[0] 	= width == 2 ? buffer.getShort() & 0xFFFF : buffer.get() & 0xFF;
+		
+		while (depth >= 0)
+		{
+			if ((index = next[depth]++) == branches)
+			{
+				depth--;
+				continue;
+			}
+			bits = codes[depth] >>> (branches - 1 - index) * 2 & 3;
+			
+			if 		(bits == 2)						children[depth][index] = NodePool.FULL;
+			else if (bits == 1 ||
+					 buffer.remaining() < width)	children[depth][index] = NodePool.EMPTY;
+			else
+			{
+				Node node = children[depth][index] = new Node(false);
+				
+				if (++depth == codes.length)
+				{
+					children 	= Arrays.copyOf(children, depth << 1);
+					codes 		= Arrays.copyOf(codes, depth << 1);
+					next 		= Arrays.copyOf(next, depth << 1);
+				}
+				children[depth] = node.children = new Node[branches];
+				codes[depth] 	= width == 2 ? buffer.getShort() & 0xFFFF : buffer.get() & 0xFF;
+				next[depth] 	= 0;
+			}
+		}
+		return root;
 	}
 	
 	
@@ -163,11 +423,22 @@ public abstract class Tree extends BitRegionUtil
 	 * to construct the parent byte from the bits of four child nodes, xx xx xx xx.<p>
 	 * 
 	 * @param node 			the node to evaluate
-	 * @return				2 (full), 1 (empty), or 0 (has children)
+	 * @return				2 (full), 1 (empty), or 0 (has children or bits)
 	 */
 	public static byte getBits(Node node)
 	{
-		return 	node.full ?	(byte) 2 : node.children == null ? (byte) 1 : (byte) 0;
+		return 	node.full ?	(byte) 2 : isEmpty(node) ? (byte) 1 : (byte) 0;
+	}
+	
+	
+	/**
+	 * Whether the node is an empty leaf: not full, and without children or bits.
+	 * 
+	 * @param node 			the node to evaluate
+	 */
+	public static boolean isEmpty(Node node)
+	{
+		return !node.full && node.children == null && node.bits == null;
 	}
 	
 	
@@ -212,63 +483,302 @@ public abstract class Tree extends BitRegionUtil
 		OVERLOADS : saveToFile()
 	-------------------------------------*/
 	/**
-	 * Performs <tt>{@link #writeBytes(Node, OutputStream)}</tt> from the root node, 
-	 * using a FileOutputStream of the source file as the OutputStream argument.
+	 * Saves the root node to the source file. See {@link #saveToFile(Node, File)}.
 	 * 
-	 * @param node			the root node of the tree to be parsed
-	 * @param destination	the file to save to
 	 * @throws 				IOException
 	 */
 	public void saveToFile() throws IOException
 	{
-		FileOutputStream output = new FileOutputStream (new File(file.getAbsolutePath()), true);
-		writeBytes(root, output);
-		output.close();
+		writeAtomically(file, encoded(snapshot()));
 	}
 	
 	/**
-	 * Performs <tt>{@link #writeBytes(Node, OutputStream)}</tt> from the given node, 
-	 * using a FileOutputStream of the source file as the OutputStream argument.
+	 * Saves the given node to the source file. See {@link #saveToFile(Node, File)}.
 	 * 
-	 * @param node			the root node of the tree to be parsed
-	 * @param destination	the file to save to
+	 * @param node			the root node of the tree to be saved
 	 * @throws 				IOException
 	 */
 	public void saveToFile(Node node) throws IOException
 	{
-		FileOutputStream output = new FileOutputStream (new File(file.getAbsolutePath()), true);
-		writeBytes(node, output);
-		output.close();
+		saveToFile(node, file);
 	}
 	
 	/**
-	 * Performs <tt>{@link #writeBytes(Node, OutputStream)}</tt> from the root node, 
-	 * using a FileOutputStream of the given file as the OutputStream argument.
+	 * Saves the root node to the given file. See {@link #saveToFile(Node, File)}.
 	 * 
-	 * @param node			the root node of the tree to be parsed
 	 * @param destination	the file to save to
 	 * @throws 				IOException
 	 */
 	public void saveToFile(File destination) throws IOException
 	{
-		FileOutputStream output = new FileOutputStream (new File(destination.getAbsolutePath()), true);
-		writeBytes(root, output);
-		output.close();
+		writeAtomically(destination, encoded(snapshot()));
 	}
 	
 	/**
-	 * Performs <tt>{@link #writeBytes(Node, OutputStream)}</tt> from the given node, 
-	 * using a FileOutputStream of the given file as the OutputStream argument.
+	 * Performs <tt>{@link #writeBytes(Node, OutputStream)}</tt> from the given node into a buffered
+	 * temporary file beside the destination, forces it to disk, and renames it over the destination. 
+	 * A crash during the save leaves the previous file intact.
 	 * 
-	 * @param node			the root node of the tree to be parsed
+	 * @param node			the root node of the tree to be saved
 	 * @param destination	the file to save to
 	 * @throws 				IOException
 	 */
-	public void saveToFile(Node node, File destination) throws IOException
+	public void saveToFile(final Node node, File destination) throws IOException
+	{
+		writeAtomically(destination, encoded(new Snapshot()
+		{
+			@Override
+			public void writeTo(OutputStream output) throws IOException
+			{
+				writeBytes(node, output);
+			}
+		}));
+	}
+	
+	
+	/*-------------------------------------
+		COMPRESSION
+	-------------------------------------*/
+	/**
+	 * Whether saves write the {@link RangeCoder} encoding. Set when a compressed file is loaded.
+	 */
+	protected boolean compressed;
+	
+	/**
+	 * Sets whether saves write the compressed {@link RangeCoder} encoding. Files of either 
+	 * encoding load without this setting; compressed files start with {@link RangeCoder#MAGIC}.
+	 * 
+	 * @param compressed	true to compress saves
+	 */
+	public void setCompressed(boolean compressed)
 	{
-		FileOutputStream output = new FileOutputStream (new File(destination.getAbsolutePath()), true);
-		writeBytes(node, output);
-		output.close();
+		if (compressed && branches() == 0)
+			throw new UnsupportedOperationException(getClass().getSimpleName() + " does not use the 2-bit format");
+		
+		this.compressed = compressed;
+	}
+	
+	/**
+	 * Number of children of a partial node in the 2-bit format: 8 for the Octree format, 
+	 * 4 for the Quadtree format, or 0 if this tree saves a different format and cannot be compressed.
+	 */
+	protected int branches()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Wraps the snapshot to write after a {@link Header} with the tree's current bounds, and 
+	 * through a {@link RangeCoder.Encoder} if saves are compressed. Trees that save a format 
+	 * other than the 2-bit format write the snapshot as it is.
+	 * 
+	 * @param snapshot		the snapshot to write
+	 * @return				a snapshot that writes the header and then the snapshot
+	 */
+	protected Snapshot encoded(Snapshot snapshot)
+	{
+		if (branches() == 0)
+			return snapshot;
+		
+		return new Header.Framed(snapshot, branches(), min, max, compressed);
+	}
+	
+	
+	/*-------------------------------------
+		ASYNCHRONOUS SAVES
+	-------------------------------------*/
+	/**
+	 * The state of a tree at one moment, which can be written from another thread 
+	 * while the tree continues to be edited.
+	 */
+	public static abstract class Snapshot
+	{
+		/**
+		 * @param output		the OutputStream to write to
+		 * @throws				IOException
+		 */
+		public abstract void writeTo(OutputStream output) throws IOException;
+		
+		/**
+		 * Called after {@link #writeTo(OutputStream)} has been flushed, before the file is 
+		 * forced to disk, to fill in fields that depend on the bytes written. Does nothing by default.
+		 * 
+		 * @param channel		the channel of the file written
+		 * @throws				IOException
+		 */
+		public void complete(FileChannel channel) throws IOException
+		{
+		}
+	}
+	
+	
+	/**
+	 * Takes a snapshot of the tree. The root is copied and its children are marked 
+	 * {@link Node#shared shared}, so that later edits copy, through {@link #writable(Node, int)}, 
+	 * each node they change instead of changing the snapshot. Costs one node, not one per node.<p>
+	 * 
+	 * Subclasses that do not store their contents in {@link #root} override this.
+	 */
+	protected Snapshot snapshot()
+	{
+		final Node node = share(root);
+		
+		return new Snapshot()
+		{
+			@Override
+			public void writeTo(OutputStream output) throws IOException
+			{
+				writeBytes(node, output);
+			}
+		};
+	}
+	
+	
+	/**
+	 * Writes the snapshot into a buffered temporary file in the destination's directory, 
+	 * forces it to disk, and atomically renames it over the destination.
+	 * 
+	 * @param destination	the file to save to
+	 * @param snapshot		the snapshot to write
+	 * @throws 				IOException
+	 */
+	protected static void writeAtomically(File destination, Snapshot snapshot) throws IOException
+	{
+		File target = destination.getAbsoluteFile(),
+			 temp 	= File.createTempFile("." + target.getName() + ".", ".tmp", target.getParentFile());
+		try
+		{
+			FileOutputStream stream = new FileOutputStream(temp);
+			try
+			{
+				OutputStream output = new BufferedOutputStream(stream, 1 << 16);
+				snapshot.writeTo(output);
+				output.flush();
+				snapshot.complete(stream.getChannel());
+				stream.getChannel().force(true);
+			}
+			finally
+			{
+				stream.close();
+			}
+			try
+			{
+				Files.move(temp.toPath(), target.toPath(), 
+						   StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			temp.delete();	//	no effect once renamed
+		}
+	}
+	
+	
+	/**
+	 * Runs asynchronous saves. One daemon thread, shared by all trees, as saves are bound by disk.
+	 */
+	protected static final ExecutorService SAVER = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "Regions save");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	protected final Object 					saveLock = new Object();
+	protected Snapshot 						queuedSnapshot;
+	protected CompletableFuture<Void> 		queuedSave;
+	protected boolean 						saving;
+	
+	
+	/**
+	 * Saves the tree to the source file on the shared save thread. See {@link #saveAsync(Executor)}.
+	 */
+	public CompletableFuture<Void> saveAsync()
+	{
+		return saveAsync(SAVER);
+	}
+	
+	
+	/**
+	 * Takes a snapshot on the calling thread, then writes it with 
+	 * {@link #writeAtomically(File, Snapshot)} on the given executor.<p>
+	 * 
+	 * Saves coalesce: while a save is queued but not yet started, further calls replace its 
+	 * snapshot with their own and return its future, so a burst of saves writes the file at most 
+	 * twice. Saves of one tree never run concurrently.<p>
+	 * 
+	 * Must be called from the thread that edits the tree.
+	 * 
+	 * @param executor		the executor to write on
+	 * @return				a future completed when the file is replaced, or completed 
+	 * 						exceptionally if the save failed
+	 */
+	public CompletableFuture<Void> saveAsync(final Executor executor)
+	{
+		Snapshot snapshot = encoded(snapshot());
+		synchronized (saveLock)
+		{
+			queuedSnapshot = snapshot;
+			if (queuedSave != null)
+				return queuedSave;
+			
+			CompletableFuture<Void> future = queuedSave = new CompletableFuture<Void>();
+			if (!saving)
+			{
+				saving = true;
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						drainSaves();
+					}
+				});
+			}
+			return future;
+		}
+	}
+	
+	
+	/**
+	 * Writes queued snapshots until none remain.
+	 */
+	protected void drainSaves()
+	{
+		Snapshot snapshot;
+		CompletableFuture<Void> future;
+		while (true)
+		{
+			synchronized (saveLock)
+			{
+				if (queuedSave == null)
+				{
+					saving = false;
+					return;
+				}
+				snapshot 		= queuedSnapshot;
+				future 			= queuedSave;
+				queuedSnapshot 	= null;
+				queuedSave 		= null;
+			}
+			try
+			{
+				writeAtomically(file, snapshot);
+				future.complete(null);
+			}
+			catch (Throwable e)
+			{
+				future.completeExceptionally(e);
+			}
+		}
 	}
 	
 	
@@ -283,30 +793,37 @@ public abstract class Tree extends BitRegionUtil
 	╚══════════════════════════════════════════════════════════════════════════════════════════════╝ */
 	
 	
-	protected int[]	min;			public int[] getMin() { return min.clone(); }
-	protected int[]	max;			public int[] getMax() { return max.clone(); }
+	protected int[]	min;			public int[] getMin() { return min == null ? null : min.clone(); }
+	protected int[]	max;			public int[] getMax() { return max == null ? null : max.clone(); }
 	
 	protected final File file;
 	protected final Node root;
 	
+	/**
+	 * Number of partial nodes, from the file's {@link Header}, or 0 if the file had none.
+	 * A hint for presizing while parsing; not kept up to date by edits.
+	 */
+	protected long nodeCount;
+	
 	
 	/**
-	 * Create a Tree from the given binary file. Invokes {@link #parseBytes(File)}
+	 * Create a Tree from the given binary file. Invokes {@link #parseBytes(File)}, which takes 
+	 * the bounds from the file's {@link Header}. A file without one leaves the tree without 
+	 * bounds until its first edit; see {@link #place(int...)}.
 	 * 
 	 * @param file 			The source file, and save destination, for this Tree.
 	 * @throws 				IOException
 	 */
 	public Tree(File file) throws IOException
 	{
-		setBoundsFromFilename(file);
-		
 		this.file	= file;
 		this.root	= parseBytes(file);
 	}
 	
 	
 	/**
-	 * TODO
+	 * Create a Tree of the given selection, with its min corner at the min corner of the bounds, 
+	 * and a side of the least power of two that covers them. Built by {@link #build(BitSet, int[][])}.
 	 * 
 	 * @param file			The source file, and save destination, for this Tree
 	 * @param blocks		BitSet representing all <tt>true</tt> points in the given volume
@@ -314,10 +831,36 @@ public abstract class Tree extends BitRegionUtil
 	 */
 	public Tree(File file, BitSet blocks, int[][] bounds)
 	{
+		int side = 1;
+		for (int[] axis : bounds)
+			while (side < axis[1] - axis[0])
+				side <<= 1;
+		
+		this.min = new int[bounds.length];
+		this.max = new int[bounds.length];
+		for (int i = 0; i < bounds.length; i++)
+		{
+			min[i] = bounds[i][0];
+			max[i] = bounds[i][0] + side;
+		}
 		this.file 	= file;
-		this.root 	= null;
+		this.root 	= build(blocks, bounds);
 	}
-	
+
+
+	/**
+	 * Create a Tree with the given root, for subclasses that do not build their
+	 * contents through {@link #parseBytes(File)}.
+	 *
+	 * @param file			The source file, and save destination, for this Tree
+	 * @param root			The root node of this Tree
+	 */
+	protected Tree(File file, Node root)
+	{
+		this.file	= file;
+		this.root	= root;
+	}
+
 	
 	
 	/*----------------------------------------------------------------------------
@@ -328,14 +871,104 @@ public abstract class Tree extends BitRegionUtil
 	
 	
 	/**
-	 * Set bounds of this tree from values specified
-	 * in the filename of the given source file.
+	 * Builds the tree of a selection bottom-up, in one depth-first pass that reads each selected 
+	 * bit once. Each group of siblings is collapsed into a leaf as soon as it is complete, if its 
+	 * children are all full or all empty leaves, so no uniform subtree is ever allocated. Leaves 
+	 * are the shared {@link NodePool#FULL} and {@link NodePool#EMPTY}, as when parsing, and space 
+	 * past the bounds is empty without being visited.<p>
 	 * 
-	 * @param file 			the source file to examine
+	 * The BitSet is indexed as by {@link BitRegionUtil}: x varies fastest, then z, then y.
+	 * 
+	 * @param blocks		BitSet representing all <tt>true</tt> points in the given volume
+	 * @param bounds		Min and max coordinates of the bounding box, for 2 or 3 axes
+	 * @return				the root node, which is not shared
 	 */
-	private void setBoundsFromFilename(File file)
+	public static Node build(BitSet blocks, int[][] bounds)
 	{
-		//TODO finish setBoundsFromFilename() method
+		if (bounds.length != 2 && bounds.length != 3)
+			throw new IllegalArgumentException("Bounds must have 2 or 3 axes: " + bounds.length);
+		
+		int side = 1, levels = 0;
+		for (int[] axis : bounds)
+			while (side < axis[1] - axis[0])
+			{
+				side <<= 1;
+				levels++;
+			}
+		
+		int 	branches 	= bounds.length == 3 ? 8 : 4;
+		Builder builder 	= new Builder(blocks, bounds, branches, levels);
+		Node 	node 		= builder.build(0, 0, 0, side, 0);
+		
+		return node.children == null ? new Node(node.full) : node;
+	}
+	
+	
+	/**
+	 * State of one {@link Tree#build(BitSet, int[][])}: the selection, and a scratch array of 
+	 * children for each level, so that only partial nodes allocate.
+	 */
+	protected static class Builder
+	{
+		protected final BitSet 		blocks;
+		protected final int 		branches,
+									dx, dz, dy;
+		protected final Node[][] 	scratch;
+		
+		protected Builder(BitSet blocks, int[][] bounds, int branches, int levels)
+		{
+			this.blocks 	= blocks;
+			this.branches 	= branches;
+			this.dx 		= bounds[0][1] - bounds[0][0];
+			this.dz 		= bounds[1][1] - bounds[1][0];
+			this.dy 		= branches == 8 ? bounds[2][1] - bounds[2][0] : 1;
+			this.scratch 	= new Node[levels + 1][branches];
+		}
+		
+		/**
+		 * Builds the node of the given size at the given offsets from the min corner.
+		 */
+		protected Node build(int x, int z, int y, int size, int level)
+		{
+			if (x >= dx || z >= dz || y >= dy)
+				return NodePool.EMPTY;
+			
+			if (size == 1)
+				return blocks.get((y * dz + z) * dx + x) ? NodePool.FULL : NodePool.EMPTY;
+			
+			int 	half 	 = size >>> 1;
+			Node[] 	children = scratch[level];
+			boolean uniform  = true;
+			for (int i = 0; i < branches; i++)
+			{
+				Node child = build(x + (i & 1) * half, z + (i >>> 1 & 1) * half, y + (i >>> 2) * half, half, level + 1);
+				children[i] = child;
+				
+				if (child != children[0] || child.children != null)
+					uniform = false;
+			}
+			return uniform ? children[0] : new Node(children.clone());
+		}
+	}
+	
+	
+	/**
+	 * Places a tree that has no bounds, giving it a root of side 1 at the given corner. A tree 
+	 * read from an empty or headerless file has no bounds and answers every test with <tt>false</tt>, 
+	 * so it holds no blocks that can be placed; its root is cleared before its first edit.
+	 * 
+	 * @param corner		min corner of the new root
+	 */
+	protected void place(int... corner)
+	{
+		root.full 		= false;
+		root.children 	= null;
+		root.bits 		= null;
+		
+		min = corner.clone();
+		max = corner.clone();
+		for (int i = 0; i < max.length; i++)
+			max[i]++;
 	}
 	
 	
@@ -396,6 +1029,63 @@ public abstract class Tree extends BitRegionUtil
 	
 	
 	
+	/*----------------------------------------------------------------------------
+	------------------------------------------------------------------------------
+		SHARED NODES
+	------------------------------------------------------------------------------
+	----------------------------------------------------------------------------*/
+	
+	
+	/**
+	 * Replaces every subtree below the root with its shared instance from the given pool.
+	 * Identical subtrees, both within this tree and across trees using the same pool, 
+	 * are then stored once. Subsequent edits copy only the shared nodes they change.
+	 * 
+	 * @param pool			the pool to intern nodes into
+	 */
+	public void compact(NodePool pool)
+	{
+		if (root.children != null)
+			for (int i = 0; i < root.children.length; i++)
+				root.children[i] = pool.intern(root.children[i]);
+	}
+	
+	
+	/**
+	 * Returns a copy of the given root whose children are marked {@link Node#shared shared}, 
+	 * so that later edits to either copy the nodes they change. Costs one node.
+	 * 
+	 * @param root			the root to share
+	 * @return				a root with the same contents, which is not shared
+	 */
+	protected static Node share(Node root)
+	{
+		Node node = root.copy();
+		if (root.children != null)
+			for (Node child : root.children)
+				child.shared = true;
+		return node;
+	}
+	
+	
+	/**
+	 * Returns the child at the given index, first replacing it with an unshared 
+	 * {@link Node#copy() copy} if it is shared. The parent must not be shared.
+	 * 
+	 * @param parent		the node to edit
+	 * @param index			index of the child
+	 * @return				a child node that is safe to edit
+	 */
+	protected static Node writable(Node parent, int index)
+	{
+		Node child = parent.children[index];
+		if (child.shared)
+			parent.children[index] = child = child.copy();
+		return child;
+	}
+	
+	
+	
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
 		EVALUATE
@@ -411,6 +1101,167 @@ public abstract class Tree extends BitRegionUtil
 	public abstract boolean testFor(int... coords);
 	
 	
+	/**
+	 * Fixed-arity form of {@link #testFor(int...)}, which does not allocate an array.
+	 * Quadtrees ignore the y coordinate.
+	 * 
+	 * @param x
+	 * @param z
+	 * @param y
+	 * @return				whether the tree contains the block
+	 */
+	public abstract boolean testFor(int x, int z, int y);
+	
+	
+	/**
+	 * Fixed-arity form of {@link #testFor(int...)}, which does not allocate an array.
+	 * Octrees return whether they contain any block in the column at x, z.
+	 * 
+	 * @param x
+	 * @param z
+	 * @return				whether the tree contains the block, or any block in the column
+	 */
+	public abstract boolean testFor(int x, int z);
+	
+	
+	/**
+	 * Tests many points in one traversal. Sets <tt>result[i]</tt> to <tt>true</tt> for each point 
+	 * <tt>(xs[i], zs[i], ys[i])</tt> the tree contains, and leaves the others unchanged, so that 
+	 * results from several trees can be combined in one array. Points already <tt>true</tt> are 
+	 * not tested again. Quadtrees ignore <tt>ys</tt>, which may be null.
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param result		array to mark contained points in, at least as long as <tt>xs</tt>
+	 */
+	public void testFor(int[] xs, int[] zs, int[] ys, boolean[] result)
+	{
+		int[] order = new int[xs.length];
+		int count = 0;
+		
+		for (int i = 0; i < xs.length; i++)
+			if (!result[i])
+				order[count++] = i;
+		
+		count = testFor(xs, zs, ys, order, 0, count);
+		
+		for (int i = 0; i < count; i++)
+			result[order[i]] = true;
+	}
+	
+	
+	/**
+	 * Same as {@link #testFor(int[], int[], int[], boolean[])}, setting bits of a BitSet.
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param result		BitSet to set the indices of contained points in
+	 */
+	public void testFor(int[] xs, int[] zs, int[] ys, BitSet result)
+	{
+		int[] order = new int[xs.length];
+		int count = 0;
+		
+		for (int i = 0; i < xs.length; i++)
+			if (!result.get(i))
+				order[count++] = i;
+		
+		count = testFor(xs, zs, ys, order, 0, count);
+		
+		for (int i = 0; i < count; i++)
+			result.set(order[i]);
+	}
+	
+	
+	/**
+	 * Partitions the given range of point indices so that the points the tree contains come 
+	 * first, and returns how many there are. Both batch forms of <tt>testFor</tt> go through 
+	 * this method, and {@link Directory} passes each tree only the points that no earlier 
+	 * tree contained. The default tests each point on its own; trees that can resolve many 
+	 * points per node override it.
+	 * 
+	 * @param xs			x coordinates
+	 * @param zs			z coordinates
+	 * @param ys			y coordinates
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range of <tt>order</tt> to test
+	 * @param to			end of the range, exclusive
+	 * @return				the number of contained points, now at <tt>order[from]</tt> onward
+	 */
+	protected int testFor(int[] xs, int[] zs, int[] ys, int[] order, int from, int to)
+	{
+		int end = from;
+		
+		for (int i = from, point; i < to; i++)
+		{
+			point = order[i];
+			if (testFor(xs[point], zs[point], ys[point]))
+			{
+				order[i] = order[end];
+				order[end++] = point;
+			}
+		}
+		return end - from;
+	}
+	
+	
+	/**
+	 * Partitions the given range of point indices so that points whose coordinate is below 
+	 * the midpoint come first. Splitting a node's range once per axis leaves each child's 
+	 * points in a contiguous range, in child index order, without a buffer or counts.
+	 * 
+	 * @param coords		coordinates on one axis
+	 * @param midpoint		the node's midpoint on that axis
+	 * @param order			indices of points, partitioned in place
+	 * @param from			start of the range
+	 * @param to			end of the range, exclusive
+	 * @return				the start of the points at or above the midpoint
+	 */
+	protected static int split(int[] coords, int midpoint, int[] order, int from, int to)
+	{
+		for (int point; from < to; )
+		{
+			point = order[from];
+			if (coords[point] < midpoint)
+				from++;
+			else
+			{
+				order[from] = order[--to];
+				order[to] = point;
+			}
+		}
+		return from;
+	}
+	
+	
+	/**
+	 * Moves a child's contained points, already at the start of its range, down to 
+	 * <tt>end</tt>. Everything between <tt>end</tt> and the child's range belongs to earlier 
+	 * children and is not contained, so swapping keeps the rest of the range intact.
+	 * 
+	 * @param order			indices of points
+	 * @param end			end of the contained points gathered so far
+	 * @param from			start of the child's range
+	 * @param count			number of contained points the child found
+	 * @return				the new end of the contained points
+	 */
+	protected static int gather(int[] order, int end, int from, int count)
+	{
+		if (end == from)
+			return end + count;
+		
+		for (int point; count > 0; count--)
+		{
+			point = order[from];
+			order[from++] = order[end];
+			order[end++] = point;
+		}
+		return end;
+	}
+
+
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
 		ADD VOLUME
@@ -457,6 +1308,120 @@ public abstract class Tree extends BitRegionUtil
 	public abstract void add(BitSet blocks, int[]...bounds);
 	
 	
+	/**
+	 * Adds the blocks selected in a compressed bitmap. By default, expands the selection into 
+	 * a BitSet one slab of layers at a time, of at most {@link #SLAB_VOLUME} blocks, and adds each 
+	 * slab that has any blocks selected. Trees that classify a Bitmap directly override this.
+	 * 
+	 * @param blocks		Bitmap representing selected points in the selection
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	public void add(Bitmap blocks, int[]...bounds)
+	{
+		expandAsNeeded(bounds);
+		
+		slabs(true, blocks, bounds);
+	}
+	
+	
+	/**
+	 * Most blocks in each slab of a Bitmap selection expanded into a BitSet, 8 MB.
+	 */
+	public static int SLAB_VOLUME = 1 << 26;
+	
+	
+	/**
+	 * Adds or removes a Bitmap selection one slab at a time, along the last axis: 
+	 * y for 3 axes, z for 2.
+	 */
+	protected void slabs(boolean value, Bitmap blocks, int[]... bounds)
+	{
+		int  last 	= bounds.length - 1;
+		long layer 	= 1;
+		for (int i = 0; i < last; i++)
+			layer *= bounds[i][1] - bounds[i][0];
+		
+		int layers = (int) Math.max(1, Math.min(SLAB_VOLUME / layer, Integer.MAX_VALUE));
+		for (int from = bounds[last][0], to; from < bounds[last][1]; from = to)
+		{
+			to = (int) Math.min((long) from + layers, bounds[last][1]);
+			
+			long   start = (from - bounds[last][0]) * layer;
+			BitSet slab  = blocks.toBitSet(start, start + (to - from) * layer);
+			if (slab.isEmpty())
+				continue;
+			
+			int[][] slabBounds 	= bounds.clone();
+			slabBounds[last] 	= new int[] { from, to };
+			
+			if (value)
+				add(slab, slabBounds);
+			else
+				remove(slab, slabBounds);
+		}
+	}
+	
+	
+	/**
+	 * Adds the blocks selected in runs along y. By default, expands the runs into a BitSet 
+	 * of at most {@link #SLAB_VOLUME} blocks at a time, as for {@link #add(Bitmap, int[]...)}.
+	 * Trees that classify the runs directly override this.
+	 * 
+	 * @param columns		runs of selected blocks in each column
+	 */
+	public void add(Columns columns)
+	{
+		expandAsNeeded(columns.bounds());
+		
+		slabs(true, columns);
+	}
+	
+	
+	/**
+	 * Fills a shape. By default, rasterizes the shape into a BitSet of at most 
+	 * {@link #SLAB_VOLUME} blocks at a time, a row at a time, reading block by block only 
+	 * the rows that cross its surface. Trees that classify the shape directly override this.
+	 * 
+	 * @param shape			the shape to fill
+	 */
+	public void add(Shape shape)
+	{
+		expandAsNeeded(shape.bounds());
+		
+		slabs(true, shape);
+	}
+	
+	
+	/**
+	 * Adds or removes a selection one slab of layers at a time, 
+	 * through {@link Selection3D#toBitSet(int, int)}.
+	 */
+	protected void slabs(boolean value, Selection3D blocks)
+	{
+		long layer 	= (long) (blocks.maxX - blocks.minX) * (blocks.maxZ - blocks.minZ);
+		if (layer == 0)
+			return;
+		
+		int  layers = (int) Math.max(1, Math.min(SLAB_VOLUME / layer, Integer.MAX_VALUE));
+		for (int from = blocks.minY, to; from < blocks.maxY; from = to)
+		{
+			to = (int) Math.min((long) from + layers, blocks.maxY);
+			
+			BitSet slab = blocks.toBitSet(from, to);
+			if (slab.isEmpty())
+				continue;
+			
+			int[][] slabBounds 	= blocks.bounds();
+			slabBounds[2] 		= new int[] { from, to };
+			
+			if (value)
+				add(slab, slabBounds);
+			else
+				remove(slab, slabBounds);
+		}
+	}
+	
+	
 	
 	/*----------------------------------------------------------------------------
 	------------------------------------------------------------------------------
@@ -494,4 +1459,38 @@ public abstract class Tree extends BitRegionUtil
 	 * @return
 	 */
 	public abstract void remove(BitSet blocks, int[]...bounds);
+	
+	
+	/**
+	 * Removes the blocks selected in a compressed bitmap. See {@link #add(Bitmap, int[]...)}.
+	 * 
+	 * @param blocks		Bitmap representing selected points in the selection
+	 * @param bounds		Min and max coordinates of the selection
+	 */
+	public void remove(Bitmap blocks, int[]...bounds)
+	{
+		slabs(false, blocks, bounds);
+	}
+	
+	
+	/**
+	 * Removes the blocks selected in runs along y. See {@link #add(Columns)}.
+	 * 
+	 * @param columns		runs of selected blocks in each column
+	 */
+	public void remove(Columns columns)
+	{
+		slabs(false, columns);
+	}
+	
+	
+	/**
+	 * Clears a shape. See {@link #add(Shape)}.
+	 * 
+	 * @param shape			the shape to clear
+	 */
+	public void remove(Shape shape)
+	{
+		slabs(false, shape);
+	}
 }
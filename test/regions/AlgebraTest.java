@@ -0,0 +1,102 @@
+package regions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Set algebra with an empty operand, or one read from an empty file and so without bounds. 
+ * An empty tree is the identity of a union and a difference, and empties an intersection.
+ * Run as a main class; throws an AssertionError at the first failure.
+ */
+public class AlgebraTest
+{
+	public static void main(String[] args) throws IOException
+	{
+		for (int branches : new int[] { 8, 4 })
+		{
+			Tree 	full 	= tree(branches, new int[] { 3, -5, 7 }, 6),
+					empty 	= tree(branches, new int[] { 0, 0, 0 }, 0),
+					none 	= unbounded(branches);
+			
+			for (Tree zero : new Tree[] { empty, none })
+			{
+				same(full, Algebra.union(null, zero, full));
+				same(full, Algebra.union(null, full, zero));
+				same(full, Algebra.difference(null, full, zero));
+				same(full, Algebra.symmetricDifference(null, zero, full));
+				same(full, Algebra.symmetricDifference(null, full, zero));
+				same(zero, Algebra.difference(null, zero, full));
+				same(zero, Algebra.intersection(null, full, zero));
+				same(zero, Algebra.intersection(null, zero, full));
+				
+				check(!Algebra.intersects(full, zero));
+				check(!Algebra.intersects(zero, full));
+			}
+			
+			Tree tree = unbounded(branches);
+			if (branches == 8)
+				((Octree) tree).union((Octree) full);
+			else
+				((Quadtree) tree).union((Quadtree) full);
+			same(full, tree);
+		}
+		System.out.println("AlgebraTest passed");
+	}
+	
+	
+	/**
+	 * A tree of a cube of the given side at the given corner, 
+	 * with every third block set, or with no blocks if the side is 0.
+	 */
+	static Tree tree(int branches, int[] min, int side)
+	{
+		int[][] bounds 	= new int[branches == 8 ? 3 : 2][];
+		int 	volume 	= 1;
+		for (int i = 0; i < bounds.length; i++)
+		{
+			bounds[i] = new int[] { min[i], min[i] + Math.max(side, 1) };
+			volume 	 *= Math.max(side, 1);
+		}
+		BitSet blocks = new BitSet();
+		if (side > 0)
+			for (int i = 0; i < volume; i += 3)
+				blocks.set(i);
+		
+		return branches == 8 ? new Octree(null, blocks, bounds) : new Quadtree(null, blocks, bounds);
+	}
+	
+	
+	/**
+	 * A tree read from an empty file, which has no bounds.
+	 */
+	static Tree unbounded(int branches) throws IOException
+	{
+		File file = File.createTempFile("algebra", ".tree");
+		file.deleteOnExit();
+		
+		Tree tree = branches == 8 ? new Octree(file) : new Quadtree(file);
+		check(tree.getMin() == null);
+		return tree;
+	}
+	
+	
+	/**
+	 * Checks that two trees have the same blocks, around the test cube.
+	 */
+	static void same(Tree expected, Tree actual)
+	{
+		int ys = expected instanceof Octree ? 16 : 1;
+		for (int x = -16; x < 16; x++)
+			for (int z = -16; z < 16; z++)
+				for (int y = 0; y < ys; y++)
+					check(expected.testFor(x, z, y) == actual.testFor(x, z, y));
+	}
+	
+	
+	static void check(boolean condition)
+	{
+		if (!condition)
+			throw new AssertionError();
+	}
+}